@@ -0,0 +1,156 @@
+package com.bootcamp67.ms_card.loadtest;
+
+import com.bootcamp67.ms_card.dto.DebitResult;
+import com.bootcamp67.ms_card.exception.InsufficientBalanceException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Debit cascade before and after DebitResult: the old recursive cascade raised an
+ * InsufficientBalanceException per declined account and recovered with onErrorResume,
+ * the current one carries declines as values and errors once with a preallocated exception.
+ * Both shapes are copied here without logging, against an in-memory account that declines
+ * at the given rate. stackDepth runs the cascade under that many extra frames, since a stack
+ * trace costs per frame and payments run deep inside Netty and Reactor.
+ * Run with the GC profiler to compare allocations (gc.alloc.rate.norm):
+ *
+ * mvn -Ploadtest test-compile exec:java -Dexec.mainClass=com.bootcamp67.ms_card.loadtest.DebitCascadeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DebitCascadeBenchmark {
+
+  private static final InsufficientBalanceException ALL_ACCOUNTS_INSUFFICIENT =
+      new InsufficientBalanceException("Insufficient balance in all associated accounts", false);
+
+  @Param({"0.3"})
+  double declineRate;
+
+  @Param({"3"})
+  int accounts;
+
+  @Param({"0", "100"})
+  int stackDepth;
+
+  private List<String> accountIds;
+
+  @Setup
+  public void setUp() {
+    accountIds = new ArrayList<>(accounts);
+    for (int i = 0; i < accounts; i++) {
+      accountIds.add("account-" + i);
+    }
+  }
+
+  @Benchmark
+  public void exceptionCascade(Blackhole blackhole) {
+    atDepth(stackDepth, () -> exceptionCascadeOnce(blackhole));
+  }
+
+  @Benchmark
+  public void resultCascade(Blackhole blackhole) {
+    atDepth(stackDepth, () -> resultCascadeOnce(blackhole));
+  }
+
+  private void exceptionCascadeOnce(Blackhole blackhole) {
+    tryDebitOrThrow(accountIds.get(0))
+        .onErrorResume(error -> cascadeWithExceptions(1))
+        .subscribe(blackhole::consume, blackhole::consume);
+  }
+
+  private void resultCascadeOnce(Blackhole blackhole) {
+    Flux.fromIterable(accountIds)
+        .concatMap(this::tryDebit)
+        .takeUntil(DebitResult::isApproved)
+        .last()
+        .flatMap(result -> result.isApproved()
+            ? Mono.just(result.getAccountId())
+            : Mono.<String>error(ALL_ACCOUNTS_INSUFFICIENT))
+        .subscribe(blackhole::consume, blackhole::consume);
+  }
+
+  private static void atDepth(int depth, Runnable body) {
+    if (depth == 0) {
+      body.run();
+    } else {
+      atDepth(depth - 1, body);
+    }
+  }
+
+  private Mono<String> cascadeWithExceptions(int index) {
+    if (index >= accountIds.size()) {
+      return Mono.error(new InsufficientBalanceException("Insufficient balance in all associated accounts"));
+    }
+    return tryDebitOrThrow(accountIds.get(index))
+        .onErrorResume(error -> cascadeWithExceptions(index + 1));
+  }
+
+  private Mono<String> tryDebitOrThrow(String accountId) {
+    if (declines()) {
+      return Mono.error(new InsufficientBalanceException("Insufficient balance in account: " + accountId));
+    }
+    return Mono.just(accountId);
+  }
+
+  private Mono<DebitResult> tryDebit(String accountId) {
+    return Mono.just(declines() ? DebitResult.insufficient(accountId) : DebitResult.approved(accountId));
+  }
+
+  private boolean declines() {
+    return ThreadLocalRandom.current().nextDouble() < declineRate;
+  }
+
+  public static void main(String[] args) throws Exception {
+    exposeClassPath();
+    new Runner(new OptionsBuilder()
+        .include(DebitCascadeBenchmark.class.getSimpleName())
+        .addProfiler(GCProfiler.class)
+        .build())
+        .run();
+  }
+
+  /**
+   * exec:java runs on an isolated class loader; forked benchmark JVMs need its class path
+   */
+  private static void exposeClassPath() throws URISyntaxException {
+    ClassLoader loader = Thread.currentThread().getContextClassLoader();
+    if (!(loader instanceof URLClassLoader)) {
+      return;
+    }
+    StringJoiner classPath = new StringJoiner(File.pathSeparator);
+    for (URL url : ((URLClassLoader) loader).getURLs()) {
+      classPath.add(Paths.get(url.toURI()).toString());
+    }
+    System.setProperty("java.class.path", classPath.toString());
+  }
+}
@@ -0,0 +1,92 @@
+package com.bootcamp67.ms_card.loadtest;
+
+import com.bootcamp67.ms_card.loadtest.LoadTestSettings.Operation;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * HDR latency histograms (microseconds) and status code counts per operation
+ */
+final class LatencyReport {
+
+  static final int TRANSPORT_ERROR = -1;
+
+  private static final long HIGHEST_TRACKABLE_MICROS = Duration.ofMinutes(2).toNanos() / 1_000;
+  private static final double MICROS_PER_MILLI = 1_000.0;
+
+  private final Duration measuredDuration;
+  private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+  private final Map<Operation, Map<Integer, LongAdder>> statuses = new EnumMap<>(Operation.class);
+  private final LongAdder clientSaturated = new LongAdder();
+
+  LatencyReport(Duration measuredDuration) {
+    this.measuredDuration = measuredDuration;
+    for (Operation operation : Operation.values()) {
+      histograms.put(operation, new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 3));
+      statuses.put(operation, new ConcurrentHashMap<>());
+    }
+  }
+
+  void record(Operation operation, int status, long latencyMicros) {
+    histograms.get(operation).recordValue(Math.min(latencyMicros, HIGHEST_TRACKABLE_MICROS));
+    statuses.get(operation).computeIfAbsent(status, code -> new LongAdder()).increment();
+  }
+
+  void clientSaturated() {
+    clientSaturated.increment();
+  }
+
+  void print(PrintStream out, long publishedEvents) {
+    double seconds = measuredDuration.toMillis() / 1_000.0;
+    out.printf("%n%-13s %9s %9s %9s %9s %9s %9s %9s  %s%n",
+        "operation", "count", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "status codes");
+    histograms.forEach((operation, histogram) -> {
+      if (histogram.getTotalCount() == 0) {
+        return;
+      }
+      out.printf("%-13s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+          operation.name().toLowerCase(),
+          histogram.getTotalCount(),
+          histogram.getTotalCount() / seconds,
+          histogram.getValueAtPercentile(50) / MICROS_PER_MILLI,
+          histogram.getValueAtPercentile(90) / MICROS_PER_MILLI,
+          histogram.getValueAtPercentile(99) / MICROS_PER_MILLI,
+          histogram.getValueAtPercentile(99.9) / MICROS_PER_MILLI,
+          histogram.getMaxValue() / MICROS_PER_MILLI,
+          statusCounts(operation));
+    });
+    out.printf("%nevents published: %d, arrivals dropped by saturated client: %d%n",
+        publishedEvents, clientSaturated.sum());
+  }
+
+  /**
+   * One .hgrm file per operation, in milliseconds, for HdrHistogram's plotter
+   */
+  void write(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+      Path file = directory.resolve(entry.getKey().name().toLowerCase() + ".hgrm");
+      try (PrintStream out = new PrintStream(Files.newOutputStream(file))) {
+        entry.getValue().outputPercentileDistribution(out, MICROS_PER_MILLI);
+      }
+    }
+  }
+
+  private String statusCounts(Operation operation) {
+    Map<String, Long> counts = new TreeMap<>();
+    statuses.get(operation).forEach((status, count) ->
+        counts.put(status == TRANSPORT_ERROR ? "error" : status.toString(), count.sum()));
+    return counts.toString();
+  }
+}
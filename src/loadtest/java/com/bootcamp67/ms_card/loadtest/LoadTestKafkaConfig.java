@@ -0,0 +1,45 @@
+package com.bootcamp67.ms_card.loadtest;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.MockProducer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Kafka stand-in: replaces the producer factory so events are serialized and acknowledged
+ * in memory. Listeners are switched off by the loadtest profile.
+ */
+@Configuration
+@Profile("loadtest")
+public class LoadTestKafkaConfig {
+
+  static final AtomicLong PUBLISHED = new AtomicLong();
+
+  @Bean
+  public ProducerFactory<String, Object> producerFactory() {
+    // KafkaTemplate closes the producer after each send, so hand out a fresh one every time
+    return CountingMockProducer::new;
+  }
+
+  private static final class CountingMockProducer extends MockProducer<String, Object> {
+
+    private CountingMockProducer() {
+      super(true, new StringSerializer(), new JsonSerializer<>());
+    }
+
+    @Override
+    public synchronized Future<RecordMetadata> send(ProducerRecord<String, Object> record, Callback callback) {
+      PUBLISHED.incrementAndGet();
+      return super.send(record, callback);
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.bootcamp67.ms_card.loadtest;
+
+import com.bootcamp67.ms_card.MsCardApplication;
+import com.bootcamp67.ms_card.warmup.WarmupRunner;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.util.List;
+
+/**
+ * End-to-end load test: starts an embedded mongod and the service (profile loadtest, with
+ * in-memory Kafka and the simulated account gateway), seeds cards through the API, then
+ * drives open-model traffic and prints/writes HDR latency histograms.
+ *
+ * mvn -Ploadtest test-compile exec:java -Dloadtest.rate=300 -Dloadtest.duration=120s
+ */
+public final class LoadTestMain {
+
+  private static final long WARMUP_POLL_MILLIS = 200;
+
+  private LoadTestMain() {
+  }
+
+  public static void main(String[] args) throws Exception {
+    LoadTestSettings settings = LoadTestSettings.fromSystemProperties();
+
+    int mongoPort = Network.getFreeServerPort();
+    MongodExecutable mongod = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+        .version(Version.Main.V5_0)
+        .net(new Net(mongoPort, Network.localhostIsIPv6()))
+        .build());
+    mongod.start();
+
+    try (ConfigurableApplicationContext app = new SpringApplicationBuilder(MsCardApplication.class)
+        .profiles("loadtest")
+        .properties("spring.data.mongodb.uri=mongodb://localhost:" + mongoPort + "/ms-card-loadtest")
+        .run(args)) {
+
+      WarmupRunner warmup = app.getBean(WarmupRunner.class);
+      while (!warmup.isComplete()) {
+        Thread.sleep(WARMUP_POLL_MILLIS);
+      }
+
+      int port = app.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+      WebClient client = WebClient.builder()
+          .baseUrl("http://localhost:" + port + "/api/v1/cards")
+          .build();
+      OpenModelDriver driver = new OpenModelDriver(client, settings);
+
+      List<SeededCard> cards = driver.seed();
+      System.out.printf("Seeded %d cards for %d customers; offering %.0f req/s for %s after %s warm-up%n",
+          cards.size(), settings.customers, settings.rate, settings.duration, settings.warmup);
+
+      LatencyReport report = driver.run(cards);
+      report.print(System.out, LoadTestKafkaConfig.PUBLISHED.get());
+      report.write(settings.reportDir);
+      System.out.println("Histograms written to " + settings.reportDir.toAbsolutePath());
+    } finally {
+      mongod.stop();
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.bootcamp67.ms_card.loadtest;
+
+import org.springframework.boot.convert.DurationStyle;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Load test parameters, read from -Dloadtest.* system properties
+ */
+final class LoadTestSettings {
+
+  final double rate;
+  final Duration duration;
+  final Duration warmup;
+  final int customers;
+  final int maxInFlight;
+  final Map<Operation, Integer> mix;
+  final Path reportDir;
+
+  private LoadTestSettings(double rate, Duration duration, Duration warmup, int customers,
+                           int maxInFlight, Map<Operation, Integer> mix, Path reportDir) {
+    this.rate = rate;
+    this.duration = duration;
+    this.warmup = warmup;
+    this.customers = customers;
+    this.maxInFlight = maxInFlight;
+    this.mix = mix;
+    this.reportDir = reportDir;
+  }
+
+  static LoadTestSettings fromSystemProperties() {
+    Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+    // e.g. -Dloadtest.mix=payment:60,get:20,list:10,transactions:10
+    for (String part : System.getProperty("loadtest.mix", "payment:60,get:20,list:10,transactions:10").split(",")) {
+      String[] weight = part.trim().split(":");
+      mix.put(Operation.valueOf(weight[0].trim().toUpperCase()), Integer.parseInt(weight[1].trim()));
+    }
+    return new LoadTestSettings(
+        Double.parseDouble(System.getProperty("loadtest.rate", "200")),
+        DurationStyle.detectAndParse(System.getProperty("loadtest.duration", "60s")),
+        DurationStyle.detectAndParse(System.getProperty("loadtest.warmup", "10s")),
+        Integer.parseInt(System.getProperty("loadtest.customers", "500")),
+        Integer.parseInt(System.getProperty("loadtest.max-in-flight", "10000")),
+        mix,
+        Paths.get(System.getProperty("loadtest.report-dir", "target/loadtest")));
+  }
+
+  enum Operation {
+    PAYMENT,
+    GET,
+    LIST,
+    TRANSACTIONS
+  }
+}
@@ -0,0 +1,175 @@
+package com.bootcamp67.ms_card.loadtest;
+
+import com.bootcamp67.ms_card.loadtest.LoadTestSettings.Operation;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Open-model load: requests arrive at a fixed rate whether or not earlier ones have completed,
+ * and latency is measured from the intended send time, so a stalled server shows up as
+ * latency instead of silently lowering the offered load (no coordinated omission).
+ */
+final class OpenModelDriver {
+
+  private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+  private static final int SEED_CONCURRENCY = 16;
+
+  private final WebClient client;
+  private final LoadTestSettings settings;
+  private final LatencyReport report;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final AtomicLong issued = new AtomicLong();
+  private final Operation[] weightedOperations;
+
+  OpenModelDriver(WebClient client, LoadTestSettings settings) {
+    this.client = client;
+    this.settings = settings;
+    this.report = new LatencyReport(settings.duration);
+    List<Operation> weighted = new ArrayList<>();
+    settings.mix.forEach((operation, weight) -> {
+      for (int i = 0; i < weight; i++) {
+        weighted.add(operation);
+      }
+    });
+    this.weightedOperations = weighted.toArray(new Operation[0]);
+  }
+
+  /**
+   * One debit card per customer, with a second account on every other card, and a credit
+   * card for every fourth customer. Each customer creates its own cards, as in production.
+   */
+  List<SeededCard> seed() {
+    return Flux.range(0, settings.customers)
+        .flatMap(i -> {
+          String customerId = "lt-customer-" + i;
+          Mono<SeededCard> debit = create("/debit", customerId, body("customerId", customerId,
+              "mainAccountId", "lt-account-" + i))
+              .flatMap(card -> i % 2 == 0
+                  ? send(client.post().uri("/{id}/associate-account", card.id), customerId,
+                      body("accountId", "lt-account-" + i + "-b")).thenReturn(card)
+                  : Mono.just(card));
+          Mono<SeededCard> credit = i % 4 == 0
+              ? create("/credit", customerId, body("customerId", customerId, "creditId", "lt-credit-" + i))
+              : Mono.empty();
+          return Flux.concat(debit, credit);
+        }, SEED_CONCURRENCY)
+        .collectList()
+        .block();
+  }
+
+  LatencyReport run(List<SeededCard> cards) {
+    long warmupNanos = settings.warmup.toNanos();
+    long totalNanos = warmupNanos + settings.duration.toNanos();
+    long start = System.nanoTime();
+
+    Flux.interval(Duration.ofMillis(1))
+        .takeWhile(tick -> System.nanoTime() - start < totalNanos)
+        .flatMapIterable(tick -> dueArrivals(start))
+        .flatMap(scheduled -> execute(cards, scheduled, scheduled - start >= warmupNanos), Integer.MAX_VALUE)
+        .blockLast();
+
+    return report;
+  }
+
+  /**
+   * Intended send times of the arrivals due by now; ticks that run late catch up
+   */
+  private List<Long> dueArrivals(long start) {
+    double nanosPerArrival = 1_000_000_000d / settings.rate;
+    long due = (long) ((System.nanoTime() - start) / nanosPerArrival);
+    List<Long> arrivals = new ArrayList<>();
+    for (long n = issued.get(); n < due; n = issued.incrementAndGet()) {
+      arrivals.add(start + (long) (n * nanosPerArrival));
+    }
+    return arrivals;
+  }
+
+  private Mono<Void> execute(List<SeededCard> cards, long scheduledNanos, boolean measured) {
+    if (inFlight.incrementAndGet() > settings.maxInFlight) {
+      inFlight.decrementAndGet();
+      report.clientSaturated();
+      return Mono.empty();
+    }
+
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    Operation operation = weightedOperations[random.nextInt(weightedOperations.length)];
+    SeededCard card = cards.get(random.nextInt(cards.size()));
+
+    return request(operation, card)
+        .timeout(REQUEST_TIMEOUT)
+        .onErrorReturn(LatencyReport.TRANSPORT_ERROR)
+        .doOnNext(status -> {
+          if (measured) {
+            report.record(operation, status, (System.nanoTime() - scheduledNanos) / 1_000);
+          }
+        })
+        .doFinally(signal -> inFlight.decrementAndGet())
+        .then();
+  }
+
+  private Mono<Integer> request(Operation operation, SeededCard card) {
+    switch (operation) {
+      case PAYMENT:
+        BigDecimal amount = BigDecimal.valueOf(ThreadLocalRandom.current().nextInt(100, 20_000), 2);
+        return status(client.post().uri("/{id}/payment", card.id)
+            .header("Idempotency-Key", UUID.randomUUID().toString())
+            .headers(headers -> authenticate(headers, card.customerId))
+            .bodyValue(body("amount", amount, "description", "load test",
+                "merchantName", "lt-merchant-" + ThreadLocalRandom.current().nextInt(50))));
+      case GET:
+        return status(client.get().uri("/{id}", card.id)
+            .headers(headers -> authenticate(headers, card.customerId)));
+      case LIST:
+        return status(client.get().uri("/customer/{customerId}", card.customerId)
+            .headers(headers -> authenticate(headers, card.customerId)));
+      default:
+        return status(client.get().uri("/{id}/transactions?limit=10", card.id)
+            .headers(headers -> authenticate(headers, card.customerId)));
+    }
+  }
+
+  private Mono<SeededCard> create(String path, String customerId, Map<String, Object> body) {
+    return client.post().uri(path)
+        .headers(headers -> authenticate(headers, customerId))
+        .bodyValue(body)
+        .retrieve()
+        .bodyToMono(JsonNode.class)
+        .map(response -> new SeededCard(response.path("data").path("id").asText(), customerId));
+  }
+
+  private Mono<Integer> send(WebClient.RequestBodySpec spec, String customerId, Map<String, Object> body) {
+    return status(spec.headers(headers -> authenticate(headers, customerId)).bodyValue(body));
+  }
+
+  private static Mono<Integer> status(WebClient.RequestHeadersSpec<?> spec) {
+    return spec.exchangeToMono(response -> response.releaseBody().thenReturn(response.rawStatusCode()));
+  }
+
+  private static void authenticate(HttpHeaders headers, String customerId) {
+    headers.set("X-Auth-Username", customerId.replace("lt-customer-", "lt-user-"));
+    headers.set("X-Auth-Customer-Id", customerId);
+    headers.set("X-Auth-Role", "CUSTOMER");
+  }
+
+  private static Map<String, Object> body(Object... keyValues) {
+    Map<String, Object> body = new HashMap<>();
+    for (int i = 0; i < keyValues.length; i += 2) {
+      body.put((String) keyValues[i], keyValues[i + 1]);
+    }
+    return body;
+  }
+}
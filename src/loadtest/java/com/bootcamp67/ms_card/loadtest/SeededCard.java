@@ -0,0 +1,15 @@
+package com.bootcamp67.ms_card.loadtest;
+
+/**
+ * A card created before the run, with the customer that owns it
+ */
+final class SeededCard {
+
+  final String id;
+  final String customerId;
+
+  SeededCard(String id, String customerId) {
+    this.id = id;
+    this.customerId = customerId;
+  }
+}
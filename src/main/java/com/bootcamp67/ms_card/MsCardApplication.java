@@ -2,6 +2,7 @@ package com.bootcamp67.ms_card;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.cloud.netflix.eureka.EnableEurekaClient;
 import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
 
@@ -10,7 +11,12 @@ import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRep
 @EnableReactiveMongoRepositories
 public class MsCardApplication {
 
+    private static final int STARTUP_STEP_CAPACITY = 10_000;
+
     public static void main(String[] args) {
-        SpringApplication.run(MsCardApplication.class, args);
+        SpringApplication application = new SpringApplication(MsCardApplication.class);
+        // Records startup steps for StartupReport and the actuator startup endpoint
+        application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEP_CAPACITY));
+        application.run(args);
     }
 }
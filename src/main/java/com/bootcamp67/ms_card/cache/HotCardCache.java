@@ -0,0 +1,421 @@
+package com.bootcamp67.ms_card.cache;
+
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.util.CardNumbers;
+import com.bootcamp67.ms_card.util.PrivateFiles;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * In-process cache of the hottest card views (no cvv) for the read-only findById path.
+ * Entries live for a short TTL and are dropped on local writes.
+ *
+ * At shutdown the most used entries are written as BSON to a snapshot file; at startup the
+ * file is memory-mapped and only its ids are indexed, documents are decoded on first use.
+ * Snapshot entries are served only after the card-events topics were scanned from the
+ * snapshot time and the card had no event since (lazy revalidation); until that scan ends
+ * lookups fall through to Mongo. Only the change stream publishes an event for every write
+ * (bulk updates and imports included), so the snapshot is neither saved nor loaded unless
+ * card.change-stream.enabled is on.
+ *
+ * The snapshot holds only the fields the card view returns, with the number already masked
+ * (the token is derived from the hash), and is created owner-only (rw-------) in a directory
+ * that is not shared by default.
+ *
+ * Snapshot layout: magic, version, savedAtMillis, count, then per entry
+ * [short idLength][id utf-8][int bsonLength][bson].
+ */
+@Slf4j
+@Component
+public class HotCardCache {
+
+  private static final int MAGIC = 0x48435331;
+  private static final int FORMAT_VERSION = 2;
+  private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+  private static final DocumentCodec CODEC = new DocumentCodec();
+  private static final DecoderContext DECODER_CONTEXT = DecoderContext.builder().build();
+  private static final EncoderContext ENCODER_CONTEXT = EncoderContext.builder().build();
+
+  private final MongoConverter converter;
+  private final ConsumerFactory<String, String> consumerFactory;
+  private final LruCache<String, Entry> entries;
+  private final boolean enabled;
+  private final boolean snapshotEnabled;
+  private final long ttlMillis;
+  private final Path snapshotPath;
+  private final int snapshotMaxEntries;
+  private final Duration snapshotMaxAge;
+  private final List<String> revalidationTopics;
+  private final Duration revalidationTimeout;
+  private final Counter hits;
+  private final Counter snapshotHits;
+  private final Counter misses;
+
+  private volatile MappedByteBuffer snapshot;
+  private volatile Map<String, long[]> snapshotIndex;
+  private volatile Set<String> changedSinceSnapshot;
+
+  public HotCardCache(ReactiveMongoTemplate mongoTemplate,
+                      ConsumerFactory<String, String> consumerFactory,
+                      MeterRegistry meterRegistry,
+                      @Value("${card.hot-cache.enabled:true}") boolean enabled,
+                      @Value("${card.hot-cache.max-entries:10000}") int maxEntries,
+                      @Value("${card.hot-cache.ttl:60s}") Duration ttl,
+                      @Value("${card.hot-cache.snapshot.path:${user.home}/.ms-card/hot-cards.bin}") String snapshotPath,
+                      @Value("${card.hot-cache.snapshot.max-entries:5000}") int snapshotMaxEntries,
+                      @Value("${card.hot-cache.snapshot.max-age:15m}") Duration snapshotMaxAge,
+                      @Value("${card.hot-cache.revalidation.topics:card-events,card-status-events}") List<String> revalidationTopics,
+                      @Value("${card.hot-cache.revalidation.timeout:30s}") Duration revalidationTimeout,
+                      @Value("${card.change-stream.enabled:false}") boolean changeStreamEnabled) {
+    this.converter = mongoTemplate.getConverter();
+    this.consumerFactory = consumerFactory;
+    this.entries = new LruCache<>(maxEntries);
+    this.enabled = enabled;
+    this.snapshotEnabled = enabled && changeStreamEnabled;
+    this.ttlMillis = ttl.toMillis();
+    this.snapshotPath = Paths.get(snapshotPath);
+    this.snapshotMaxEntries = snapshotMaxEntries;
+    this.snapshotMaxAge = snapshotMaxAge;
+    this.revalidationTopics = revalidationTopics;
+    this.revalidationTimeout = revalidationTimeout;
+    this.hits = lookups(meterRegistry, "hit");
+    this.snapshotHits = lookups(meterRegistry, "snapshot");
+    this.misses = lookups(meterRegistry, "miss");
+    Gauge.builder("card.hotcache.size", entries, LruCache::size)
+        .description("Card views held in the hot card cache")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Cached read-only view of the card, or null. Never save the returned card.
+   */
+  public Card get(String id) {
+    if (!enabled) {
+      return null;
+    }
+    long now = System.currentTimeMillis();
+    Entry entry = entries.get(id);
+    if (entry != null) {
+      if (now - entry.loadedAtMillis < ttlMillis) {
+        entry.uses++;
+        hits.increment();
+        return entry.card;
+      }
+      entries.remove(id);
+    }
+
+    Card card = fromSnapshot(id);
+    if (card != null) {
+      entries.put(id, new Entry(card, now));
+      snapshotHits.increment();
+      return card;
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   * Cache a view read from Mongo (loaded without cvv)
+   */
+  public void put(Card card) {
+    if (enabled && card.getId() != null) {
+      entries.put(card.getId(), new Entry(card, System.currentTimeMillis()));
+    }
+  }
+
+  public void invalidate(String id) {
+    entries.remove(id);
+    Map<String, long[]> index = snapshotIndex;
+    if (index != null) {
+      index.remove(id);
+    }
+  }
+
+  /**
+   * Invalidate every cached card matching the filter, for bulk updates that don't return ids.
+   * Snapshot views are not decoded, so the snapshot is dropped as well.
+   */
+  public void invalidateIf(Predicate<Card> filter) {
+    int removed = entries.removeIf(entry -> filter.test(entry.card));
+    if (snapshotIndex != null) {
+      dropSnapshot();
+    }
+    log.debug("Invalidated {} hot cards", removed);
+  }
+
+  @PostConstruct
+  public void loadSnapshot() {
+    if (enabled && !snapshotEnabled) {
+      log.info("Hot card snapshot is off: it needs card.change-stream.enabled to stay consistent");
+    }
+    if (!snapshotEnabled || !Files.isReadable(snapshotPath)) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(snapshotPath, StandardOpenOption.READ)) {
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (mapped.capacity() < HEADER_BYTES || mapped.getInt(0) != MAGIC || mapped.getInt(4) != FORMAT_VERSION) {
+        log.warn("Ignoring hot card snapshot {}: unknown format", snapshotPath);
+        return;
+      }
+      long savedAtMillis = mapped.getLong(8);
+      if (System.currentTimeMillis() - savedAtMillis > snapshotMaxAge.toMillis()) {
+        log.info("Ignoring hot card snapshot {}: older than {}", snapshotPath, snapshotMaxAge);
+        return;
+      }
+
+      int count = mapped.getInt(16);
+      Map<String, long[]> index = new ConcurrentHashMap<>(count * 2);
+      int position = HEADER_BYTES;
+      byte[] idBytes = new byte[Short.MAX_VALUE];
+      for (int i = 0; i < count; i++) {
+        int idLength = mapped.getShort(position);
+        mapped.position(position + 2);
+        mapped.get(idBytes, 0, idLength);
+        int bsonLength = mapped.getInt(position + 2 + idLength);
+        int bsonOffset = position + 2 + idLength + 4;
+        index.put(new String(idBytes, 0, idLength, StandardCharsets.UTF_8), new long[] {bsonOffset, bsonLength});
+        position = bsonOffset + bsonLength;
+      }
+
+      snapshot = mapped;
+      snapshotIndex = index;
+      log.info("Mapped hot card snapshot with {} cards saved at {}", count, Instant.ofEpochMilli(savedAtMillis));
+
+      Thread revalidation = new Thread(() -> revalidate(savedAtMillis), "hot-card-revalidation");
+      revalidation.setDaemon(true);
+      revalidation.start();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not load hot card snapshot {}: {}", snapshotPath, e.toString());
+      dropSnapshot();
+    }
+  }
+
+  @PreDestroy
+  public void saveSnapshot() {
+    if (!snapshotEnabled) {
+      return;
+    }
+    List<Entry> hottest = entries.values().stream()
+        .sorted(Comparator.comparingInt((Entry entry) -> entry.uses).reversed())
+        .limit(snapshotMaxEntries)
+        .collect(Collectors.toList());
+    if (hottest.isEmpty()) {
+      return;
+    }
+
+    List<byte[]> ids = new ArrayList<>(hottest.size());
+    List<byte[]> documents = new ArrayList<>(hottest.size());
+    long size = HEADER_BYTES;
+    for (Entry entry : hottest) {
+      byte[] id = entry.card.getId().getBytes(StandardCharsets.UTF_8);
+      byte[] bson = encode(entry.card);
+      ids.add(id);
+      documents.add(bson);
+      size += 2 + id.length + 4 + bson.length;
+    }
+
+    Path temp = snapshotPath.resolveSibling(snapshotPath.getFileName() + ".tmp");
+    try {
+      PrivateFiles.createDirectories(snapshotPath.toAbsolutePath().getParent());
+      Files.deleteIfExists(temp);
+      try (FileChannel channel = FileChannel.open(temp, Set.of(StandardOpenOption.CREATE_NEW,
+          StandardOpenOption.READ, StandardOpenOption.WRITE), PrivateFiles.ownerOnlyFile())) {
+        MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        out.putInt(MAGIC).putInt(FORMAT_VERSION).putLong(System.currentTimeMillis()).putInt(hottest.size());
+        for (int i = 0; i < ids.size(); i++) {
+          out.putShort((short) ids.get(i).length).put(ids.get(i));
+          out.putInt(documents.get(i).length).put(documents.get(i));
+        }
+        out.force();
+      }
+      Files.move(temp, snapshotPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      log.info("Saved {} hot cards to {} ({} bytes)", hottest.size(), snapshotPath, size);
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not save hot card snapshot {}: {}", snapshotPath, e.toString());
+    }
+  }
+
+  private Card fromSnapshot(String id) {
+    MappedByteBuffer mapped = snapshot;
+    Map<String, long[]> index = snapshotIndex;
+    Set<String> changed = changedSinceSnapshot;
+    if (mapped == null || index == null || changed == null) {
+      return null;
+    }
+    // Each snapshot entry is promoted to the LRU at most once
+    long[] location = index.remove(id);
+    if (index.isEmpty()) {
+      dropSnapshot();
+    }
+    if (location == null || changed.contains(id)) {
+      return null;
+    }
+
+    ByteBuffer view = mapped.duplicate();
+    view.position((int) location[0]);
+    view.limit((int) (location[0] + location[1]));
+    try (BsonBinaryReader reader = new BsonBinaryReader(view.slice())) {
+      return converter.read(Card.class, CODEC.decode(reader, DECODER_CONTEXT));
+    } catch (RuntimeException e) {
+      log.warn("Could not decode snapshot entry for card {}: {}", id, e.toString());
+      return null;
+    }
+  }
+
+  /**
+   * Encode the fields mapToDTO reads, with the card number masked; cvv is never written
+   */
+  private byte[] encode(Card card) {
+    Card view = Card.builder()
+        .id(card.getId())
+        .cardNumber(CardNumbers.mask(card.getCardNumber()))
+        .cardNumberHash(card.getCardNumberHash())
+        .customerId(card.getCustomerId())
+        .cardType(card.getCardType())
+        .status(card.getStatus())
+        .expirationDate(card.getExpirationDate())
+        .associatedAccounts(card.getAssociatedAccounts())
+        .mainAccountId(card.getMainAccountId())
+        .creditId(card.getCreditId())
+        .createdAt(card.getCreatedAt())
+        .updatedAt(card.getUpdatedAt())
+        .build();
+    Document document = new Document();
+    converter.write(view, document);
+    BasicOutputBuffer buffer = new BasicOutputBuffer();
+    try (BsonBinaryWriter writer = new BsonBinaryWriter(buffer)) {
+      CODEC.encode(writer, document, ENCODER_CONTEXT);
+    }
+    return buffer.toByteArray();
+  }
+
+  /**
+   * Collect the keys (card ids) of every event published since the snapshot was taken
+   */
+  private void revalidate(long savedAtMillis) {
+    if (revalidationTopics.isEmpty()) {
+      changedSinceSnapshot = Collections.emptySet();
+      return;
+    }
+    Properties overrides = new Properties();
+    overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+    overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, "1000");
+
+    long deadline = System.currentTimeMillis() + revalidationTimeout.toMillis();
+    Set<String> changed = new HashSet<>();
+    try (Consumer<String, String> consumer = consumerFactory.createConsumer(null, "hot-card-revalidation", null, overrides)) {
+      List<TopicPartition> partitions = new ArrayList<>();
+      for (String topic : revalidationTopics) {
+        for (PartitionInfo info : consumer.partitionsFor(topic, revalidationTimeout)) {
+          partitions.add(new TopicPartition(topic, info.partition()));
+        }
+      }
+      consumer.assign(partitions);
+
+      Map<TopicPartition, Long> timestamps = new HashMap<>();
+      partitions.forEach(partition -> timestamps.put(partition, savedAtMillis));
+      Map<TopicPartition, OffsetAndTimestamp> start = consumer.offsetsForTimes(timestamps, revalidationTimeout);
+      Map<TopicPartition, Long> end = consumer.endOffsets(partitions, revalidationTimeout);
+
+      Set<TopicPartition> remaining = new HashSet<>();
+      for (TopicPartition partition : partitions) {
+        OffsetAndTimestamp offset = start.get(partition);
+        if (offset != null && offset.offset() < end.get(partition)) {
+          consumer.seek(partition, offset.offset());
+          remaining.add(partition);
+        }
+      }
+
+      while (!remaining.isEmpty()) {
+        if (System.currentTimeMillis() > deadline) {
+          log.warn("Hot card revalidation timed out, snapshot discarded");
+          dropSnapshot();
+          return;
+        }
+        for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(500))) {
+          if (record.key() != null) {
+            changed.add(record.key());
+          }
+        }
+        remaining.removeIf(partition -> consumer.position(partition) >= end.get(partition));
+      }
+    } catch (RuntimeException e) {
+      log.warn("Hot card revalidation failed, snapshot discarded: {}", e.toString());
+      dropSnapshot();
+      return;
+    }
+
+    changedSinceSnapshot = changed;
+    log.info("Hot card snapshot revalidated, {} cards changed since it was saved", changed.size());
+  }
+
+  private void dropSnapshot() {
+    snapshotIndex = null;
+    snapshot = null;
+  }
+
+  private static Counter lookups(MeterRegistry meterRegistry, String result) {
+    return Counter.builder("card.hotcache.lookups")
+        .description("Hot card cache lookups by result")
+        .tag("result", result)
+        .register(meterRegistry);
+  }
+
+  private static final class Entry {
+    private final Card card;
+    private final long loadedAtMillis;
+    private volatile int uses;  // approximate, racing increments may be lost
+
+    private Entry(Card card, long loadedAtMillis) {
+      this.card = card;
+      this.loadedAtMillis = loadedAtMillis;
+    }
+  }
+}
@@ -0,0 +1,64 @@
+package com.bootcamp67.ms_card.cache;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Small thread-safe LRU map with a fixed maximum size.
+ * Used as the hot in-memory window in front of Mongo backed stores.
+ */
+public class LruCache<K, V> {
+
+  private final Map<K, V> entries;
+
+  public LruCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.entries = new LinkedHashMap<K, V>(Math.min(maxSize, 1024), 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  public synchronized V get(K key) {
+    return entries.get(key);
+  }
+
+  public synchronized boolean containsKey(K key) {
+    return entries.containsKey(key);
+  }
+
+  public synchronized void put(K key, V value) {
+    entries.put(key, value);
+  }
+
+  public synchronized V remove(K key) {
+    return entries.remove(key);
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Remove every entry whose value matches, returning how many were removed
+   */
+  public synchronized int removeIf(Predicate<V> filter) {
+    int before = entries.size();
+    entries.values().removeIf(filter);
+    return before - entries.size();
+  }
+
+  /**
+   * Copy of the values, least recently used first
+   */
+  public synchronized List<V> values() {
+    return new ArrayList<>(entries.values());
+  }
+}
@@ -0,0 +1,69 @@
+package com.bootcamp67.ms_card.cache;
+
+import com.bootcamp67.ms_card.dto.TransactionDTO;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size ring with the most recent transactions of one card, newest last.
+ * "complete" means the ring was seeded from the ledger and can answer reads on its own.
+ */
+public class TransactionRing {
+
+  private final TransactionDTO[] items;
+  private int next;
+  private int size;
+  private boolean complete;
+
+  public TransactionRing(int capacity) {
+    this.items = new TransactionDTO[capacity];
+  }
+
+  public int capacity() {
+    return items.length;
+  }
+
+  public synchronized void add(TransactionDTO transaction) {
+    items[next] = transaction;
+    next = (next + 1) % items.length;
+    if (size < items.length) {
+      size++;
+    }
+  }
+
+  /**
+   * Seed with ledger rows (newest first), keeping entries added while the ledger was queried
+   */
+  public synchronized void seed(List<TransactionDTO> newestFirst) {
+    List<TransactionDTO> added = latest(size);
+    next = 0;
+    size = 0;
+    for (int i = newestFirst.size() - 1; i >= 0; i--) {
+      TransactionDTO row = newestFirst.get(i);
+      if (added.stream().noneMatch(tx -> tx.getId().equals(row.getId()))) {
+        add(row);
+      }
+    }
+    for (int i = added.size() - 1; i >= 0; i--) {
+      add(added.get(i));
+    }
+    complete = true;
+  }
+
+  public synchronized boolean isComplete() {
+    return complete;
+  }
+
+  /**
+   * Up to limit transactions, newest first
+   */
+  public synchronized List<TransactionDTO> latest(int limit) {
+    int count = Math.min(limit, size);
+    List<TransactionDTO> result = new ArrayList<>(count);
+    for (int i = 1; i <= count; i++) {
+      result.add(items[(next - i + items.length) % items.length]);
+    }
+    return result;
+  }
+}
@@ -14,9 +14,14 @@ import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.springframework.kafka.support.serializer.JsonDeserializer;
 import org.springframework.kafka.support.serializer.JsonSerializer;
+import org.springframework.util.backoff.FixedBackOff;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -30,6 +35,18 @@ public class KafkaConfig {
   @Value("${spring.kafka.consumer.group-id:card-service-group}")
   private String groupId;
 
+  @Value("${card.startup.defer-kafka-listeners:false}")
+  private boolean deferListeners;
+
+  @Value("${card.kafka.listeners.enabled:true}")
+  private boolean listenersEnabled;
+
+  @Value("${card.kafka.retry.attempts:3}")
+  private long retryAttempts;
+
+  @Value("${card.kafka.retry.backoff:1s}")
+  private Duration retryBackoff;
+
   /**
    * Kafka Producer Configuration
    */
@@ -76,8 +93,7 @@ public class KafkaConfig {
 
     // Consumer settings
     config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest"); // Read from beginning if no offset
-    config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, true); // Auto-commit offsets
-    config.put(ConsumerConfig.AUTO_COMMIT_INTERVAL_MS_CONFIG, 1000); // Commit every 1 second
+    config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false); // Committed by the container once processed
     config.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, 30000); // 30 seconds
     config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, 300000); // 5 minutes
     config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 100); // Max records per poll
@@ -97,6 +113,27 @@ public class KafkaConfig {
     factory.setConsumerFactory(consumerFactory());
     factory.setConcurrency(3); // 3 concurrent consumers
     factory.getContainerProperties().setPollTimeout(3000); // 3 seconds
+    factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.RECORD);
+    factory.setCommonErrorHandler(kafkaErrorHandler());
+    factory.setAutoStartup(listenersEnabled && !deferListeners); // Deferred listeners are started by StartupReport
     return factory;
   }
+
+  /**
+   * Listener errors are retried in place, then the record goes to {topic}.DLT with the
+   * exception in its headers. The offset only moves past a record once it is handled or parked.
+   */
+  @Bean
+  public DefaultErrorHandler kafkaErrorHandler() {
+    Map<String, Object> config = new HashMap<>();
+    config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+    config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+    config.put(ProducerConfig.ACKS_CONFIG, "all");
+    // Records are forwarded as received (String values), not re-serialized as JSON
+    KafkaTemplate<String, String> deadLetters = new KafkaTemplate<>(new DefaultKafkaProducerFactory<>(config));
+
+    return new DefaultErrorHandler(new DeadLetterPublishingRecoverer(deadLetters),
+        new FixedBackOff(retryBackoff.toMillis(), retryAttempts));
+  }
 }
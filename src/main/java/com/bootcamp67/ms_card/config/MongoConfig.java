@@ -0,0 +1,63 @@
+package com.bootcamp67.ms_card.config;
+
+import com.mongodb.ReadPreference;
+import com.mongodb.TagSet;
+import com.mongodb.WriteConcern;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read/write profiles.
+ * The primary template (used by all repositories) reads from the primary and writes with
+ * majority concern: payments, validations and state transitions go through it.
+ * The secondary template is for staleness tolerant list/lookup views only; never read
+ * through it to decide a write.
+ */
+@Configuration
+public class MongoConfig {
+
+  public static final String SECONDARY_TEMPLATE = "secondaryMongoTemplate";
+
+  @Value("${card.mongo.write-timeout:5s}")
+  private Duration writeTimeout;
+
+  @Value("${card.mongo.secondary-reads.enabled:true}")
+  private boolean secondaryReadsEnabled;
+
+  @Value("${card.mongo.secondary-reads.read-preference:secondaryPreferred}")
+  private String secondaryReadPreference;
+
+  @Value("${card.mongo.secondary-reads.max-staleness:90s}")
+  private Duration maxStaleness;
+
+  @Bean
+  @Primary
+  public ReactiveMongoTemplate reactiveMongoTemplate(ReactiveMongoDatabaseFactory databaseFactory,
+                                                     MongoConverter converter) {
+    ReactiveMongoTemplate template = new ReactiveMongoTemplate(databaseFactory, converter);
+    template.setReadPreference(ReadPreference.primary());
+    template.setWriteConcern(WriteConcern.MAJORITY.withWTimeout(writeTimeout.toMillis(), TimeUnit.MILLISECONDS));
+    return template;
+  }
+
+  @Bean(SECONDARY_TEMPLATE)
+  public ReactiveMongoTemplate secondaryMongoTemplate(ReactiveMongoDatabaseFactory databaseFactory,
+                                                      MongoConverter converter) {
+    ReactiveMongoTemplate template = new ReactiveMongoTemplate(databaseFactory, converter);
+    // Mongo rejects a max staleness under 90 seconds
+    template.setReadPreference(secondaryReadsEnabled
+        ? ReadPreference.valueOf(secondaryReadPreference, Collections.<TagSet>emptyList(),
+            Math.max(90, maxStaleness.getSeconds()), TimeUnit.SECONDS)
+        : ReadPreference.primary());
+    return template;
+  }
+}
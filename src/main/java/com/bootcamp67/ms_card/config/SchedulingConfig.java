@@ -0,0 +1,12 @@
+package com.bootcamp67.ms_card.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Enables periodic jobs (checkpoints, flushes)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -0,0 +1,45 @@
+package com.bootcamp67.ms_card.config;
+
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.server.WebFilter;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps the beans that must exist from the start eager when the fast-startup profile
+ * turns on lazy initialization: listeners and scheduled jobs are only registered for
+ * beans that get created, filters must be in the chain before the first request,
+ * runners are called only once at startup and health indicators feed readiness.
+ */
+@Configuration
+public class StartupConfig {
+
+  @Bean
+  public static LazyInitializationExcludeFilter eagerInfrastructureBeans() {
+    return (beanFactory, definition, beanType) ->
+        WebFilter.class.isAssignableFrom(beanType)
+            || ApplicationRunner.class.isAssignableFrom(beanType)
+            || CommandLineRunner.class.isAssignableFrom(beanType)
+            || HealthIndicator.class.isAssignableFrom(beanType)
+            || hasAnnotatedMethod(beanType);
+  }
+
+  private static boolean hasAnnotatedMethod(Class<?> beanType) {
+    AtomicBoolean found = new AtomicBoolean(false);
+    ReflectionUtils.doWithMethods(beanType,
+        method -> found.set(true),
+        method -> !found.get()
+            && (AnnotatedElementUtils.hasAnnotation(method, KafkaListener.class)
+            || AnnotatedElementUtils.hasAnnotation(method, Scheduled.class)));
+    return found.get();
+  }
+}
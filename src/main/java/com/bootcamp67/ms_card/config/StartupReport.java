@@ -0,0 +1,98 @@
+package com.bootcamp67.ms_card.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Runs once the application is ready: starts Kafka listeners whose start was deferred,
+ * logs the slowest bean instantiations recorded by the buffered ApplicationStartup and,
+ * for AppCDS training runs, exits.
+ */
+@Slf4j
+@Component
+public class StartupReport {
+
+  private static final String BEAN_INSTANTIATE_STEP = "spring.beans.instantiate";
+
+  private final ConfigurableApplicationContext context;
+  private final KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry;
+
+  @Value("${card.startup.defer-kafka-listeners:false}")
+  private boolean deferKafkaListeners;
+
+  @Value("${card.kafka.listeners.enabled:true}")
+  private boolean kafkaListenersEnabled;
+
+  @Value("${card.startup.report.top-beans:15}")
+  private int topBeans;
+
+  @Value("${card.startup.exit-after-ready:false}")
+  private boolean exitAfterReady;
+
+  public StartupReport(ConfigurableApplicationContext context,
+                       KafkaListenerEndpointRegistry kafkaListenerEndpointRegistry) {
+    this.context = context;
+    this.kafkaListenerEndpointRegistry = kafkaListenerEndpointRegistry;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    if (exitAfterReady) {
+      log.info("Training run finished, exiting");
+      System.exit(SpringApplication.exit(context, () -> 0));
+    }
+    if (deferKafkaListeners && kafkaListenersEnabled) {
+      kafkaListenerEndpointRegistry.getListenerContainers().forEach(MessageListenerContainer::start);
+      log.info("Started {} deferred Kafka listener containers",
+          kafkaListenerEndpointRegistry.getListenerContainers().size());
+    }
+    report();
+  }
+
+  private void report() {
+    ApplicationStartup startup = context.getApplicationStartup();
+    if (!(startup instanceof BufferingApplicationStartup) || topBeans <= 0) {
+      return;
+    }
+
+    // Reading the timeline leaves it in place for the actuator startup endpoint
+    StartupTimeline timeline = ((BufferingApplicationStartup) startup).getBufferedTimeline();
+    List<StartupTimeline.TimelineEvent> slowest = timeline.getEvents().stream()
+        .filter(event -> BEAN_INSTANTIATE_STEP.equals(event.getStartupStep().getName()))
+        .sorted(Comparator.comparing(StartupTimeline.TimelineEvent::getDuration).reversed())
+        .limit(topBeans)
+        .collect(Collectors.toList());
+
+    StringBuilder report = new StringBuilder();
+    slowest.forEach(event -> report.append(String.format("%n  %6d ms  %s",
+        event.getDuration().toMillis(), beanName(event.getStartupStep()))));
+    log.info("Ready {} ms after startup began; slowest beans (including their dependencies):{}",
+        Duration.between(timeline.getStartTime(), Instant.now()).toMillis(), report);
+  }
+
+  private static String beanName(StartupStep step) {
+    for (StartupStep.Tag tag : step.getTags()) {
+      if ("beanName".equals(tag.getKey())) {
+        return tag.getValue();
+      }
+    }
+    return step.getName();
+  }
+}
@@ -2,24 +2,47 @@ package com.bootcamp67.ms_card.controller;
 
 import com.bootcamp67.ms_card.dto.AssociateAccountRequest;
 import com.bootcamp67.ms_card.dto.BalanceResponse;
+import com.bootcamp67.ms_card.dto.BulkStatusChangeProgress;
+import com.bootcamp67.ms_card.dto.BulkStatusChangeRequest;
+import com.bootcamp67.ms_card.dto.CardAuditDTO;
 import com.bootcamp67.ms_card.dto.CardDTO;
+import com.bootcamp67.ms_card.dto.CardPortfolioResponse;
 import com.bootcamp67.ms_card.dto.CardResponse;
+import com.bootcamp67.ms_card.dto.CardSummary;
 import com.bootcamp67.ms_card.dto.CreditCardRequest;
 import com.bootcamp67.ms_card.dto.DebitCardRequest;
+import com.bootcamp67.ms_card.dto.ExportJob;
+import com.bootcamp67.ms_card.dto.ImportJob;
 import com.bootcamp67.ms_card.dto.PaymentRequest;
 import com.bootcamp67.ms_card.dto.TransactionDTO;
+import com.bootcamp67.ms_card.enums.ExportFormat;
+import com.bootcamp67.ms_card.exception.CardNotFoundException;
+import com.bootcamp67.ms_card.exception.InsufficientBalanceException;
+import com.bootcamp67.ms_card.exception.InvalidCardOperationException;
+import com.bootcamp67.ms_card.exception.VelocityLimitExceededException;
+import com.bootcamp67.ms_card.service.CardAuditService;
+import com.bootcamp67.ms_card.service.CardBulkStatusService;
+import com.bootcamp67.ms_card.service.CardExportService;
+import com.bootcamp67.ms_card.service.CardImportService;
 import com.bootcamp67.ms_card.service.CardService;
+import com.bootcamp67.ms_card.service.PaymentIdempotencyService;
 import com.bootcamp67.ms_card.util.SecurityContextUtil;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ContentDisposition;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.ZeroCopyHttpOutputMessage;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
@@ -35,7 +58,14 @@ import javax.validation.Valid;
 @RequiredArgsConstructor
 public class CardController {
 
+  private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
   private final CardService cardService;
+  private final PaymentIdempotencyService paymentIdempotencyService;
+  private final CardBulkStatusService cardBulkStatusService;
+  private final CardExportService cardExportService;
+  private final CardImportService cardImportService;
+  private final CardAuditService cardAuditService;
 
   @GetMapping
   public Mono<ResponseEntity<Flux<CardDTO>>> findAll(ServerWebExchange exchange) {
@@ -65,8 +95,21 @@ public class CardController {
         .defaultIfEmpty(ResponseEntity.notFound().build());
   }
 
+  @GetMapping("/by-token/{token}")
+  public Mono<ResponseEntity<CardDTO>> findByToken(
+      @PathVariable String token,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    log.info("REST request to get card by token by user: {}", username);
+
+    return cardService.findByToken(token)
+        .flatMap(card -> validateCardOwnership(exchange, card))
+        .map(ResponseEntity::ok)
+        .defaultIfEmpty(ResponseEntity.notFound().build());
+  }
+
   @GetMapping("/customer/{customerId}")
-  public Mono<ResponseEntity<Flux<CardDTO>>> findByCustomerId(
+  public Mono<ResponseEntity<Flux<CardSummary>>> findByCustomerId(
       @PathVariable String customerId,
       ServerWebExchange exchange) {
     String username = SecurityContextUtil.getUsername(exchange);
@@ -83,6 +126,40 @@ public class CardController {
     return Mono.just(ResponseEntity.ok(cardService.findByCustomerId(customerId)));
   }
 
+  @GetMapping("/account/{accountId}")
+  public Mono<ResponseEntity<Flux<CardDTO>>> findByAccountId(
+      @PathVariable String accountId,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    log.info("REST request to get cards using account: {} by user: {}", accountId, username);
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      log.warn("User {} attempted to access cards of account {} without ADMIN role", username, accountId);
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return Mono.just(ResponseEntity.ok(cardService.findByAccountId(accountId)));
+  }
+
+  @GetMapping("/customer/{customerId}/portfolio")
+  public Mono<ResponseEntity<CardPortfolioResponse>> getPortfolio(
+      @PathVariable String customerId,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    String authCustomerId = SecurityContextUtil.getCustomerId(exchange);
+
+    log.info("REST request to get card portfolio of customer: {} by user: {}", customerId, username);
+
+    if (!SecurityContextUtil.isAdmin(exchange) && !customerId.equals(authCustomerId)) {
+      log.warn("User {} attempted to access portfolio of customer {} without permission",
+          username, customerId);
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardService.getPortfolio(customerId)
+        .map(ResponseEntity::ok);
+  }
+
   @PostMapping("/debit")
   public Mono<ResponseEntity<CardResponse>> createDebitCard(
       @RequestBody @Valid DebitCardRequest request,
@@ -239,11 +316,29 @@ public class CardController {
   public Mono<ResponseEntity<CardResponse>> processPayment(
       @PathVariable String id,
       @RequestBody @Valid PaymentRequest request,
+      @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
       ServerWebExchange exchange) {
     String username = SecurityContextUtil.getUsername(exchange);
     log.info("REST request to process payment of {} for card {} by user: {}",
         request.getAmount(), id, username);
 
+    if (idempotencyKey == null || idempotencyKey.isEmpty()) {
+      return executePayment(id, request, exchange);
+    }
+
+    String customerId = SecurityContextUtil.getCustomerId(exchange);
+    String scope = customerId != null ? customerId : username;
+    String fingerprint = id + "|" + request.getAmount().stripTrailingZeros().toPlainString()
+        + "|" + request.getDescription() + "|" + request.getMerchantName();
+
+    return paymentIdempotencyService.execute(scope, idempotencyKey, fingerprint,
+        () -> executePayment(id, request, exchange));
+  }
+
+  private Mono<ResponseEntity<CardResponse>> executePayment(
+      String id,
+      PaymentRequest request,
+      ServerWebExchange exchange) {
     return cardService.findById(id)
         .flatMap(card -> validateCardOwnership(exchange, card))
         .flatMap(card -> cardService.processPayment(id, request))
@@ -252,11 +347,35 @@ public class CardController {
             .message("Payment processed successfully")
             .data(null)
             .build())))
-        .onErrorResume(ex -> Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN)
-            .body(CardResponse.builder()
-                .success(false)
-                .message(ex.getMessage())
-                .build())));
+        .onErrorResume(this::paymentFailure);
+  }
+
+  /**
+   * Business failures become a response with their own status; anything else
+   * (timeouts, Mongo or downstream errors) propagates so it is not stored as the outcome.
+   */
+  private Mono<ResponseEntity<CardResponse>> paymentFailure(Throwable ex) {
+    HttpStatus status;
+    if (ex instanceof CardNotFoundException) {
+      status = HttpStatus.NOT_FOUND;
+    } else if (ex instanceof SecurityException) {
+      status = HttpStatus.FORBIDDEN;
+    } else if (ex instanceof InsufficientBalanceException) {
+      status = HttpStatus.PAYMENT_REQUIRED;
+    } else if (ex instanceof VelocityLimitExceededException) {
+      status = HttpStatus.TOO_MANY_REQUESTS;
+    } else if (ex instanceof InvalidCardOperationException || ex instanceof IllegalArgumentException) {
+      status = HttpStatus.BAD_REQUEST;
+    } else if (ex instanceof IllegalStateException) {
+      status = HttpStatus.CONFLICT;
+    } else {
+      return Mono.error(ex);
+    }
+    return Mono.just(ResponseEntity.status(status)
+        .body(CardResponse.builder()
+            .success(false)
+            .message(ex.getMessage())
+            .build()));
   }
 
   @GetMapping("/{id}/balance")
@@ -291,6 +410,20 @@ public class CardController {
         .onErrorResume(ex -> Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build()));
   }
 
+  @GetMapping("/{id}/audit")
+  public Mono<ResponseEntity<Flux<CardAuditDTO>>> getAuditTrail(
+      @PathVariable String id,
+      @RequestParam(defaultValue = "50") Integer limit,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    log.info("REST request to get audit trail for card: {} by user: {}", id, username);
+
+    return cardService.findById(id)
+        .flatMap(card -> validateCardOwnership(exchange, card))
+        .map(card -> ResponseEntity.ok(cardAuditService.findByCard(card.getId(), limit)))
+        .onErrorResume(ex -> Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build()));
+  }
+
   @DeleteMapping("/{id}")
   public Mono<ResponseEntity<Void>> delete(
       @PathVariable String id,
@@ -305,6 +438,137 @@ public class CardController {
         .onErrorResume(ex -> Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build()));
   }
 
+  @PostMapping(value = "/admin/status-bulk", produces = MediaType.APPLICATION_NDJSON_VALUE)
+  public Mono<ResponseEntity<Flux<BulkStatusChangeProgress>>> changeStatusBulk(
+      @Valid @RequestBody BulkStatusChangeRequest request,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    log.info("REST request to change status of cards in bulk to {} by user: {}",
+        request.getTargetStatus(), username);
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      log.warn("User {} attempted a bulk status change without ADMIN role", username);
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return Mono.just(ResponseEntity.ok(cardBulkStatusService.changeStatus(request)));
+  }
+
+  @PostMapping("/admin/exports")
+  public Mono<ResponseEntity<ExportJob>> startExport(
+      @RequestParam(defaultValue = "NDJSON") ExportFormat format,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    log.info("REST request to export cards as {} by user: {}", format, username);
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      log.warn("User {} attempted to export cards without ADMIN role", username);
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardExportService.start(format)
+        .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job));
+  }
+
+  @PostMapping("/admin/exports/{jobId}/resume")
+  public Mono<ResponseEntity<ExportJob>> resumeExport(
+      @PathVariable String jobId,
+      ServerWebExchange exchange) {
+    log.info("REST request to resume export {} by user: {}", jobId, SecurityContextUtil.getUsername(exchange));
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardExportService.resume(jobId)
+        .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job));
+  }
+
+  @GetMapping("/admin/exports/{jobId}")
+  public Mono<ResponseEntity<ExportJob>> getExport(
+      @PathVariable String jobId,
+      ServerWebExchange exchange) {
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardExportService.status(jobId)
+        .map(ResponseEntity::ok);
+  }
+
+  /**
+   * Serves a complete part with zero-copy (sendfile) when the server supports it
+   */
+  @GetMapping("/admin/exports/{jobId}/parts/{part}")
+  public Mono<Void> downloadExportPart(
+      @PathVariable String jobId,
+      @PathVariable String part,
+      ServerWebExchange exchange) {
+    log.info("REST request to download part {} of export {} by user: {}",
+        part, jobId, SecurityContextUtil.getUsername(exchange));
+    ServerHttpResponse response = exchange.getResponse();
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      response.setStatusCode(HttpStatus.FORBIDDEN);
+      return response.setComplete();
+    }
+
+    return cardExportService.part(jobId, part)
+        .flatMap(path -> {
+          long size = path.toFile().length();
+          response.getHeaders().setContentType(MediaType.parseMediaType("application/gzip"));
+          response.getHeaders().setContentLength(size);
+          response.getHeaders().setContentDisposition(ContentDisposition.attachment().filename(part).build());
+
+          if (response instanceof ZeroCopyHttpOutputMessage) {
+            return ((ZeroCopyHttpOutputMessage) response).writeWith(path, 0, size);
+          }
+          return response.writeWith(DataBufferUtils.read(path, response.bufferFactory(), 64 * 1024));
+        });
+  }
+
+  @PostMapping("/admin/imports")
+  public Mono<ResponseEntity<ImportJob>> startImport(
+      @RequestParam String file,
+      ServerWebExchange exchange) {
+    String username = SecurityContextUtil.getUsername(exchange);
+    log.info("REST request to import cards from {} by user: {}", file, username);
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      log.warn("User {} attempted to import cards without ADMIN role", username);
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardImportService.start(file)
+        .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job));
+  }
+
+  @PostMapping("/admin/imports/{jobId}/resume")
+  public Mono<ResponseEntity<ImportJob>> resumeImport(
+      @PathVariable String jobId,
+      ServerWebExchange exchange) {
+    log.info("REST request to resume import {} by user: {}", jobId, SecurityContextUtil.getUsername(exchange));
+
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardImportService.resume(jobId)
+        .map(job -> ResponseEntity.status(HttpStatus.ACCEPTED).body(job));
+  }
+
+  @GetMapping("/admin/imports/{jobId}")
+  public Mono<ResponseEntity<ImportJob>> getImport(
+      @PathVariable String jobId,
+      ServerWebExchange exchange) {
+    if (!SecurityContextUtil.isAdmin(exchange)) {
+      return Mono.just(ResponseEntity.status(HttpStatus.FORBIDDEN).build());
+    }
+
+    return cardImportService.status(jobId)
+        .map(ResponseEntity::ok);
+  }
+
   private Mono<CardDTO> validateCardOwnership(ServerWebExchange exchange, CardDTO card) {
     String authCustomerId = SecurityContextUtil.getCustomerId(exchange);
     String username = SecurityContextUtil.getUsername(exchange);
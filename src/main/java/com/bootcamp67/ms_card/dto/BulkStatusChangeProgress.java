@@ -0,0 +1,24 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.CardStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Progress line of a bulk status change, one per processed chunk
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkStatusChangeProgress {
+  private CardStatus targetStatus;
+  private Integer chunk;
+  private Long matched;
+  private Long modified;
+  private Long eventsPublished;
+  private Long elapsedMillis;
+  private Boolean done;
+}
@@ -0,0 +1,35 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.util.List;
+
+/**
+ * Filter and target of a bulk status change. Filters are combined with AND;
+ * at least one must be given.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkStatusChangeRequest {
+  private List<String> customerIds;
+
+  @Pattern(regexp = "\\d{1,16}", message = "Card number prefix must be 1 to 16 digits")
+  private String cardNumberPrefix;
+
+  private CardType cardType;
+  private CardStatus status;
+
+  @NotNull(message = "Target status is required")
+  private CardStatus targetStatus;
+
+  private String reason;
+}
@@ -0,0 +1,24 @@
+package com.bootcamp67.ms_card.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardAuditDTO {
+  private String id;
+  private String cardId;
+  private String action;
+  private String field;
+  private String oldValue;
+  private String newValue;
+  private String reason;
+  private String actor;
+  private LocalDateTime timestamp;
+}
@@ -18,6 +18,7 @@ import java.util.List;
 public class CardDTO {
   private String id;
   private String cardNumber;
+  private String cardToken;
   private String customerId;
   private CardType cardType;
   private CardStatus status;
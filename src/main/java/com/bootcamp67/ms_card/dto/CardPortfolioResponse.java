@@ -0,0 +1,23 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardPortfolioResponse {
+  private String customerId;
+  private Long totalCards;
+  private Map<CardType, Long> cardsByType;
+  private Map<CardStatus, Long> cardsByStatus;
+  private List<PortfolioCardDTO> cards;
+}
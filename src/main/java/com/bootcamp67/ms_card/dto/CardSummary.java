@@ -0,0 +1,28 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * Lean card view for list endpoints.
+ * Read with a field projection, so only these fields are fetched from Mongo.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CardSummary {
+  private String id;
+  private String cardNumber;
+  private CardType cardType;
+  private CardStatus status;
+  private LocalDate expirationDate;
+  private String mainAccountId;
+  private String creditId;
+}
@@ -0,0 +1,52 @@
+package com.bootcamp67.ms_card.dto;
+
+/**
+ * Outcome of a debit attempt against one account.
+ * Closed set of outcomes (approved, insufficient, error); declines are values, not exceptions.
+ */
+public final class DebitResult {
+
+  public enum Outcome {
+    APPROVED,
+    INSUFFICIENT,
+    ERROR
+  }
+
+  private final Outcome outcome;
+  private final String accountId;
+  private final String reason;
+
+  private DebitResult(Outcome outcome, String accountId, String reason) {
+    this.outcome = outcome;
+    this.accountId = accountId;
+    this.reason = reason;
+  }
+
+  public static DebitResult approved(String accountId) {
+    return new DebitResult(Outcome.APPROVED, accountId, null);
+  }
+
+  public static DebitResult insufficient(String accountId) {
+    return new DebitResult(Outcome.INSUFFICIENT, accountId, "Insufficient balance in account: " + accountId);
+  }
+
+  public static DebitResult error(String accountId, String reason) {
+    return new DebitResult(Outcome.ERROR, accountId, reason);
+  }
+
+  public Outcome getOutcome() {
+    return outcome;
+  }
+
+  public boolean isApproved() {
+    return outcome == Outcome.APPROVED;
+  }
+
+  public String getAccountId() {
+    return accountId;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+}
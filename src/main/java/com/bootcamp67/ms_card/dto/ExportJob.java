@@ -0,0 +1,48 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.ExportFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Export job status, also written as the job manifest (manifest.json in the job folder).
+ * Parts listed here are complete; lastId is the last card written to them, where a resume starts.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ExportJob {
+
+  public static final String RUNNING = "RUNNING";
+  public static final String COMPLETED = "COMPLETED";
+  public static final String FAILED = "FAILED";
+  public static final String INTERRUPTED = "INTERRUPTED";
+
+  private String jobId;
+  private ExportFormat format;
+  private String status;
+  private Integer partSize;
+  private Long rows;
+  private String lastId;
+  @Builder.Default
+  private List<Part> parts = new ArrayList<>();
+  private Instant startedAt;
+  private Instant finishedAt;
+  private String error;
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class Part {
+    private String name;
+    private Long rows;
+    private Long bytes;
+  }
+}
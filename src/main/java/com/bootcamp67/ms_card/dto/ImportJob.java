@@ -0,0 +1,42 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.ExportFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Import job status, also written as the job manifest after every committed window.
+ * offset and lines point past the last window fully written, where a resume starts;
+ * rejectsBytes is the size of the rejects file at that point.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportJob {
+
+  public static final String RUNNING = "RUNNING";
+  public static final String COMPLETED = "COMPLETED";
+  public static final String FAILED = "FAILED";
+  public static final String INTERRUPTED = "INTERRUPTED";
+
+  private String jobId;
+  private String file;
+  private ExportFormat format;
+  private String status;
+  private Long fileSize;
+  private Long offset;
+  private Long lines;
+  private Long imported;
+  private Long skipped;  // already imported by an earlier run of the job
+  private Long rejected;
+  private String rejectsFile;
+  private Long rejectsBytes;
+  private Instant startedAt;
+  private Instant finishedAt;
+  private String error;
+}
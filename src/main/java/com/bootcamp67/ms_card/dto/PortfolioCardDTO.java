@@ -0,0 +1,26 @@
+package com.bootcamp67.ms_card.dto;
+
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PortfolioCardDTO {
+  private String id;
+  private String cardNumber;
+  private CardType cardType;
+  private CardStatus status;
+  private LocalDate expirationDate;
+  private String mainAccountId;  // For debit cards
+  private String creditId;       // For credit cards
+  private BigDecimal balance;    // Main account balance or available credit, null if unavailable
+}
@@ -0,0 +1,37 @@
+package com.bootcamp67.ms_card.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Decayed debit success statistics per account of a card (id is the card id)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "account_routing_stats")
+public class AccountRoutingStats {
+
+  @Id
+  private String id;
+  private List<AccountStat> accounts;
+  private Instant updatedAt;
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class AccountStat {
+    private String accountId;
+    private double successes;
+    private double attempts;
+    private long updatedAtMillis;
+  }
+}
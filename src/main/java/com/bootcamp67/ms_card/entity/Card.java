@@ -7,7 +7,12 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.HashIndexed;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Sharded;
+import org.springframework.data.mongodb.core.mapping.ShardingStrategy;
 
 import java.time.LocalDate;
 import java.time.LocalDateTime;
@@ -19,20 +24,32 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "cards")
+@CompoundIndex(name = "status_expirationDate", def = "{'status': 1, 'expirationDate': 1, '_id': 1}")
+@Sharded(shardKey = "customerId", shardingStrategy = ShardingStrategy.HASH, immutableKey = true)
 public class Card {
 
   @Id
-  private String id;
+  private String id;  // customerId_objectIdHex, see CardIds
+  @Indexed(sparse = true)
+  private String legacyId;  // plain ObjectId of cards migrated to the current id scheme
+  @Indexed(sparse = true)
+  private String sourceId;  // id the card had in the file it was imported from
   private String cardNumber;
+  @Indexed(sparse = true)
+  private byte[] cardNumberHash;  // HMAC of the normalized card number, unique through CardNumberClaim
+  @HashIndexed
   private String customerId;
   private CardType cardType;
   private CardStatus status;
   private LocalDate expirationDate;
   private String cvv;
+  @Indexed
   @Builder.Default
   private List<String> associatedAccounts = new ArrayList<>();
   private String mainAccountId;
   private String creditId;
+  private String replacedBy;  // id of the card issued by the renewal job
+  private String replaces;    // id of the card this one renews
   private LocalDateTime createdAt;
   private LocalDateTime updatedAt;
 }
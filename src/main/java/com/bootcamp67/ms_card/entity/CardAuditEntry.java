@@ -0,0 +1,45 @@
+package com.bootcamp67.ms_card.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Append-only history of card changes; entries are never updated or deleted
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "card_audit")
+@CompoundIndex(name = "cardId_timestamp", def = "{'cardId': 1, 'timestamp': -1}")
+public class CardAuditEntry {
+
+  public static final String ACTION_CREATED = "CREATED";
+  public static final String ACTION_STATUS_CHANGED = "STATUS_CHANGED";
+  public static final String ACTION_ACCOUNT_ASSOCIATED = "ACCOUNT_ASSOCIATED";
+  public static final String ACTION_ACCOUNT_DETACHED = "ACCOUNT_DETACHED";
+  public static final String ACTION_MAIN_ACCOUNT_CHANGED = "MAIN_ACCOUNT_CHANGED";
+  public static final String ACTION_DELETED = "DELETED";
+  public static final String ACTION_RENEWED = "RENEWED";
+  public static final String ACTOR_SYSTEM = "system";
+
+  @Id
+  private String id;
+  private String cardId;     // null on account-level entries
+  private String accountId;  // set on account-level entries, which cover every card using the account
+  private String customerId;
+  private String action;
+  private String field;
+  private String oldValue;
+  private String newValue;
+  private String reason;
+  private String actor;  // username of the request, or "system" for events and jobs
+  private LocalDateTime timestamp;
+}
@@ -0,0 +1,29 @@
+package com.bootcamp67.ms_card.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.LocalDateTime;
+
+/**
+ * Global uniqueness of card numbers once cards are sharded by customer.
+ * A sharded collection can only enforce unique indexes prefixed by the shard key, so the
+ * card number is claimed here first; id is the card token (Base64 of cardNumberHash).
+ * Also resolves a token to the card's id, which makes the card lookup targeted.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "card_numbers")
+public class CardNumberClaim {
+
+  @Id
+  private String id;
+  private String cardId;
+  private LocalDateTime claimedAt;
+}
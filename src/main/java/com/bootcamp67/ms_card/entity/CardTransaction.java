@@ -0,0 +1,47 @@
+package com.bootcamp67.ms_card.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "card_transactions")
+@CompoundIndex(name = "cardId_transactionDate_covering",
+    def = "{'cardId': 1, 'transactionDate': -1, '_id': 1, 'type': 1, 'amount': 1, 'description': 1,"
+        + " 'merchantName': 1, 'accountId': 1, 'status': 1}")
+public class CardTransaction {
+
+  /**
+   * Fields returned by the transaction history; all of them are in the covering index
+   */
+  public static final String[] COVERED_FIELDS = {"_id", "cardId", "transactionDate", "type", "amount",
+      "description", "merchantName", "accountId", "status"};
+
+  public static final String TYPE_DEBIT_PAYMENT = "DEBIT_PAYMENT";
+  public static final String TYPE_CREDIT_PAYMENT = "CREDIT_PAYMENT";
+  public static final String STATUS_COMPLETED = "COMPLETED";
+  public static final String STATUS_PENDING = "PENDING";
+  public static final String STATUS_FAILED = "FAILED";
+
+  @Id
+  private String id;
+  private String cardId;
+  private String customerId;
+  private String type;
+  private BigDecimal amount;
+  private String description;
+  private String merchantName;
+  private String accountId;
+  private LocalDateTime transactionDate;
+  private String status;
+}
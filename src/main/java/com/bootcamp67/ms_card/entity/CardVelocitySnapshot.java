@@ -0,0 +1,45 @@
+package com.bootcamp67.ms_card.entity;
+
+import com.bootcamp67.ms_card.limit.VelocityWindow;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Checkpoint of the velocity windows of a card as counted by one instance.
+ * Id is "instanceId:cardId", so instances don't overwrite each other's checkpoints.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "card_velocity")
+@CompoundIndex(name = "instanceId_savedAt", def = "{'instanceId': 1, 'savedAt': 1}")
+public class CardVelocitySnapshot {
+
+  @Id
+  private String id;
+  private String instanceId;
+  private String cardId;
+  private List<WindowState> windows;
+  @Indexed(name = "savedAt_ttl", expireAfter = "2d")
+  private Instant savedAt;
+
+  @Data
+  @NoArgsConstructor
+  @AllArgsConstructor
+  public static class WindowState {
+    private VelocityWindow window;
+    private long[] epochs;
+    private long[] counts;
+    private long[] amounts;
+  }
+}
@@ -0,0 +1,29 @@
+package com.bootcamp67.ms_card.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Resume position and lease of a change stream publisher.
+ * Id is the watched collection; only the lease owner publishes and moves the resume token.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "change_stream_checkpoints")
+public class ChangeStreamCheckpoint {
+
+  @Id
+  private String id;
+  private String resumeToken;  // resume token as extended JSON
+  private String owner;
+  private Instant leaseUntil;
+  private Instant savedAt;
+}
@@ -0,0 +1,35 @@
+package com.bootcamp67.ms_card.entity;
+
+import com.bootcamp67.ms_card.dto.CardResponse;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Stored outcome of a request sent with an Idempotency-Key header.
+ * Id is "scope:key"; records expire through a TTL index after 24 hours.
+ * While the payment runs the record is pending and its owner keeps renewing leaseUntil.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "idempotency_keys")
+public class IdempotencyRecord {
+
+  @Id
+  private String id;
+  private String fingerprint;
+  private boolean completed;
+  private Integer statusCode;
+  private CardResponse response;
+  @Indexed(name = "createdAt_ttl", expireAfter = "24h")
+  private Instant createdAt;
+  private Instant leaseUntil;
+}
@@ -0,0 +1,30 @@
+package com.bootcamp67.ms_card.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Marker for an event already handled by a consumer.
+ * Id is "consumer:eventId"; Mongo drops the marker once the TTL expires.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "processed_events")
+public class ProcessedEvent {
+
+  @Id
+  private String id;
+  private String consumer;
+  private String eventId;
+  @Indexed(name = "processedAt_ttl", expireAfter = "7d")
+  private Instant processedAt;
+}
@@ -0,0 +1,16 @@
+package com.bootcamp67.ms_card.enums;
+
+public enum ExportFormat {
+  NDJSON("ndjson"),
+  CSV("csv");
+
+  private final String extension;
+
+  ExportFormat(String extension) {
+    this.extension = extension;
+  }
+
+  public String getExtension() {
+    return extension;
+  }
+}
@@ -20,4 +20,5 @@ public class CardCreatedEvent {
   private LocalDate expirationDate;
   private String mainAccountId;  // For debit cards
   private String creditId;       // For credit cards
+  private String replacesCardId; // For renewals
 }
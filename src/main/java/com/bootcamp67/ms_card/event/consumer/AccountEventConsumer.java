@@ -1,15 +1,26 @@
 package com.bootcamp67.ms_card.event.consumer;
 
+import com.bootcamp67.ms_card.service.CardService;
+import com.bootcamp67.ms_card.service.EventIdempotencyService;
+import com.fasterxml.jackson.databind.JsonNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class AccountEventConsumer {
 
+  private static final String CLOSED = "CLOSED";
+  private static final Duration DETACH_TIMEOUT = Duration.ofSeconds(30);
+
+  private final EventIdempotencyService eventIdempotencyService;
+  private final CardService cardService;
+
   @KafkaListener(
       topics = "account-events",
       groupId = "card-service-group",
@@ -19,23 +30,45 @@ public class AccountEventConsumer {
     log.info("Received account event: {}", message);
 
     try {
-      log.info("Processing account event: {}", message);
+      eventIdempotencyService.processOnce("account-events", message,
+          event -> log.info("Processing account event: {}", message));
 
-    } catch (Exception e) {
+    } catch (RuntimeException e) {
       log.error("Error processing account event: {}", e.getMessage(), e);
+      throw e;
     }
   }
 
   @KafkaListener(
       topics = "account-status-events",
-      groupId = "card-service-group"
+      groupId = "card-service-group",
+      containerFactory = "kafkaListenerContainerFactory"
   )
   public void handleAccountStatusChange(String message) {
     log.info("Received account status change: {}", message);
 
     try {
-    } catch (Exception e) {
+      eventIdempotencyService.processOnce("account-status-events", message, event -> {
+        // Fields may be at the top level or inside the CardEvent style payload
+        JsonNode payload = event.path("payload").isObject() ? event.path("payload") : event;
+        String accountId = text(payload, "accountId", event.path("accountId").asText(null));
+        String status = text(payload, "newStatus", text(payload, "status", null));
+        boolean closed = CLOSED.equalsIgnoreCase(status)
+            || "ACCOUNT_CLOSED".equalsIgnoreCase(event.path("eventType").asText(null));
+
+        if (closed && accountId != null) {
+          Long detached = cardService.detachAccount(accountId).block(DETACH_TIMEOUT);
+          log.info("Closed account {} removed from {} cards", accountId, detached);
+        }
+      });
+    } catch (RuntimeException e) {
       log.error("Error processing account status change: {}", e.getMessage(), e);
+      throw e;
     }
   }
+
+  private static String text(JsonNode node, String field, String fallback) {
+    JsonNode value = node.path(field);
+    return value.isTextual() ? value.asText() : fallback;
+  }
 }
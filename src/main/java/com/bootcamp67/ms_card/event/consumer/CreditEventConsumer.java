@@ -1,61 +1,278 @@
 package com.bootcamp67.ms_card.event.consumer;
 
-import lombok.RequiredArgsConstructor;
+import com.bootcamp67.ms_card.service.CreditAvailabilityService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.kafka.annotation.KafkaListener;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.WakeupException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Feeds the credit availability projection.
+ * Every instance needs every credit event, so instead of a consumer group this tails all
+ * partitions of the credit topics with manual assignment, from the beginning on every start.
+ * Nothing is committed and no group is registered on the brokers. Duplicates are dropped by the
+ * projection (by eventId), not through the shared processed_events markers.
+ * The replay counts as caught up once every partition reached the end offset it had at
+ * startup; CreditProjectionHealthIndicator keeps readiness down until then.
+ */
 @Slf4j
 @Component
-@RequiredArgsConstructor
 public class CreditEventConsumer {
 
-  @KafkaListener(
-      topics = "credit-events",
-      groupId = "card-service-group",
-      containerFactory = "kafkaListenerContainerFactory"
-  )
-  public void handleCreditEvent(String message) {
-    log.info("Received credit event: {}", message);
+  private static final String CREDIT_EVENTS = "credit-events";
+  private static final String CREDIT_STATUS_EVENTS = "credit-status-events";
+  private static final String CREDIT_PAYMENT_EVENTS = "credit-payment-events";
+  private static final List<String> TOPICS = Arrays.asList(CREDIT_EVENTS, CREDIT_STATUS_EVENTS, CREDIT_PAYMENT_EVENTS);
+  private static final Duration POLL_TIMEOUT = Duration.ofSeconds(1);
+  private static final Duration METADATA_TIMEOUT = Duration.ofSeconds(30);
+  private static final long RETRY_DELAY_MILLIS = 5000;
 
-    try {
+  private static final Set<String> CHARGE_TYPES = new HashSet<>(
+      Arrays.asList("CHARGE", "PURCHASE", "CONSUMPTION", "CARD_PAYMENT"));
+
+  private final CreditAvailabilityService creditAvailabilityService;
+  private final ObjectMapper objectMapper;
+  private final ConsumerFactory<String, String> consumerFactory;
+  private final boolean enabled;
+  private volatile Consumer<String, String> consumer;
+  private volatile boolean running;
+  private volatile boolean caughtUp;
+
+  public CreditEventConsumer(CreditAvailabilityService creditAvailabilityService,
+                             ObjectMapper objectMapper,
+                             ConsumerFactory<String, String> consumerFactory,
+                             @Value("${card.credit.projection.enabled:true}") boolean projectionEnabled,
+                             @Value("${card.kafka.listeners.enabled:true}") boolean listenersEnabled) {
+    this.creditAvailabilityService = creditAvailabilityService;
+    this.objectMapper = objectMapper;
+    this.consumerFactory = consumerFactory;
+    this.enabled = projectionEnabled && listenersEnabled;
+    this.caughtUp = !enabled;
+  }
+
+  /**
+   * True once the startup replay reached the end offsets seen when it began
+   */
+  public boolean isCaughtUp() {
+    return caughtUp;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+    running = true;
+    Thread thread = new Thread(this::tail, "credit-projection");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    running = false;
+    Consumer<String, String> current = consumer;
+    if (current != null) {
+      current.wakeup();
+    }
+  }
+
+  /**
+   * Replay the credit topics from the beginning and keep following them; reconnects after errors
+   */
+  private void tail() {
+    while (running) {
+      try (Consumer<String, String> kafkaConsumer = createConsumer()) {
+        consumer = kafkaConsumer;
+        List<TopicPartition> partitions = partitions(kafkaConsumer);
+        kafkaConsumer.assign(partitions);
+        kafkaConsumer.seekToBeginning(partitions);
+        Map<TopicPartition, Long> replayEnd = new HashMap<>(kafkaConsumer.endOffsets(partitions, METADATA_TIMEOUT));
+        log.info("Credit projection replaying {} partitions of {}", partitions.size(), TOPICS);
+
+        while (running) {
+          for (ConsumerRecord<String, String> record : kafkaConsumer.poll(POLL_TIMEOUT)) {
+            dispatch(record);
+          }
+          if (!caughtUp) {
+            replayEnd.entrySet().removeIf(end -> kafkaConsumer.position(end.getKey()) >= end.getValue());
+            if (replayEnd.isEmpty()) {
+              caughtUp = true;
+              log.info("Credit projection caught up with the credit topics");
+            }
+          }
+        }
+      } catch (WakeupException e) {
+        // stop() was called
+      } catch (RuntimeException e) {
+        log.error("Credit projection consumer failed, restarting in {} ms: {}", RETRY_DELAY_MILLIS, e.getMessage(), e);
+        sleep(RETRY_DELAY_MILLIS);
+      } finally {
+        consumer = null;
+      }
+    }
+  }
+
+  /**
+   * Consumer without group.id: partitions are assigned here, so there is nothing to join or commit
+   */
+  private Consumer<String, String> createConsumer() {
+    Map<String, Object> config = new HashMap<>(consumerFactory.getConfigurationProperties());
+    config.remove(ConsumerConfig.GROUP_ID_CONFIG);
+    config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+    config.put(ConsumerConfig.CLIENT_ID_CONFIG, "card-credit-projection");
+    config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 1000);
+    return new KafkaConsumer<>(config);
+  }
+
+  private static List<TopicPartition> partitions(Consumer<String, String> kafkaConsumer) {
+    List<TopicPartition> partitions = new ArrayList<>();
+    for (String topic : TOPICS) {
+      List<PartitionInfo> infos = kafkaConsumer.partitionsFor(topic, METADATA_TIMEOUT);
+      if (infos == null) {
+        continue;
+      }
+      for (PartitionInfo info : infos) {
+        partitions.add(new TopicPartition(topic, info.partition()));
+      }
+    }
+    return partitions;
+  }
+
+  private void dispatch(ConsumerRecord<String, String> record) {
+    switch (record.topic()) {
+      case CREDIT_EVENTS:
+        handleCreditEvent(record.value());
+        break;
+      case CREDIT_STATUS_EVENTS:
+        handleCreditStatusChange(record.value());
+        break;
+      case CREDIT_PAYMENT_EVENTS:
+        handleCreditPayment(record.value());
+        break;
+      default:
+        break;
+    }
+  }
 
-      log.info("Processing credit event: {}", message);
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
 
+  void handleCreditEvent(String message) {
+    log.debug("Received credit event: {}", message);
 
+    try {
+      JsonNode event = objectMapper.readTree(message);
+      JsonNode payload = payload(event);
+      creditAvailabilityService.updateLine(
+          text(event, "eventId"),
+          creditId(event, payload),
+          decimal(payload, "availableCredit", "availableBalance", "available"),
+          text(payload, "status"));
     } catch (Exception e) {
       log.error("Error processing credit event: {}", e.getMessage(), e);
-      // In production: send to DLQ (Dead Letter Queue)
     }
   }
 
   /**
-   * Listen to credit status change events
+   * Credit status change events
    */
-  @KafkaListener(
-      topics = "credit-status-events",
-      groupId = "card-service-group"
-  )
-  public void handleCreditStatusChange(String message) {
-    log.info("Received credit status change: {}", message);
+  void handleCreditStatusChange(String message) {
+    log.debug("Received credit status change: {}", message);
 
     try {
-
+      JsonNode event = objectMapper.readTree(message);
+      JsonNode payload = payload(event);
+      String status = text(payload, "newStatus");
+      creditAvailabilityService.updateStatus(
+          text(event, "eventId"),
+          creditId(event, payload),
+          status != null ? status : text(payload, "status"));
     } catch (Exception e) {
       log.error("Error processing credit status change: {}", e.getMessage(), e);
     }
   }
 
-  @KafkaListener(
-      topics = "credit-payment-events",
-      groupId = "card-service-group"
-  )
-  public void handleCreditPayment(String message) {
-    log.info("Received credit payment event: {}", message);
+  void handleCreditPayment(String message) {
+    log.debug("Received credit payment event: {}", message);
 
     try {
+      JsonNode event = objectMapper.readTree(message);
+      JsonNode payload = payload(event);
+      String type = text(payload, "type");
+      if (type == null) {
+        type = text(event, "eventType");
+      }
+      // The topic carries repayments; charges made elsewhere consume credit
+      boolean repayment = type == null || !CHARGE_TYPES.contains(type.toUpperCase());
+      creditAvailabilityService.applyPayment(
+          text(event, "eventId"),
+          creditId(event, payload),
+          decimal(payload, "amount"),
+          repayment,
+          decimal(payload, "availableCredit", "availableBalance", "available"));
     } catch (Exception e) {
       log.error("Error processing credit payment: {}", e.getMessage(), e);
     }
   }
+
+  /**
+   * Fields may be at the top level or inside a payload object
+   */
+  private static JsonNode payload(JsonNode event) {
+    return event.path("payload").isObject() ? event.path("payload") : event;
+  }
+
+  private static String creditId(JsonNode event, JsonNode payload) {
+    String creditId = text(payload, "creditId");
+    if (creditId == null) {
+      creditId = text(event, "creditId");
+    }
+    return creditId != null ? creditId : text(payload, "id");
+  }
+
+  private static String text(JsonNode node, String field) {
+    JsonNode value = node.path(field);
+    return value.isValueNode() && !value.isNull() ? value.asText() : null;
+  }
+
+  private static BigDecimal decimal(JsonNode node, String... fields) {
+    for (String field : fields) {
+      JsonNode value = node.path(field);
+      if (value.isNumber()) {
+        return value.decimalValue();
+      }
+      if (value.isTextual()) {
+        return new BigDecimal(value.asText());
+      }
+    }
+    return null;
+  }
 }
@@ -0,0 +1,22 @@
+package com.bootcamp67.ms_card.event.consumer;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Readiness gate: OUT_OF_SERVICE until the credit projection replayed the credit topics,
+ * so credit payments are not pre-authorized against a partial projection
+ */
+@Component
+@RequiredArgsConstructor
+public class CreditProjectionHealthIndicator implements HealthIndicator {
+
+  private final CreditEventConsumer creditEventConsumer;
+
+  @Override
+  public Health health() {
+    return creditEventConsumer.isCaughtUp() ? Health.up().build() : Health.outOfService().build();
+  }
+}
@@ -1,5 +1,6 @@
 package com.bootcamp67.ms_card.event.consumer;
 
+import com.bootcamp67.ms_card.service.EventIdempotencyService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.kafka.annotation.KafkaListener;
@@ -10,6 +11,8 @@ import org.springframework.stereotype.Component;
 @RequiredArgsConstructor
 public class CustomerEventConsumer {
 
+  private final EventIdempotencyService eventIdempotencyService;
+
   @KafkaListener(
       topics = "customer-events",
       groupId = "card-service-group",
@@ -25,17 +28,19 @@ public class CustomerEventConsumer {
       // - CUSTOMER_DELETED -> Delete or archive all cards
       // - CUSTOMER_UPGRADED -> Update card tier/benefits
 
-      log.info("Processing customer event: {}", message);
+      eventIdempotencyService.processOnce("customer-events", message, event -> {
+        log.info("Processing customer event: {}", message);
 
-      // For now, just log. In production:
-      // 1. Parse JSON to CustomerEvent object
-      // 2. Check event type
-      // 3. Find all cards for this customer
-      // 4. Execute corresponding action (block, delete, update)
+        // For now, just log. In production:
+        // 1. Parse JSON to CustomerEvent object
+        // 2. Check event type
+        // 3. Find all cards for this customer
+        // 4. Execute corresponding action (block, delete, update)
+      });
 
-    } catch (Exception e) {
+    } catch (RuntimeException e) {
       log.error("Error processing customer event: {}", e.getMessage(), e);
-      // In production: send to DLQ (Dead Letter Queue)
+      throw e;
     }
   }
 
@@ -50,12 +55,15 @@ public class CustomerEventConsumer {
     log.info("Received customer status change: {}", message);
 
     try {
-      // TODO: Implement logic
-      // If customer is blocked -> Block all their cards
-      // If customer is VIP -> Upgrade card benefits
+      eventIdempotencyService.processOnce("customer-status-events", message, event -> {
+        // TODO: Implement logic
+        // If customer is blocked -> Block all their cards
+        // If customer is VIP -> Upgrade card benefits
+      });
 
-    } catch (Exception e) {
+    } catch (RuntimeException e) {
       log.error("Error processing customer status change: {}", e.getMessage(), e);
+      throw e;
     }
   }
 }
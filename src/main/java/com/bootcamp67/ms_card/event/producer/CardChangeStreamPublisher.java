@@ -0,0 +1,351 @@
+package com.bootcamp67.ms_card.event.producer;
+
+import com.bootcamp67.ms_card.cache.HotCardCache;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.ChangeStreamCheckpoint;
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.event.CardCreatedEvent;
+import com.bootcamp67.ms_card.event.CardEvent;
+import com.bootcamp67.ms_card.event.CardStatusChangedEvent;
+import com.bootcamp67.ms_card.event.MainAccountChange;
+import com.bootcamp67.ms_card.util.CardIds;
+import com.bootcamp67.ms_card.util.CardNumbers;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Publishes card events from the cards change stream instead of from the request path.
+ * Inserts become CARD_CREATED; status, main account and associated account updates become
+ * CARD_BLOCKED/CARD_ACTIVATED, MAIN_ACCOUNT_CHANGED and ACCOUNT_ASSOCIATED. Events are sent in
+ * batches and the resume token is checkpointed after each batch, so delivery is at least once;
+ * event ids are derived from the resume token, so redeliveries carry the same id.
+ * One instance at a time holds the publishing lease. Every instance also tails updates and
+ * deletes to evict changed cards from its hot card cache.
+ * Requires a replica set; previous values are not in the change stream, so previousStatus
+ * and oldAccountId are left empty.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "card.change-stream.enabled", havingValue = "true")
+public class CardChangeStreamPublisher {
+
+  private static final String COLLECTION = "cards";
+  private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+  private static final Duration RELEASE_TIMEOUT = Duration.ofSeconds(5);
+  private static final String ASSOCIATED_ACCOUNTS = "associatedAccounts";
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final CardEventProducer cardEventProducer;
+  private final HotCardCache hotCardCache;
+  private final int batchSize;
+  private final Duration flushInterval;
+  private final int publishConcurrency;
+  private final Duration lease;
+  private final String owner = UUID.randomUUID().toString();
+
+  private Disposable leaseTicker;
+  private Disposable invalidation;
+  private volatile Disposable publishing;
+
+  public CardChangeStreamPublisher(ReactiveMongoTemplate mongoTemplate,
+                                   CardEventProducer cardEventProducer,
+                                   HotCardCache hotCardCache,
+                                   @Value("${card.change-stream.batch-size:200}") int batchSize,
+                                   @Value("${card.change-stream.flush-interval:50ms}") Duration flushInterval,
+                                   @Value("${card.change-stream.publish-concurrency:64}") int publishConcurrency,
+                                   @Value("${card.change-stream.lease:30s}") Duration lease) {
+    this.mongoTemplate = mongoTemplate;
+    this.cardEventProducer = cardEventProducer;
+    this.hotCardCache = hotCardCache;
+    this.batchSize = batchSize;
+    this.flushInterval = flushInterval;
+    this.publishConcurrency = publishConcurrency;
+    this.lease = lease;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    invalidation = Flux.defer(() -> changes(null, false, "update", "replace", "delete"))
+        .retryWhen(backoff("Cache invalidation change stream"))
+        .subscribe(event -> hotCardCache.invalidate(idOf(event.getRaw())));
+
+    leaseTicker = Flux.interval(Duration.ZERO, lease.dividedBy(3))
+        .concatMap(tick -> acquireLease()
+            .onErrorResume(error -> {
+              log.warn("Could not renew change stream lease: {}", error.getMessage());
+              return Mono.just(false);
+            }))
+        .subscribe(this::onLease);
+  }
+
+  @PreDestroy
+  public void stop() {
+    if (leaseTicker != null) {
+      leaseTicker.dispose();
+    }
+    if (invalidation != null) {
+      invalidation.dispose();
+    }
+    if (publishing != null) {
+      stopPublishing();
+      Query query = Query.query(Criteria.where("_id").is(COLLECTION).and("owner").is(owner));
+      mongoTemplate.updateFirst(query, Update.update("leaseUntil", Instant.EPOCH), ChangeStreamCheckpoint.class)
+          .onErrorResume(error -> Mono.empty())
+          .block(RELEASE_TIMEOUT);
+    }
+  }
+
+  private void onLease(boolean held) {
+    if (held && publishing == null) {
+      log.info("Acquired change stream lease, publishing card events");
+      publishing = publish().subscribe();
+    } else if (!held && publishing != null) {
+      log.warn("Lost change stream lease, stopped publishing card events");
+      stopPublishing();
+    }
+  }
+
+  private synchronized void stopPublishing() {
+    if (publishing != null) {
+      publishing.dispose();
+      publishing = null;
+    }
+  }
+
+  private Flux<Void> publish() {
+    return Flux.defer(() -> resumeToken()
+            .map(Optional::of)
+            .defaultIfEmpty(Optional.empty())
+            .flatMapMany(token -> changes(token.orElse(null), true, "insert", "update")))
+        .onErrorResume(CardChangeStreamPublisher::isHistoryLost, error -> {
+          log.error("Resume token is no longer in the oplog, card events were missed; restarting from now");
+          return clearResumeToken().then(Mono.error(error));
+        })
+        .bufferTimeout(batchSize, flushInterval)
+        .concatMap(this::publishBatch)
+        .retryWhen(backoff("Card event change stream"));
+  }
+
+  private Mono<Void> publishBatch(List<ChangeStreamEvent<Document>> batch) {
+    return Flux.fromIterable(batch)
+        .concatMapIterable(this::toEvents)
+        .flatMapSequential(cardEventProducer::publishChange, publishConcurrency)
+        .then(Mono.defer(() -> checkpoint(batch.get(batch.size() - 1).getResumeToken())));
+  }
+
+  /**
+   * Card events for one change; empty when no published field changed
+   */
+  private List<CardEvent> toEvents(ChangeStreamEvent<Document> change) {
+    ChangeStreamDocument<Document> raw = change.getRaw();
+    if (raw == null || raw.getOperationType() == null) {
+      return Collections.emptyList();
+    }
+    String cardId = idOf(raw);
+    BsonValue tokenData = raw.getResumeToken().get("_data");
+    String eventIdPrefix = tokenData != null && tokenData.isString()
+        ? tokenData.asString().getValue()
+        : raw.getResumeToken().toJson();
+    Document body = change.getBody();
+    String customerId = customerIdOf(raw, body, cardId);
+    List<CardEvent> events = new ArrayList<>(1);
+
+    switch (raw.getOperationType()) {
+      case INSERT:
+        // Copies made by the id migration are not new cards
+        if (body != null && body.get("legacyId") == null) {
+          Card card = mongoTemplate.getConverter().read(Card.class, body);
+          events.add(event(eventIdPrefix, events.size(), CardEvent.EventType.CARD_CREATED, cardId, customerId,
+              CardCreatedEvent.builder()
+                  .cardId(cardId)
+                  .customerId(customerId)
+                  .cardType(card.getCardType())
+                  .maskedCardNumber(CardNumbers.mask(card.getCardNumber()))
+                  .expirationDate(card.getExpirationDate())
+                  .mainAccountId(card.getMainAccountId())
+                  .creditId(card.getCreditId())
+                  .replacesCardId(card.getReplaces())
+                  .build()));
+        }
+        break;
+      case UPDATE:
+        if (raw.getUpdateDescription() == null || raw.getUpdateDescription().getUpdatedFields() == null) {
+          break;
+        }
+        for (Map.Entry<String, BsonValue> field : raw.getUpdateDescription().getUpdatedFields().entrySet()) {
+          CardEvent event = fieldEvent(eventIdPrefix, events.size(), cardId, customerId, field.getKey(), field.getValue());
+          if (event != null) {
+            events.add(event);
+          }
+        }
+        break;
+      default:
+        break;
+    }
+    return events;
+  }
+
+  private CardEvent fieldEvent(String eventIdPrefix, int index, String cardId, String customerId,
+                               String field, BsonValue value) {
+    if (field.equals("status") && value.isString()) {
+      CardStatus status = CardStatus.valueOf(value.asString().getValue());
+      if (status == CardStatus.EXPIRED) {
+        return null;
+      }
+      return event(eventIdPrefix, index,
+          status == CardStatus.BLOCKED ? CardEvent.EventType.CARD_BLOCKED : CardEvent.EventType.CARD_ACTIVATED,
+          cardId, customerId,
+          CardStatusChangedEvent.builder()
+              .cardId(cardId)
+              .customerId(customerId)
+              .newStatus(status)
+              .build());
+    }
+    if (field.equals("mainAccountId") && value.isString()) {
+      return event(eventIdPrefix, index, CardEvent.EventType.MAIN_ACCOUNT_CHANGED, cardId, customerId,
+          new MainAccountChange(null, value.asString().getValue()));
+    }
+    // Associating $pushes onto the array, which is always present, and is reported as
+    // "associatedAccounts.<n>". The whole array is only reported when it is replaced, which
+    // the account detach pipeline does; that is not an association and is not published.
+    if (field.startsWith(ASSOCIATED_ACCOUNTS + ".") && value.isString()) {
+      return event(eventIdPrefix, index, CardEvent.EventType.ACCOUNT_ASSOCIATED, cardId, customerId,
+          value.asString().getValue());
+    }
+    return null;
+  }
+
+  private static CardEvent event(String eventIdPrefix, int index, String type,
+                                 String cardId, String customerId, Object payload) {
+    return CardEvent.builder()
+        .eventId(eventIdPrefix + ":" + index)
+        .eventType(type)
+        .cardId(cardId)
+        .customerId(customerId)
+        .timestamp(LocalDateTime.now())
+        .payload(payload)
+        .build();
+  }
+
+  private Flux<ChangeStreamEvent<Document>> changes(BsonValue resumeToken, boolean lookup, String... operations) {
+    ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+        .filter(Aggregation.newAggregation(Aggregation.match(Criteria.where("operationType").in((Object[]) operations))));
+    if (lookup) {
+      options.fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+    }
+    if (resumeToken != null) {
+      options.resumeAfter(resumeToken);
+    }
+    return mongoTemplate.changeStream(COLLECTION, options.build(), Document.class);
+  }
+
+  /**
+   * Take or renew the lease; true while this instance holds it
+   */
+  private Mono<Boolean> acquireLease() {
+    Instant now = Instant.now();
+    Query query = Query.query(Criteria.where("_id").is(COLLECTION).orOperator(
+        Criteria.where("owner").is(owner),
+        Criteria.where("leaseUntil").lt(now),
+        Criteria.where("leaseUntil").exists(false)));
+    Update update = Update.update("owner", owner).set("leaseUntil", now.plus(lease));
+
+    return mongoTemplate.findAndModify(query, update,
+            FindAndModifyOptions.options().upsert(true).returnNew(true), ChangeStreamCheckpoint.class)
+        .map(checkpoint -> owner.equals(checkpoint.getOwner()))
+        .defaultIfEmpty(false)
+        // Upsert racing with the current owner's document
+        .onErrorResume(DuplicateKeyException.class, e -> Mono.just(false));
+  }
+
+  private Mono<BsonValue> resumeToken() {
+    return mongoTemplate.findById(COLLECTION, ChangeStreamCheckpoint.class)
+        .filter(checkpoint -> checkpoint.getResumeToken() != null)
+        .map(checkpoint -> BsonDocument.parse(checkpoint.getResumeToken()));
+  }
+
+  private Mono<Void> checkpoint(BsonValue resumeToken) {
+    Query query = Query.query(Criteria.where("_id").is(COLLECTION).and("owner").is(owner));
+    Update update = Update.update("resumeToken", resumeToken.asDocument().toJson())
+        .set("savedAt", Instant.now());
+
+    return mongoTemplate.updateFirst(query, update, ChangeStreamCheckpoint.class)
+        .doOnNext(result -> {
+          if (result.getMatchedCount() == 0) {
+            onLease(false);
+          }
+        })
+        .then();
+  }
+
+  private Mono<Void> clearResumeToken() {
+    Query query = Query.query(Criteria.where("_id").is(COLLECTION).and("owner").is(owner));
+    return mongoTemplate.updateFirst(query, new Update().unset("resumeToken"), ChangeStreamCheckpoint.class)
+        .then();
+  }
+
+  private static Retry backoff(String name) {
+    return Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+        .maxBackoff(Duration.ofSeconds(30))
+        .doBeforeRetry(signal -> log.warn("{} failed, resuming: {}", name, signal.failure().getMessage()));
+  }
+
+  private static boolean isHistoryLost(Throwable error) {
+    for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+      if (cause instanceof MongoException && ((MongoException) cause).getCode() == CHANGE_STREAM_HISTORY_LOST) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String idOf(ChangeStreamDocument<Document> raw) {
+    BsonValue id = raw.getDocumentKey() == null ? null : raw.getDocumentKey().get("_id");
+    if (id == null) {
+      return null;
+    }
+    return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+  }
+
+  private static String customerIdOf(ChangeStreamDocument<Document> raw, Document body, String cardId) {
+    if (body != null && body.getString("customerId") != null) {
+      return body.getString("customerId");
+    }
+    BsonValue shardKey = raw.getDocumentKey() == null ? null : raw.getDocumentKey().get("customerId");
+    return shardKey != null && shardKey.isString() ? shardKey.asString().getValue() : CardIds.customerIdOf(cardId);
+  }
+}
@@ -122,6 +122,17 @@ public class CardEventProducer {
     return sendEvent(CARD_EVENTS_TOPIC, cardEvent.getCardId(), cardEvent);
   }
 
+  /**
+   * Publish an event built from the cards change stream, on the topic of its type
+   */
+  public Mono<Void> publishChange(CardEvent cardEvent) {
+    log.debug("Publishing {} event for card: {}", cardEvent.getEventType(), cardEvent.getCardId());
+
+    boolean statusChange = CardEvent.EventType.CARD_BLOCKED.equals(cardEvent.getEventType())
+        || CardEvent.EventType.CARD_ACTIVATED.equals(cardEvent.getEventType());
+    return sendEvent(statusChange ? CARD_STATUS_TOPIC : CARD_EVENTS_TOPIC, cardEvent.getCardId(), cardEvent);
+  }
+
   private Mono<Void> sendEvent(String topic, String key, Object event) {
     return Mono.create(sink -> {
       try {
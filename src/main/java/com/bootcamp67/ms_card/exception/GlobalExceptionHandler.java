@@ -36,6 +36,12 @@ public class GlobalExceptionHandler {
     return Mono.just(createErrorResponse(ex.getMessage(), HttpStatus.BAD_REQUEST));
   }
 
+  @ExceptionHandler(VelocityLimitExceededException.class)
+  public Mono<ResponseEntity<Map<String, Object>>> handleVelocityLimit(VelocityLimitExceededException ex) {
+    log.warn("Velocity limit exceeded: {}", ex.getMessage());
+    return Mono.just(createErrorResponse(ex.getMessage(), HttpStatus.TOO_MANY_REQUESTS));
+  }
+
   @ExceptionHandler(IllegalArgumentException.class)
   public Mono<ResponseEntity<Map<String, Object>>> handleIllegalArgument(IllegalArgumentException ex) {
     log.error("Illegal argument: {}", ex.getMessage());
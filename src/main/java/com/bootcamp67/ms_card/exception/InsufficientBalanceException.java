@@ -4,4 +4,11 @@ public class InsufficientBalanceException extends RuntimeException {
   public InsufficientBalanceException(String message) {
     super(message);
   }
+
+  /**
+   * Without stack trace, for expected declines (cheap to create, safe to preallocate)
+   */
+  public InsufficientBalanceException(String message, boolean writableStackTrace) {
+    super(message, null, false, writableStackTrace);
+  }
 }
@@ -4,4 +4,11 @@ public class InvalidCardOperationException extends RuntimeException {
   public InvalidCardOperationException(String message) {
     super(message);
   }
+
+  /**
+   * Without stack trace, for expected declines (cheap to create, safe to preallocate)
+   */
+  public InvalidCardOperationException(String message, boolean writableStackTrace) {
+    super(message, null, false, writableStackTrace);
+  }
 }
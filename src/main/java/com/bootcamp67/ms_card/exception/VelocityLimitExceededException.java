@@ -0,0 +1,10 @@
+package com.bootcamp67.ms_card.exception;
+
+/**
+ * Expected decline, raised without stack trace
+ */
+public class VelocityLimitExceededException extends RuntimeException {
+  public VelocityLimitExceededException(String message) {
+    super(message, null, false, false);
+  }
+}
@@ -1,5 +1,8 @@
 package com.bootcamp67.ms_card.interceptor;
 
+import com.bootcamp67.ms_card.limit.CustomerRateLimiter;
+import com.bootcamp67.ms_card.util.SecurityContextUtil;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -7,12 +10,15 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class HeaderInterceptor implements WebFilter {
   private static final List<String> PUBLIC_ENDPOINTS = Arrays.asList(
       "/actuator/health",
@@ -23,6 +29,11 @@ public class HeaderInterceptor implements WebFilter {
   private static final String HEADER_USERNAME = "X-Auth-Username";
   private static final String HEADER_CUSTOMER_ID = "X-Auth-Customer-Id";
   private static final String HEADER_ROLE = "X-Auth-Role";
+  private static final byte[] TOO_MANY_REQUESTS_BODY =
+      "{\"error\":\"Too Many Requests\",\"message\":\"Rate limit exceeded\",\"status\":429}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final CustomerRateLimiter customerRateLimiter;
 
   @Override
   public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
@@ -53,12 +64,31 @@ public class HeaderInterceptor implements WebFilter {
     exchange.getAttributes().put("customerId", customerId);
     exchange.getAttributes().put("role", role);
 
-    return chain.filter(exchange);
+    String clientKey = customerId != null && !customerId.isEmpty() ? customerId : username;
+    long retryAfterSeconds = customerRateLimiter.tryAcquire(
+        clientKey, exchange.getRequest().getMethod(), path);
+    if (retryAfterSeconds > 0) {
+      log.warn("Rate limit exceeded for client {} on path: {}", clientKey, path);
+      return tooManyRequests(exchange, retryAfterSeconds);
+    }
+
+    return chain.filter(exchange)
+        .contextWrite(Context.of(SecurityContextUtil.USERNAME_CONTEXT_KEY, username));
   }
   private boolean isPublicEndpoint(String path) {
     return PUBLIC_ENDPOINTS.stream().anyMatch(path::startsWith);
   }
 
+  private Mono<Void> tooManyRequests(ServerWebExchange exchange, long retryAfterSeconds) {
+    exchange.getResponse().setStatusCode(HttpStatus.TOO_MANY_REQUESTS);
+    exchange.getResponse().getHeaders().add("Content-Type", "application/json");
+    exchange.getResponse().getHeaders().add("Retry-After", Long.toString(retryAfterSeconds));
+
+    return exchange.getResponse().writeWith(
+        Mono.just(exchange.getResponse().bufferFactory().wrap(TOO_MANY_REQUESTS_BODY))
+    );
+  }
+
   private Mono<Void> unauthorized(ServerWebExchange exchange, String message) {
     exchange.getResponse().setStatusCode(HttpStatus.UNAUTHORIZED);
     exchange.getResponse().getHeaders().add("Content-Type", "application/json");
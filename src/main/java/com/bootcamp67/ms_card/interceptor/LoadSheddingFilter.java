@@ -0,0 +1,140 @@
+package com.bootcamp67.ms_card.interceptor;
+
+import com.bootcamp67.ms_card.limit.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Sheds load before authentication or any Mongo call.
+ * Payments and card creation get adaptive concurrency limits; the long admin streams
+ * (findAll, bulk status changes and export part downloads) share a small fixed bulkhead so
+ * they can't take the capacity payments need. Other routes, admin job control included, are
+ * not limited here (they are covered by the per customer rate limiter).
+ */
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class LoadSheddingFilter implements WebFilter {
+
+  private static final String BASE_PATH = "/api/v1/cards";
+  private static final Pattern EXPORT_PART = Pattern.compile(Pattern.quote(BASE_PATH) + "/admin/exports/[^/]+/parts/[^/]+");
+  private static final byte[] SERVICE_UNAVAILABLE_BODY =
+      "{\"error\":\"Service Unavailable\",\"message\":\"Server is overloaded, retry later\",\"status\":503}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  enum Route {
+    PAYMENT,
+    CREATION,
+    ADMIN_STREAM
+  }
+
+  private final Map<Route, AdaptiveConcurrencyLimiter> limiters = new EnumMap<>(Route.class);
+  private final Map<Route, Counter> rejections = new EnumMap<>(Route.class);
+  private final boolean enabled;
+  private final String retryAfterSeconds;
+
+  public LoadSheddingFilter(Environment environment, MeterRegistry meterRegistry) {
+    this.enabled = environment.getProperty("card.load-shedding.enabled", Boolean.class, true);
+    this.retryAfterSeconds = environment.getProperty("card.load-shedding.retry-after-seconds", "1");
+
+    limiters.put(Route.PAYMENT, adaptive(environment, "payment", 50, 10, 500));
+    limiters.put(Route.CREATION, adaptive(environment, "creation", 20, 5, 200));
+    limiters.put(Route.ADMIN_STREAM, AdaptiveConcurrencyLimiter.fixed(
+        environment.getProperty("card.load-shedding.admin-stream.max-concurrent", Integer.class, 2)));
+
+    limiters.forEach((route, limiter) -> {
+      String tag = route.name().toLowerCase();
+      Gauge.builder("card.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+          .description("Current concurrency limit")
+          .tag("route", tag)
+          .register(meterRegistry);
+      Gauge.builder("card.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+          .description("Requests currently holding a concurrency permit")
+          .tag("route", tag)
+          .register(meterRegistry);
+      rejections.put(route, Counter.builder("card.concurrency.rejected")
+          .description("Requests shed with 503 by the concurrency limiter")
+          .tag("route", tag)
+          .register(meterRegistry));
+    });
+  }
+
+  @Override
+  public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+    Route route = enabled ? route(exchange.getRequest().getMethod(), exchange.getRequest().getPath().value()) : null;
+    if (route == null) {
+      return chain.filter(exchange);
+    }
+
+    AdaptiveConcurrencyLimiter limiter = limiters.get(route);
+    if (!limiter.tryAcquire()) {
+      rejections.get(route).increment();
+      log.warn("Shedding {} request, limit {} reached", route, limiter.getLimit());
+      return serviceUnavailable(exchange);
+    }
+
+    long start = System.nanoTime();
+    return chain.filter(exchange)
+        .doFinally(signal -> limiter.release(
+            signal == SignalType.ON_COMPLETE ? System.nanoTime() - start : -1));
+  }
+
+  static Route route(HttpMethod method, String path) {
+    if (!path.startsWith(BASE_PATH)) {
+      return null;
+    }
+    if (method == HttpMethod.POST) {
+      if (path.endsWith("/payment")) {
+        return Route.PAYMENT;
+      }
+      if (path.equals(BASE_PATH + "/debit") || path.equals(BASE_PATH + "/credit")) {
+        return Route.CREATION;
+      }
+      if (path.equals(BASE_PATH + "/admin/status-bulk")) {
+        return Route.ADMIN_STREAM;
+      }
+    } else if (method == HttpMethod.GET && (path.equals(BASE_PATH) || path.equals(BASE_PATH + "/")
+        || EXPORT_PART.matcher(path).matches())) {
+      return Route.ADMIN_STREAM;
+    }
+    return null;
+  }
+
+  private AdaptiveConcurrencyLimiter adaptive(Environment environment, String name,
+                                              int initial, int min, int max) {
+    String prefix = "card.load-shedding." + name + ".";
+    return new AdaptiveConcurrencyLimiter(
+        environment.getProperty(prefix + "initial-limit", Integer.class, initial),
+        environment.getProperty(prefix + "min-limit", Integer.class, min),
+        environment.getProperty(prefix + "max-limit", Integer.class, max),
+        environment.getProperty(prefix + "rtt-tolerance", Double.class, 2.0));
+  }
+
+  private Mono<Void> serviceUnavailable(ServerWebExchange exchange) {
+    exchange.getResponse().setStatusCode(HttpStatus.SERVICE_UNAVAILABLE);
+    exchange.getResponse().getHeaders().add("Content-Type", "application/json");
+    exchange.getResponse().getHeaders().add("Retry-After", retryAfterSeconds);
+
+    return exchange.getResponse().writeWith(
+        Mono.just(exchange.getResponse().bufferFactory().wrap(SERVICE_UNAVAILABLE_BODY))
+    );
+  }
+}
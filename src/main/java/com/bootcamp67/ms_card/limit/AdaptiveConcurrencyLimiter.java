@@ -0,0 +1,83 @@
+package com.bootcamp67.ms_card.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Concurrency limit adjusted from observed latency (gradient style).
+ * The limit shrinks when the sample latency grows past tolerance x the long term
+ * average, and grows by sqrt(limit) while latency stays flat and the limit is in use.
+ * With minLimit == maxLimit it behaves as a fixed bulkhead.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+  private static final double SMOOTHING = 0.2;
+  private static final double LONG_RTT_WEIGHT = 0.05;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final int minLimit;
+  private final int maxLimit;
+  private final double tolerance;
+  private volatile double limit;
+  private double longRttNanos;
+
+  public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.tolerance = tolerance;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  public static AdaptiveConcurrencyLimiter fixed(int limit) {
+    return new AdaptiveConcurrencyLimiter(limit, limit, limit, 1.0);
+  }
+
+  public boolean tryAcquire() {
+    while (true) {
+      int current = inFlight.get();
+      if (current >= (int) limit) {
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Release a permit; rttNanos is the latency of a completed call, or -1 when the call
+   * failed or was cancelled (released without adjusting the limit).
+   */
+  public void release(long rttNanos) {
+    int inFlightAtCompletion = inFlight.getAndDecrement();
+    if (rttNanos > 0 && minLimit < maxLimit) {
+      onSample(rttNanos, inFlightAtCompletion);
+    }
+  }
+
+  private synchronized void onSample(long rttNanos, int inFlightAtCompletion) {
+    if (longRttNanos == 0) {
+      longRttNanos = rttNanos;
+      return;
+    }
+    longRttNanos = longRttNanos * (1 - LONG_RTT_WEIGHT) + rttNanos * LONG_RTT_WEIGHT;
+
+    double current = limit;
+    // Application limited: don't grow a limit that isn't being used
+    if (inFlightAtCompletion < current / 2) {
+      return;
+    }
+
+    double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+    double target = current * gradient + Math.sqrt(current);
+    double next = current * (1 - SMOOTHING) + target * SMOOTHING;
+    limit = Math.max(minLimit, Math.min(maxLimit, next));
+  }
+
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+}
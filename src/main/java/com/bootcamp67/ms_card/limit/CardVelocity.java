@@ -0,0 +1,63 @@
+package com.bootcamp67.ms_card.limit;
+
+/**
+ * Spend and count windows of one card
+ */
+public class CardVelocity {
+
+  private final SlidingWindowCounter[] windows;
+  private volatile long lastActivityMillis;
+  private volatile boolean dirty;
+
+  public CardVelocity() {
+    VelocityWindow[] values = VelocityWindow.values();
+    this.windows = new SlidingWindowCounter[values.length];
+    for (VelocityWindow window : values) {
+      windows[window.ordinal()] = new SlidingWindowCounter(window.getBucketMillis(), window.getBuckets());
+    }
+  }
+
+  public void add(long timeMillis, long count, long amount) {
+    for (SlidingWindowCounter window : windows) {
+      window.add(timeMillis, count, amount);
+    }
+    lastActivityMillis = Math.max(lastActivityMillis, timeMillis);
+    dirty = true;
+  }
+
+  public SlidingWindowCounter window(VelocityWindow window) {
+    return windows[window.ordinal()];
+  }
+
+  /**
+   * First window exceeding its limit, or null when all are within limits
+   */
+  public VelocityWindow firstExceeded(long nowMillis, VelocityLimits limits) {
+    for (VelocityWindow window : VelocityWindow.values()) {
+      SlidingWindowCounter counter = windows[window.ordinal()];
+      long maxCount = limits.maxCount(window);
+      long maxAmount = limits.maxAmount(window);
+      if ((maxCount > 0 && counter.count(nowMillis) > maxCount)
+          || (maxAmount > 0 && counter.amount(nowMillis) > maxAmount)) {
+        return window;
+      }
+    }
+    return null;
+  }
+
+  public long getLastActivityMillis() {
+    return lastActivityMillis;
+  }
+
+  public boolean isDirty() {
+    return dirty;
+  }
+
+  public void markClean() {
+    dirty = false;
+  }
+
+  public void markDirty() {
+    dirty = true;
+  }
+}
@@ -0,0 +1,91 @@
+package com.bootcamp67.ms_card.limit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.env.Environment;
+import org.springframework.http.HttpMethod;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per customer token buckets, one budget per route group.
+ * Buckets that refilled completely are dropped (a full bucket equals a new one), which keeps
+ * the map bounded by active clients; past max-clients new clients are let through untracked.
+ */
+@Slf4j
+@Component
+public class CustomerRateLimiter {
+
+  private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+  private final Map<RouteGroup, double[]> budgets = new EnumMap<>(RouteGroup.class);
+  private final Map<RouteGroup, Counter> rejections = new EnumMap<>(RouteGroup.class);
+  private final boolean enabled;
+  private final int maxClients;
+
+  public CustomerRateLimiter(Environment environment, MeterRegistry meterRegistry) {
+    this.enabled = environment.getProperty("card.rate-limit.enabled", Boolean.class, true);
+    this.maxClients = environment.getProperty("card.rate-limit.max-clients", Integer.class, 100_000);
+
+    for (RouteGroup group : RouteGroup.values()) {
+      String prefix = "card.rate-limit." + group.name().toLowerCase() + ".";
+      budgets.put(group, new double[] {
+          environment.getProperty(prefix + "permits-per-second", Double.class, 20.0),
+          environment.getProperty(prefix + "burst", Integer.class, 40)
+      });
+      rejections.put(group, Counter.builder("card.ratelimit.rejected")
+          .description("Requests rejected by the per customer rate limiter")
+          .tag("group", group.name().toLowerCase())
+          .register(meterRegistry));
+    }
+    Gauge.builder("card.ratelimit.tracked.clients", buckets, Map::size)
+        .description("Rate limit buckets currently held in memory")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Take a permit for the client on the route.
+   * Returns 0 when permitted, otherwise the seconds to wait before retrying (at least 1).
+   */
+  public long tryAcquire(String clientKey, HttpMethod method, String path) {
+    if (!enabled || clientKey == null) {
+      return 0;
+    }
+
+    RouteGroup group = RouteGroup.of(method, path);
+    long now = System.nanoTime();
+    String key = group.ordinal() + ":" + clientKey;
+
+    TokenBucket bucket = buckets.get(key);
+    if (bucket == null) {
+      if (buckets.size() >= maxClients) {
+        evictFull();
+        if (buckets.size() >= maxClients) {
+          log.warn("Rate limiter tracking {} clients, letting {} through untracked", maxClients, clientKey);
+          return 0;
+        }
+      }
+      double[] budget = budgets.get(group);
+      bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(budget[0], (int) budget[1], now));
+    }
+
+    if (bucket.tryAcquire(now)) {
+      return 0;
+    }
+
+    rejections.get(group).increment();
+    return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(bucket.waitNanos(now) + 999_999_999L));
+  }
+
+  @Scheduled(fixedDelay = 60_000)
+  public void evictFull() {
+    long now = System.nanoTime();
+    buckets.entrySet().removeIf(entry -> entry.getValue().isFull(now));
+  }
+}
@@ -0,0 +1,22 @@
+package com.bootcamp67.ms_card.limit;
+
+import org.springframework.http.HttpMethod;
+
+/**
+ * Route groups with separate rate budgets
+ */
+public enum RouteGroup {
+  PAYMENT,
+  READ,
+  WRITE;
+
+  public static RouteGroup of(HttpMethod method, String path) {
+    if (method == HttpMethod.POST && path.endsWith("/payment")) {
+      return PAYMENT;
+    }
+    if (method == HttpMethod.GET || method == HttpMethod.HEAD) {
+      return READ;
+    }
+    return WRITE;
+  }
+}
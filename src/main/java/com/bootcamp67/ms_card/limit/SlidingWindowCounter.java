@@ -0,0 +1,112 @@
+package com.bootcamp67.ms_card.limit;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Lock-free sliding window of fixed buckets, each holding a count and an amount.
+ * Buckets are immutable and replaced with CAS; a slot whose epoch is behind is reset on write.
+ */
+public class SlidingWindowCounter {
+
+  private final long bucketMillis;
+  private final AtomicReferenceArray<Bucket> buckets;
+
+  public SlidingWindowCounter(long bucketMillis, int bucketCount) {
+    this.bucketMillis = bucketMillis;
+    this.buckets = new AtomicReferenceArray<>(bucketCount);
+  }
+
+  /**
+   * Add to the bucket of the given time. Negative values (releases) only apply while
+   * that bucket is still current, so a late release never corrupts a newer bucket.
+   */
+  public void add(long timeMillis, long count, long amount) {
+    long epoch = timeMillis / bucketMillis;
+    int index = (int) (epoch % buckets.length());
+
+    while (true) {
+      Bucket current = buckets.get(index);
+      Bucket updated;
+      if (current != null && current.epoch == epoch) {
+        updated = new Bucket(epoch, current.count + count, current.amount + amount);
+      } else {
+        if (count < 0 || amount < 0 || (current != null && current.epoch > epoch)) {
+          return;
+        }
+        updated = new Bucket(epoch, count, amount);
+      }
+      if (buckets.compareAndSet(index, current, updated)) {
+        return;
+      }
+    }
+  }
+
+  public long count(long nowMillis) {
+    long total = 0;
+    long epochNow = nowMillis / bucketMillis;
+    for (int i = 0; i < buckets.length(); i++) {
+      Bucket bucket = buckets.get(i);
+      if (inWindow(bucket, epochNow)) {
+        total += bucket.count;
+      }
+    }
+    return total;
+  }
+
+  public long amount(long nowMillis) {
+    long total = 0;
+    long epochNow = nowMillis / bucketMillis;
+    for (int i = 0; i < buckets.length(); i++) {
+      Bucket bucket = buckets.get(i);
+      if (inWindow(bucket, epochNow)) {
+        total += bucket.amount;
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Copy of the slots as parallel arrays [epochs, counts, amounts] for checkpointing
+   */
+  public long[][] snapshot() {
+    int size = buckets.length();
+    long[][] state = new long[3][size];
+    for (int i = 0; i < size; i++) {
+      Bucket bucket = buckets.get(i);
+      if (bucket != null) {
+        state[0][i] = bucket.epoch;
+        state[1][i] = bucket.count;
+        state[2][i] = bucket.amount;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Merge a checkpoint back, skipping slots already outside the window
+   */
+  public void restore(long[] epochs, long[] counts, long[] amounts, long nowMillis) {
+    long epochNow = nowMillis / bucketMillis;
+    for (int i = 0; i < epochs.length; i++) {
+      if (epochs[i] > epochNow - buckets.length() && epochs[i] <= epochNow && counts[i] > 0) {
+        add(epochs[i] * bucketMillis, counts[i], amounts[i]);
+      }
+    }
+  }
+
+  private boolean inWindow(Bucket bucket, long epochNow) {
+    return bucket != null && bucket.epoch <= epochNow && bucket.epoch > epochNow - buckets.length();
+  }
+
+  private static final class Bucket {
+    private final long epoch;
+    private final long count;
+    private final long amount;
+
+    private Bucket(long epoch, long count, long amount) {
+      this.epoch = epoch;
+      this.count = count;
+      this.amount = amount;
+    }
+  }
+}
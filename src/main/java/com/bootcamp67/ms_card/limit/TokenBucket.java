@@ -0,0 +1,49 @@
+package com.bootcamp67.ms_card.limit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: a single theoretical arrival time (TAT)
+ * updated with CAS. Each request moves TAT one emission interval ahead; a request
+ * is rejected when TAT would run more than the burst allowance ahead of now.
+ */
+public class TokenBucket {
+
+  private final long emissionIntervalNanos;
+  private final long burstToleranceNanos;
+  private final AtomicLong theoreticalArrival;
+
+  public TokenBucket(double permitsPerSecond, int burst, long nowNanos) {
+    this.emissionIntervalNanos = (long) (1_000_000_000L / permitsPerSecond);
+    this.burstToleranceNanos = emissionIntervalNanos * Math.max(burst - 1, 0);
+    this.theoreticalArrival = new AtomicLong(nowNanos);
+  }
+
+  public boolean tryAcquire(long nowNanos) {
+    while (true) {
+      long tat = theoreticalArrival.get();
+      long next = Math.max(tat, nowNanos) + emissionIntervalNanos;
+      if (next - nowNanos > burstToleranceNanos + emissionIntervalNanos) {
+        return false;
+      }
+      if (theoreticalArrival.compareAndSet(tat, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Nanoseconds until the next permit is available (0 when one is available now)
+   */
+  public long waitNanos(long nowNanos) {
+    long earliest = theoreticalArrival.get() - burstToleranceNanos;
+    return Math.max(0, earliest - nowNanos);
+  }
+
+  /**
+   * A full bucket is identical to a fresh one, so it can be dropped without losing state
+   */
+  public boolean isFull(long nowNanos) {
+    return theoreticalArrival.get() <= nowNanos;
+  }
+}
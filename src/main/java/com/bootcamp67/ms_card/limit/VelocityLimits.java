@@ -0,0 +1,24 @@
+package com.bootcamp67.ms_card.limit;
+
+/**
+ * Maximum count and amount (minor units) per window. Zero means unlimited.
+ */
+public class VelocityLimits {
+
+  private final long[] maxCount = new long[VelocityWindow.values().length];
+  private final long[] maxAmount = new long[VelocityWindow.values().length];
+
+  public VelocityLimits limit(VelocityWindow window, long count, long amount) {
+    maxCount[window.ordinal()] = count;
+    maxAmount[window.ordinal()] = amount;
+    return this;
+  }
+
+  public long maxCount(VelocityWindow window) {
+    return maxCount[window.ordinal()];
+  }
+
+  public long maxAmount(VelocityWindow window) {
+    return maxAmount[window.ordinal()];
+  }
+}
@@ -0,0 +1,26 @@
+package com.bootcamp67.ms_card.limit;
+
+/**
+ * Sliding windows tracked per card: bucket width and number of buckets
+ */
+public enum VelocityWindow {
+  MINUTE(1_000L, 60),
+  HOUR(60_000L, 60),
+  DAY(3_600_000L, 24);
+
+  private final long bucketMillis;
+  private final int buckets;
+
+  VelocityWindow(long bucketMillis, int buckets) {
+    this.bucketMillis = bucketMillis;
+    this.buckets = buckets;
+  }
+
+  public long getBucketMillis() {
+    return bucketMillis;
+  }
+
+  public int getBuckets() {
+    return buckets;
+  }
+}
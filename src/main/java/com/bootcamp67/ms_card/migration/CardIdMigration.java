@@ -0,0 +1,190 @@
+package com.bootcamp67.ms_card.migration;
+
+import com.bootcamp67.ms_card.cache.HotCardCache;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardNumberClaim;
+import com.bootcamp67.ms_card.entity.CardTransaction;
+import com.bootcamp67.ms_card.util.CardIds;
+import com.bootcamp67.ms_card.util.CardNumberHasher;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rewrites cards with a plain ObjectId to the customerId_objectIdHex scheme (see CardIds).
+ * _id is immutable, so each batch is copied under the new id (keeping the old one as legacyId),
+ * its ledger entries are pointed at the new id, its card numbers are claimed, and only then the
+ * old documents are deleted. Every card write sets updatedAt, so an old document is only deleted
+ * while its updatedAt is still the copied one; a card written in between stays a legacy card
+ * and is copied again (replacing the stale copy) with a later batch. New ids are derived from
+ * the old ones, so an interrupted run simply starts over with the remaining legacy cards.
+ * Off by default; run one instance with card.sharding.migrate-ids=true before sharding.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "card.sharding.migrate-ids", havingValue = "true")
+public class CardIdMigration implements ApplicationRunner {
+
+  private static final int DUPLICATE_KEY = 11000;
+  private static final int CONCURRENCY = 16;
+  private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+  private static final BulkWriteOptions UNORDERED_BULK = new BulkWriteOptions().ordered(false);
+  private static final ReplaceOptions UPSERT = new ReplaceOptions().upsert(true);
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final CardNumberHasher cardNumberHasher;
+  private final HotCardCache hotCardCache;
+  private final int batchSize;
+
+  public CardIdMigration(ReactiveMongoTemplate mongoTemplate,
+                         CardNumberHasher cardNumberHasher,
+                         HotCardCache hotCardCache,
+                         @Value("${card.sharding.migration-batch-size:500}") int batchSize) {
+    this.mongoTemplate = mongoTemplate;
+    this.cardNumberHasher = cardNumberHasher;
+    this.hotCardCache = hotCardCache;
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public void run(ApplicationArguments args) {
+    AtomicLong migrated = new AtomicLong();
+
+    Mono.zip(collection(Card.class), collection(CardTransaction.class), collection(CardNumberClaim.class))
+        .flatMapMany(collections -> {
+          // Reads and migrates one batch; empty once no legacy card is left
+          Mono<Integer> step = Mono.defer(() -> nextBatch(collections.getT1()))
+              .filter(batch -> !batch.isEmpty())
+              .flatMap(batch -> migrate(batch, collections.getT1(), collections.getT2(), collections.getT3()));
+          // expand reads the next batch only after this one was migrated and left the filter
+          return step.expand(count -> step);
+        })
+        .doOnNext(count -> log.info("Card id migration: {} cards rewritten", migrated.addAndGet(count)))
+        .then()
+        .subscribe(
+            done -> { },
+            error -> log.error("Card id migration failed after {} cards: {}", migrated.get(), error.getMessage(), error),
+            () -> log.info("Card id migration finished, {} cards rewritten", migrated.get()));
+  }
+
+  /**
+   * Next legacy cards; migrated cards leave the filter, so no paging state is needed
+   */
+  private Mono<List<Document>> nextBatch(MongoCollection<Document> cards) {
+    return Flux.from(cards.find(Filters.and(Filters.type("_id", BsonType.OBJECT_ID), Filters.exists("customerId")))
+            .limit(batchSize))
+        .collectList();
+  }
+
+  private Mono<Integer> migrate(List<Document> batch,
+                                MongoCollection<Document> cards,
+                                MongoCollection<Document> transactions,
+                                MongoCollection<Document> claims) {
+    List<WriteModel<Document>> copies = new ArrayList<>(batch.size());
+    List<WriteModel<Document>> deletes = new ArrayList<>(batch.size());
+    List<Document> rewritten = new ArrayList<>(batch.size());
+    List<Document> numberClaims = new ArrayList<>(batch.size());
+    List<WriteModel<Document>> claimRepoints = new ArrayList<>(batch.size());
+
+    for (Document card : batch) {
+      ObjectId legacyId = card.getObjectId("_id");
+      String newId = CardIds.of(card.getString("customerId"), legacyId);
+
+      Document copy = new Document(card);
+      copy.put("_id", newId);
+      copy.put("legacyId", legacyId.toHexString());
+      rewritten.add(copy);
+      // Upsert: replaces a copy left by an earlier pass for a card that was written since
+      copies.add(new ReplaceOneModel<>(Filters.eq("_id", newId), copy, UPSERT));
+      deletes.add(new DeleteOneModel<>(Filters.and(Filters.eq("_id", legacyId), unchangedSince(card))));
+
+      Object hash = card.get("cardNumberHash");
+      if (hash instanceof Binary) {
+        String token = cardNumberHasher.toToken(((Binary) hash).getData());
+        // Claimed under the old id by the hash backfill: point it at the new id
+        claimRepoints.add(new UpdateOneModel<>(
+            Filters.and(Filters.eq("_id", token), Filters.eq("cardId", legacyId.toHexString())),
+            Updates.set("cardId", newId)));
+        numberClaims.add(new Document("_id", token)
+            .append("cardId", newId)
+            .append("claimedAt", new Date()));
+      }
+    }
+
+    return Mono.from(cards.bulkWrite(copies, UNORDERED_BULK))
+        .then(claimRepoints.isEmpty() ? Mono.empty() : Mono.from(claims.bulkWrite(claimRepoints, UNORDERED_BULK)))
+        .then(insertIgnoringDuplicates(claims, numberClaims))
+        .thenMany(Flux.fromIterable(rewritten)
+            .flatMap(card -> Mono.from(transactions.updateMany(
+                Filters.eq("cardId", card.getString("legacyId")),
+                Updates.set("cardId", card.getString("_id")))), CONCURRENCY))
+        .then(Mono.from(cards.bulkWrite(deletes, UNORDERED_BULK)))
+        .map(result -> {
+          rewritten.forEach(card -> hotCardCache.invalidate(card.getString("legacyId")));
+          int deleted = result.getDeletedCount();
+          if (deleted < batch.size()) {
+            log.info("Card id migration: {} cards changed while copied, copying them again", batch.size() - deleted);
+          }
+          return deleted;
+        });
+  }
+
+  /**
+   * Matches the card only while updatedAt is still the copied value (or still missing)
+   */
+  private static Bson unchangedSince(Document card) {
+    Object updatedAt = card.get("updatedAt");
+    return updatedAt == null ? Filters.exists("updatedAt", false) : Filters.eq("updatedAt", updatedAt);
+  }
+
+  /**
+   * Unordered insert; documents already written by an interrupted run are skipped
+   */
+  private Mono<Void> insertIgnoringDuplicates(MongoCollection<Document> collection, List<Document> documents) {
+    if (documents.isEmpty()) {
+      return Mono.empty();
+    }
+    return Mono.from(collection.insertMany(documents, UNORDERED))
+        .onErrorResume(MongoBulkWriteException.class, e -> {
+          for (BulkWriteError error : e.getWriteErrors()) {
+            if (error.getCode() != DUPLICATE_KEY) {
+              return Mono.error(e);
+            }
+          }
+          return Mono.empty();
+        })
+        .then();
+  }
+
+  private Mono<MongoCollection<Document>> collection(Class<?> type) {
+    return mongoTemplate.getCollection(mongoTemplate.getCollectionName(type));
+  }
+}
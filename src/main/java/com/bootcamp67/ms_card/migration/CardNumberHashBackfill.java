@@ -0,0 +1,83 @@
+package com.bootcamp67.ms_card.migration;
+
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardNumberClaim;
+import com.bootcamp67.ms_card.util.CardNumberHasher;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonType;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+
+/**
+ * Fills cardNumberHash and claims the number in card_numbers for cards created before
+ * hashed lookups and claims existed: cards without hash, and legacy (ObjectId) cards, which
+ * may be hashed but unclaimed. The claim is written first, so an interrupted run retries it.
+ * Runs in background after startup.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "card.pan.backfill-on-startup", havingValue = "true", matchIfMissing = true)
+public class CardNumberHashBackfill implements ApplicationRunner {
+
+  private static final int CONCURRENCY = 16;
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final CardNumberHasher cardNumberHasher;
+
+  @Override
+  public void run(ApplicationArguments args) {
+    Query pending = Query.query(new Criteria().orOperator(
+            Criteria.where("cardNumberHash").exists(false),
+            Criteria.where("_id").type(BsonType.OBJECT_ID.getValue()))
+        .and("cardNumber").exists(true));
+    pending.fields().include("cardNumber", "cardNumberHash");
+
+    mongoTemplate.find(pending, Card.class)
+        .flatMap(this::backfill, CONCURRENCY)
+        .count()
+        .subscribe(
+            count -> log.info("Card number hash backfill finished, {} cards checked", count),
+            error -> log.error("Card number hash backfill failed: {}", error.getMessage(), error));
+  }
+
+  private Mono<Card> backfill(Card card) {
+    byte[] hash = card.getCardNumberHash() != null
+        ? card.getCardNumberHash()
+        : cardNumberHasher.hash(card.getCardNumber());
+    CardNumberClaim claim = CardNumberClaim.builder()
+        .id(cardNumberHasher.toToken(hash))
+        .cardId(card.getId())
+        .claimedAt(LocalDateTime.now())
+        .build();
+
+    Mono<Void> claimed = mongoTemplate.insert(claim)
+        .then()
+        // Already claimed by this card in an earlier run, or a duplicate number left for review
+        .onErrorResume(DuplicateKeyException.class, e -> mongoTemplate.findById(claim.getId(), CardNumberClaim.class)
+            .filter(existing -> !existing.getCardId().equals(card.getId()))
+            .doOnNext(existing -> log.warn("Card {} has the number already claimed by card {}",
+                card.getId(), existing.getCardId()))
+            .then());
+    if (card.getCardNumberHash() != null) {
+      return claimed.thenReturn(card);
+    }
+    return claimed
+        .then(mongoTemplate.updateFirst(
+            Query.query(Criteria.where("_id").is(card.getId())),
+            Update.update("cardNumberHash", hash),
+            Card.class))
+        .thenReturn(card);
+  }
+}
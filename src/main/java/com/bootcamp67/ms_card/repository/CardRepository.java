@@ -3,6 +3,7 @@ package com.bootcamp67.ms_card.repository;
 import com.bootcamp67.ms_card.entity.Card;
 import com.bootcamp67.ms_card.enums.CardStatus;
 import com.bootcamp67.ms_card.enums.CardType;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
 import org.springframework.stereotype.Repository;
 import reactor.core.publisher.Flux;
@@ -16,11 +17,49 @@ public interface CardRepository extends ReactiveMongoRepository<Card, String> {
    */
   Flux<Card> findByCustomerId(String customerId);
 
+  /**
+   * Find card by ID and owner; the shard key routes the query to a single shard
+   */
+  Mono<Card> findByIdAndCustomerId(String id, String customerId);
+
+  /**
+   * Find card by the id it had before the customerId_objectId scheme
+   */
+  Mono<Card> findByLegacyId(String legacyId);
+
+  /**
+   * Find card by ID without cvv, for read-only views. Never save the result.
+   */
+  @Query(value = "{ '_id': ?0 }", fields = "{ 'cvv': 0 }")
+  Mono<Card> findViewById(String id);
+
+  /**
+   * Targeted variant of findViewById. Never save the result.
+   */
+  @Query(value = "{ '_id': ?0, 'customerId': ?1 }", fields = "{ 'cvv': 0 }")
+  Mono<Card> findViewByIdAndCustomerId(String id, String customerId);
+
+  /**
+   * Find card by legacy ID without cvv. Never save the result.
+   */
+  @Query(value = "{ 'legacyId': ?0 }", fields = "{ 'cvv': 0 }")
+  Mono<Card> findViewByLegacyId(String legacyId);
+
   /**
    * Find card by card number
    */
   Mono<Card> findByCardNumber(String cardNumber);
 
+  /**
+   * Find card by keyed hash of the card number (indexed, fixed width)
+   */
+  Mono<Card> findByCardNumberHash(byte[] cardNumberHash);
+
+  /**
+   * Find cards using an account (multikey index on associatedAccounts)
+   */
+  Flux<Card> findByAssociatedAccountsContaining(String accountId);
+
   /**
    * Find cards by customer ID and card type
    */
@@ -0,0 +1,17 @@
+package com.bootcamp67.ms_card.repository;
+
+import com.bootcamp67.ms_card.dto.TransactionDTO;
+import com.bootcamp67.ms_card.entity.CardTransaction;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface CardTransactionRepository extends ReactiveMongoRepository<CardTransaction, String> {
+
+  /**
+   * Last transactions of a card, newest first (served by cardId + transactionDate index)
+   */
+  Flux<TransactionDTO> findByCardIdOrderByTransactionDateDesc(String cardId, Pageable pageable);
+}
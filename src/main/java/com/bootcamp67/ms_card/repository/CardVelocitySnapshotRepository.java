@@ -0,0 +1,17 @@
+package com.bootcamp67.ms_card.repository;
+
+import com.bootcamp67.ms_card.entity.CardVelocitySnapshot;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.time.Instant;
+
+@Repository
+public interface CardVelocitySnapshotRepository extends ReactiveMongoRepository<CardVelocitySnapshot, String> {
+
+  /**
+   * Snapshots of one instance still relevant for the longest window
+   */
+  Flux<CardVelocitySnapshot> findByInstanceIdAndSavedAtAfter(String instanceId, Instant savedAt);
+}
@@ -0,0 +1,9 @@
+package com.bootcamp67.ms_card.repository;
+
+import com.bootcamp67.ms_card.entity.ProcessedEvent;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ProcessedEventRepository extends ReactiveMongoRepository<ProcessedEvent, String> {
+}
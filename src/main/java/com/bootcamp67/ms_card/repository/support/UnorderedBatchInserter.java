@@ -0,0 +1,273 @@
+package com.bootcamp67.ms_card.repository.support;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.InsertManyOptions;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers documents in a bounded queue and writes them with unordered insertMany,
+ * when a batch is full or every flush interval, whichever comes first.
+ * offer never blocks the caller: when the queue is full the document is dropped. submit is the
+ * lossless variant: when the queue is full it writes the document itself, so the caller waits.
+ * Failed documents are retried with backoff; duplicate keys count as written, since the driver
+ * assigns _id before the first attempt. What is still failing after the last attempt is lost.
+ * Background retries run outside the flush, so the queue keeps draining during the backoff.
+ * Dropped and lost documents are counted in card.batch.dropped / card.batch.lost.
+ */
+@Slf4j
+public class UnorderedBatchInserter<T> {
+
+  private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final String collectionName;
+  private final int batchSize;
+  private final Duration flushInterval;
+  private final BlockingQueue<T> queue;
+  private final AtomicBoolean flushing = new AtomicBoolean(false);
+  private final Set<Mono<Void>> running = ConcurrentHashMap.newKeySet();
+  private final AtomicLong dropped = new AtomicLong();
+  private final AtomicLong lost = new AtomicLong();
+  private final AtomicLong lastLossMillis = new AtomicLong();
+  private final int maxAttempts;
+  private final Duration retryBackoff;
+  private final Counter droppedCounter;
+  private final Counter lostCounter;
+  private Disposable ticker;
+
+  public UnorderedBatchInserter(ReactiveMongoTemplate mongoTemplate,
+                                Class<T> type,
+                                int batchSize,
+                                Duration flushInterval,
+                                int queueCapacity,
+                                int maxAttempts,
+                                Duration retryBackoff,
+                                MeterRegistry meterRegistry) {
+    this.mongoTemplate = mongoTemplate;
+    this.collectionName = mongoTemplate.getCollectionName(type);
+    this.batchSize = batchSize;
+    this.flushInterval = flushInterval;
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.retryBackoff = retryBackoff;
+    this.droppedCounter = Counter.builder("card.batch.dropped")
+        .description("Documents dropped because the write queue was full")
+        .tag("collection", collectionName)
+        .register(meterRegistry);
+    this.lostCounter = Counter.builder("card.batch.lost")
+        .description("Documents that could not be inserted after all retries")
+        .tag("collection", collectionName)
+        .register(meterRegistry);
+    Gauge.builder("card.batch.pending", queue, BlockingQueue::size)
+        .description("Documents waiting in the write queue")
+        .tag("collection", collectionName)
+        .register(meterRegistry);
+  }
+
+  public void start() {
+    ticker = Flux.interval(flushInterval)
+        .subscribe(tick -> flushAsync());
+  }
+
+  /**
+   * Stop the periodic flush, wait for running writes and write what is still queued
+   */
+  public void stop(Duration timeout) {
+    if (ticker != null) {
+      ticker.dispose();
+    }
+    awaitRunning(timeout);
+    while (!queue.isEmpty()) {
+      writeBatch(false).block(timeout);
+    }
+    awaitRunning(timeout);
+  }
+
+  private void awaitRunning(Duration timeout) {
+    try {
+      Mono.when(new ArrayList<>(running)).block(timeout);
+    } catch (RuntimeException e) {
+      log.warn("{} writes still running after {}: {}", collectionName, timeout, e.getMessage());
+    }
+  }
+
+  public boolean offer(T item) {
+    if (!queue.offer(item)) {
+      long total = dropped.incrementAndGet();
+      droppedCounter.increment();
+      lastLossMillis.set(System.currentTimeMillis());
+      log.warn("{} write queue is full, dropped document (total dropped: {})", collectionName, total);
+      return false;
+    }
+    if (queue.size() >= batchSize) {
+      flushAsync();
+    }
+    return true;
+  }
+
+  /**
+   * Queue the document, or insert it directly when the queue is full. Completes once the
+   * document is queued or written; errors only when the direct insert failed on every attempt.
+   */
+  public Mono<Void> submit(T item) {
+    if (queue.offer(item)) {
+      if (queue.size() >= batchSize) {
+        flushAsync();
+      }
+      return Mono.empty();
+    }
+    log.debug("{} write queue is full, inserting directly", collectionName);
+    return Mono.defer(() -> {
+      return insert(Collections.singletonList(toDocument(item)), 1)
+          .flatMap(lostCount -> lostCount > 0
+              ? Mono.<Void>error(new IllegalStateException(collectionName + " write failed, document lost"))
+              : Mono.<Void>empty());
+    });
+  }
+
+  public int pending() {
+    return queue.size();
+  }
+
+  public long dropped() {
+    return dropped.get();
+  }
+
+  public long lost() {
+    return lost.get();
+  }
+
+  /**
+   * Epoch millis of the last dropped or lost document, 0 if none
+   */
+  public long lastLossMillis() {
+    return lastLossMillis.get();
+  }
+
+  private void flushAsync() {
+    if (!flushing.compareAndSet(false, true)) {
+      return;
+    }
+    inBackground(writeBatch(true)
+        .doFinally(signal -> {
+          flushing.set(false);
+          if (queue.size() >= batchSize) {
+            flushAsync();
+          }
+        }));
+  }
+
+  /**
+   * Run a write detached from its caller, tracked so stop can wait for it
+   */
+  private void inBackground(Mono<Void> write) {
+    Mono<Void> tracked = write
+        .onErrorResume(e -> {
+          log.error("Background write into {} failed: {}", collectionName, e.getMessage(), e);
+          return Mono.empty();
+        })
+        .cache();
+    running.add(tracked);
+    tracked.doFinally(signal -> running.remove(tracked)).subscribe();
+  }
+
+  /**
+   * Write one batch from the queue; with backgroundRetries the retries do not hold up the caller
+   */
+  private Mono<Void> writeBatch(boolean backgroundRetries) {
+    List<T> batch = new ArrayList<>(batchSize);
+    queue.drainTo(batch, batchSize);
+    if (batch.isEmpty()) {
+      return Mono.empty();
+    }
+
+    List<Document> documents = new ArrayList<>(batch.size());
+    for (T item : batch) {
+      documents.add(toDocument(item));
+    }
+
+    return insert(documents, 1, backgroundRetries).then();
+  }
+
+  private Mono<Integer> insert(List<Document> documents, int attempt) {
+    return insert(documents, attempt, false);
+  }
+
+  /**
+   * Insert with retries, emitting how many documents were lost after the last attempt.
+   * With backgroundRetries a failed attempt hands the retry to the background and emits 0.
+   */
+  private Mono<Integer> insert(List<Document> documents, int attempt, boolean backgroundRetries) {
+    return mongoTemplate.getCollection(collectionName)
+        .flatMap(collection -> Mono.from(collection.insertMany(documents, UNORDERED)))
+        .doOnSuccess(result -> log.debug("Inserted {} documents into {}", documents.size(), collectionName))
+        .thenReturn(0)
+        .onErrorResume(e -> {
+          List<Document> failed = retryable(documents, e);
+          if (failed.isEmpty()) {
+            return Mono.just(0);
+          }
+          if (attempt >= maxAttempts) {
+            lost.addAndGet(failed.size());
+            lostCounter.increment(failed.size());
+            lastLossMillis.set(System.currentTimeMillis());
+            log.error("Batch insert into {} failed after {} attempts, {} documents lost: {}",
+                collectionName, attempt, failed.size(), e.getMessage(), e);
+            return Mono.just(failed.size());
+          }
+          log.warn("Batch insert into {} failed for {} of {} documents (attempt {}), retrying: {}",
+              collectionName, failed.size(), documents.size(), attempt, e.getMessage());
+          Mono<Integer> retry = Mono.delay(retryBackoff.multipliedBy(attempt))
+              .then(insert(failed, attempt + 1));
+          if (backgroundRetries) {
+            inBackground(retry.then());
+            return Mono.just(0);
+          }
+          return retry;
+        });
+  }
+
+  private Document toDocument(T item) {
+    Document document = new Document();
+    mongoTemplate.getConverter().write(item, document);
+    return document;
+  }
+
+  /**
+   * Documents worth another attempt: all of them, or for a bulk error the ones
+   * that failed for a reason other than an already existing _id.
+   */
+  private static List<Document> retryable(List<Document> documents, Throwable e) {
+    if (!(e instanceof MongoBulkWriteException)) {
+      return documents;
+    }
+    List<Document> failed = new ArrayList<>();
+    for (BulkWriteError error : ((MongoBulkWriteException) e).getWriteErrors()) {
+      if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+        failed.add(documents.get(error.getIndex()));
+      }
+    }
+    return failed;
+  }
+}
@@ -0,0 +1,28 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.DebitResult;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+
+/**
+ * Calls to the account and credit services.
+ * Declines are results; only real faults (timeouts, 5xx) are error signals.
+ */
+public interface AccountGateway {
+
+  /**
+   * Debit the amount from a bank account
+   */
+  Mono<DebitResult> debit(String accountId, BigDecimal amount, String cardId);
+
+  /**
+   * Current balance of a bank account
+   */
+  Mono<BigDecimal> balance(String accountId);
+
+  /**
+   * Charge the amount to a credit line
+   */
+  Mono<DebitResult> chargeCredit(String creditId, BigDecimal amount, String cardId);
+}
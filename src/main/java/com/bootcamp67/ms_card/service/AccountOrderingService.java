@@ -0,0 +1,21 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.DebitResult;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+public interface AccountOrderingService {
+
+  /**
+   * Order in which the debit cascade should try the accounts of a card.
+   * defaultOrder is main account first, then associated accounts; it is returned
+   * unchanged when adaptive ordering is disabled.
+   */
+  Mono<List<String>> order(String cardId, List<String> defaultOrder);
+
+  /**
+   * Feed the outcome of one debit attempt
+   */
+  void recordOutcome(String cardId, DebitResult result);
+}
@@ -0,0 +1,20 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.CardAuditDTO;
+import com.bootcamp67.ms_card.entity.CardAuditEntry;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface CardAuditService {
+
+  /**
+   * Append an entry to the audit trail (buffered, written in batches).
+   * The actor is taken from the subscriber context, "system" when there is none.
+   */
+  Mono<Void> record(CardAuditEntry.CardAuditEntryBuilder entry);
+
+  /**
+   * Audit trail of a card, newest first
+   */
+  Flux<CardAuditDTO> findByCard(String cardId, Integer limit);
+}
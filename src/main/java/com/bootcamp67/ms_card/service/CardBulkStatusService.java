@@ -0,0 +1,15 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.BulkStatusChangeProgress;
+import com.bootcamp67.ms_card.dto.BulkStatusChangeRequest;
+import reactor.core.publisher.Flux;
+
+public interface CardBulkStatusService {
+
+  /**
+   * Change the status of every card matching the filter, chunk by chunk.
+   * Emits cumulative progress after each chunk and a final line with done = true.
+   * Cancelling stops the job after the chunk in progress is fully applied.
+   */
+  Flux<BulkStatusChangeProgress> changeStatus(BulkStatusChangeRequest request);
+}
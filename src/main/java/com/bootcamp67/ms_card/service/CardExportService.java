@@ -0,0 +1,30 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.ExportJob;
+import com.bootcamp67.ms_card.enums.ExportFormat;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+
+public interface CardExportService {
+
+  /**
+   * Start exporting the cards collection in the background
+   */
+  Mono<ExportJob> start(ExportFormat format);
+
+  /**
+   * Continue an interrupted or failed job after its last complete part
+   */
+  Mono<ExportJob> resume(String jobId);
+
+  /**
+   * Current status of a job
+   */
+  Mono<ExportJob> status(String jobId);
+
+  /**
+   * File of a complete part of a job
+   */
+  Mono<Path> part(String jobId, String partName);
+}
@@ -0,0 +1,22 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.ImportJob;
+import reactor.core.publisher.Mono;
+
+public interface CardImportService {
+
+  /**
+   * Start importing a CSV or NDJSON file of the import folder in the background
+   */
+  Mono<ImportJob> start(String file);
+
+  /**
+   * Continue an interrupted or failed job from its last checkpoint
+   */
+  Mono<ImportJob> resume(String jobId);
+
+  /**
+   * Current status of a job
+   */
+  Mono<ImportJob> status(String jobId);
+}
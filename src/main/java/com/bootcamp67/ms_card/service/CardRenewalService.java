@@ -0,0 +1,12 @@
+package com.bootcamp67.ms_card.service;
+
+import reactor.core.publisher.Mono;
+
+public interface CardRenewalService {
+
+  /**
+   * Issue replacements for active cards expiring within the renewal window.
+   * Returns the number of cards renewed by this run.
+   */
+  Mono<Long> renewExpiring();
+}
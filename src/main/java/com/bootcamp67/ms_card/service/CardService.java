@@ -2,6 +2,8 @@ package com.bootcamp67.ms_card.service;
 
 import com.bootcamp67.ms_card.dto.AssociateAccountRequest;
 import com.bootcamp67.ms_card.dto.CardDTO;
+import com.bootcamp67.ms_card.dto.CardPortfolioResponse;
+import com.bootcamp67.ms_card.dto.CardSummary;
 import com.bootcamp67.ms_card.dto.CreditCardRequest;
 import com.bootcamp67.ms_card.dto.DebitCardRequest;
 import com.bootcamp67.ms_card.dto.PaymentRequest;
@@ -24,9 +26,24 @@ public interface CardService {
   Mono<CardDTO> findById(String id);
 
   /**
-   * Find cards by customer ID
+   * Find card by token (keyed hash of the card number)
    */
-  Flux<CardDTO> findByCustomerId(String customerId);
+  Mono<CardDTO> findByToken(String token);
+
+  /**
+   * Find cards by customer ID (summary projection)
+   */
+  Flux<CardSummary> findByCustomerId(String customerId);
+
+  /**
+   * Find cards using an account (multikey index on associatedAccounts)
+   */
+  Flux<CardDTO> findByAccountId(String accountId);
+
+  /**
+   * Get card portfolio of a customer: counts by type/status and balance per card
+   */
+  Mono<CardPortfolioResponse> getPortfolio(String customerId);
 
   /**
    * Create debit card
@@ -79,4 +96,11 @@ public interface CardService {
    * Delete card
    */
   Mono<Void> delete(String id);
+
+  /**
+   * Remove a closed account from every card using it, in a single update.
+   * Cards whose main account it was get their first remaining account as main.
+   * Returns the number of cards changed.
+   */
+  Mono<Long> detachAccount(String accountId);
 }
@@ -0,0 +1,50 @@
+package com.bootcamp67.ms_card.service;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+public interface CreditAvailabilityService {
+
+  enum Authorization {
+    APPROVED,
+    DECLINED,
+    NOT_PROJECTED  // no availability known for the line yet, the credit service decides
+  }
+
+  /**
+   * Pre-authorize a charge against the projected available credit and hold the amount.
+   * A hold is only placed when the result is APPROVED.
+   */
+  Authorization tryHold(String creditId, String holdId, BigDecimal amount);
+
+  /**
+   * The held charge was posted; the hold stays until the credit service reports the new availability
+   */
+  void capture(String creditId, String holdId);
+
+  /**
+   * Drop a hold for a charge that was not posted
+   */
+  void release(String creditId, String holdId);
+
+  /**
+   * Projected available credit net of holds, when known
+   */
+  Optional<BigDecimal> available(String creditId);
+
+  /**
+   * Credit line snapshot from credit-events; null values are left unchanged
+   */
+  void updateLine(String eventId, String creditId, BigDecimal available, String status);
+
+  /**
+   * Status change from credit-status-events
+   */
+  void updateStatus(String eventId, String creditId, String status);
+
+  /**
+   * Charge or repayment from credit-payment-events. The absolute available credit wins when the
+   * event carries it; otherwise the amount is applied as a delta (repayment when credit is true).
+   */
+  void applyPayment(String eventId, String creditId, BigDecimal amount, boolean credit, BigDecimal available);
+}
@@ -0,0 +1,15 @@
+package com.bootcamp67.ms_card.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.function.Consumer;
+
+public interface EventIdempotencyService {
+
+  /**
+   * Run the handler once per event id for the given consumer.
+   * Duplicated deliveries are skipped; messages without eventId are always processed.
+   * Returns true when the handler was executed.
+   */
+  boolean processOnce(String consumer, String message, Consumer<JsonNode> handler);
+}
@@ -0,0 +1,35 @@
+package com.bootcamp67.ms_card.service;
+
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+/**
+ * Tells PaymentIdempotencyService whether a payment got as far as the account or credit services.
+ * The idempotency service puts an attempt in the Reactor context of the payment; the payment
+ * flow wraps its gateway calls with {@link #charging}, so a failure before that point is known
+ * to have charged nothing and the key can be released.
+ */
+public final class PaymentAttempt {
+
+  /**
+   * Reactor context key holding the current attempt
+   */
+  public static final String CONTEXT_KEY = "paymentAttempt";
+
+  private volatile boolean charging;
+
+  /**
+   * Mark the attempt in the subscriber context as charging, then subscribe to the gateway call
+   */
+  public static <T> Mono<T> charging(Supplier<Mono<T>> gatewayCall) {
+    return Mono.deferContextual(context -> {
+      context.<PaymentAttempt>getOrEmpty(CONTEXT_KEY).ifPresent(attempt -> attempt.charging = true);
+      return gatewayCall.get();
+    });
+  }
+
+  public boolean isCharging() {
+    return charging;
+  }
+}
@@ -0,0 +1,21 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.CardResponse;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Mono;
+
+import java.util.function.Supplier;
+
+public interface PaymentIdempotencyService {
+
+  /**
+   * Execute the action once per (scope, idempotencyKey).
+   * Retries get the stored response, concurrent duplicates share the in-flight result
+   * and a reused key with a different fingerprint is rejected with 422.
+   * A payment whose outcome is unknown after reaching the gateway answers 202 instead of running again.
+   */
+  Mono<ResponseEntity<CardResponse>> execute(String scope,
+                                             String idempotencyKey,
+                                             String fingerprint,
+                                             Supplier<Mono<ResponseEntity<CardResponse>>> action);
+}
@@ -0,0 +1,25 @@
+package com.bootcamp67.ms_card.service;
+
+import com.bootcamp67.ms_card.dto.TransactionDTO;
+import com.bootcamp67.ms_card.entity.CardTransaction;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface TransactionLedgerService {
+
+  /**
+   * Append a transaction to the ledger (buffered, written in batches).
+   * Completes once queued; when the queue is full, once the row is written.
+   */
+  Mono<Void> record(CardTransaction transaction);
+
+  /**
+   * Set the final status of a recorded transaction, waiting for its batch to be written first
+   */
+  Mono<Void> settle(String cardId, String transactionId, String status);
+
+  /**
+   * Last transactions of a card, newest first
+   */
+  Flux<TransactionDTO> findLast(String cardId, int limit);
+}
@@ -0,0 +1,18 @@
+package com.bootcamp67.ms_card.service;
+
+import java.math.BigDecimal;
+import java.util.Optional;
+
+public interface VelocityLimitService {
+
+  /**
+   * Count the payment against the card windows.
+   * Returns the violated limit (and counts nothing) when the payment would exceed one.
+   */
+  Optional<String> tryReserve(String cardId, BigDecimal amount, long timestampMillis);
+
+  /**
+   * Undo a reservation for a payment that was not completed
+   */
+  void release(String cardId, BigDecimal amount, long timestampMillis);
+}
@@ -0,0 +1,206 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.dto.DebitResult;
+import com.bootcamp67.ms_card.entity.AccountRoutingStats;
+import com.bootcamp67.ms_card.repository.AccountRoutingStatsRepository;
+import com.bootcamp67.ms_card.service.AccountOrderingService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Opt-in adaptive ordering of the debit cascade.
+ * Keeps exponentially decayed success/attempt counts per card and account, and tries
+ * accounts with the best (Laplace smoothed) success rate first. Ties keep the default
+ * order, so accounts without history stay where the customer put them.
+ * Statistics are loaded lazily per card and checkpointed to account_routing_stats.
+ */
+@Slf4j
+@Service
+public class AccountOrderingServiceImpl implements AccountOrderingService {
+
+  private static final Duration CHECKPOINT_TIMEOUT = Duration.ofSeconds(10);
+  private static final Duration IDLE_EVICTION = Duration.ofHours(6);
+
+  private final AccountRoutingStatsRepository statsRepository;
+  private final Map<String, CardStats> stats = new ConcurrentHashMap<>();
+  private final boolean enabled;
+  private final boolean pinMainAccount;
+  private final double minMainAccountRate;
+  private final long halfLifeMillis;
+
+  public AccountOrderingServiceImpl(AccountRoutingStatsRepository statsRepository,
+                                    @Value("${card.cascade.adaptive-ordering.enabled:false}") boolean enabled,
+                                    @Value("${card.cascade.adaptive-ordering.pin-main-account:false}") boolean pinMainAccount,
+                                    @Value("${card.cascade.adaptive-ordering.min-main-account-rate:0.2}") double minMainAccountRate,
+                                    @Value("${card.cascade.adaptive-ordering.half-life:7d}") Duration halfLife) {
+    this.statsRepository = statsRepository;
+    this.enabled = enabled;
+    this.pinMainAccount = pinMainAccount;
+    this.minMainAccountRate = minMainAccountRate;
+    this.halfLifeMillis = halfLife.toMillis();
+  }
+
+  @Override
+  public Mono<List<String>> order(String cardId, List<String> defaultOrder) {
+    if (!enabled || defaultOrder.size() < 2) {
+      return Mono.just(defaultOrder);
+    }
+
+    CardStats cardStats = stats.get(cardId);
+    if (cardStats != null) {
+      return Mono.just(cardStats.order(defaultOrder));
+    }
+
+    return statsRepository.findById(cardId)
+        .map(this::fromDocument)
+        .defaultIfEmpty(new CardStats())
+        .map(loaded -> stats.computeIfAbsent(cardId, id -> loaded).order(defaultOrder))
+        .onErrorResume(error -> {
+          log.warn("Could not load routing stats for card {}: {}", cardId, error.getMessage());
+          return Mono.just(defaultOrder);
+        });
+  }
+
+  @Override
+  public void recordOutcome(String cardId, DebitResult result) {
+    if (!enabled || result.getOutcome() == DebitResult.Outcome.ERROR) {
+      return;
+    }
+    stats.computeIfAbsent(cardId, id -> new CardStats())
+        .record(result.getAccountId(), result.isApproved(), System.currentTimeMillis());
+  }
+
+  @Scheduled(fixedDelayString = "${card.cascade.adaptive-ordering.checkpoint-interval-ms:60000}")
+  public void checkpoint() {
+    if (!enabled) {
+      return;
+    }
+    long idleCutoff = System.currentTimeMillis() - IDLE_EVICTION.toMillis();
+    List<AccountRoutingStats> dirty = new ArrayList<>();
+
+    stats.forEach((cardId, cardStats) -> {
+      AccountRoutingStats document = cardStats.takeIfDirty(cardId);
+      if (document != null) {
+        dirty.add(document);
+      } else if (cardStats.lastAccessMillis < idleCutoff) {
+        stats.remove(cardId, cardStats);
+      }
+    });
+
+    if (dirty.isEmpty()) {
+      return;
+    }
+    try {
+      statsRepository.saveAll(dirty).then().block(CHECKPOINT_TIMEOUT);
+      log.debug("Checkpointed routing stats of {} cards", dirty.size());
+    } catch (RuntimeException e) {
+      log.error("Routing stats checkpoint failed: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    checkpoint();
+  }
+
+  private CardStats fromDocument(AccountRoutingStats document) {
+    CardStats cardStats = new CardStats();
+    if (document.getAccounts() != null) {
+      document.getAccounts().forEach(stat -> cardStats.accounts.put(stat.getAccountId(),
+          new AccountStat(stat.getSuccesses(), stat.getAttempts(), stat.getUpdatedAtMillis())));
+    }
+    return cardStats;
+  }
+
+  private final class CardStats {
+    private final Map<String, AccountStat> accounts = new HashMap<>(4);
+    private volatile long lastAccessMillis = System.currentTimeMillis();
+    private boolean dirty;
+
+    synchronized void record(String accountId, boolean success, long now) {
+      AccountStat stat = accounts.computeIfAbsent(accountId, id -> new AccountStat(0, 0, now));
+      stat.decay(now, halfLifeMillis);
+      stat.attempts += 1;
+      if (success) {
+        stat.successes += 1;
+      }
+      lastAccessMillis = now;
+      dirty = true;
+    }
+
+    synchronized List<String> order(List<String> defaultOrder) {
+      long now = System.currentTimeMillis();
+      lastAccessMillis = now;
+      String mainAccount = defaultOrder.get(0);
+
+      Map<String, Double> rates = new HashMap<>(defaultOrder.size() * 2);
+      defaultOrder.forEach(accountId -> {
+        AccountStat stat = accounts.get(accountId);
+        rates.put(accountId, stat == null ? 0.5 : stat.rate(now, halfLifeMillis));
+      });
+
+      // Policy: the main account keeps its place unless it is clearly failing
+      boolean keepMainFirst = pinMainAccount || rates.get(mainAccount) >= minMainAccountRate;
+      List<String> ordered = new ArrayList<>(keepMainFirst ? defaultOrder.subList(1, defaultOrder.size()) : defaultOrder);
+      ordered.sort(Comparator.comparingDouble(accountId -> -rates.get(accountId)));
+      if (keepMainFirst) {
+        ordered.add(0, mainAccount);
+      }
+      return ordered;
+    }
+
+    synchronized AccountRoutingStats takeIfDirty(String cardId) {
+      if (!dirty) {
+        return null;
+      }
+      dirty = false;
+      List<AccountRoutingStats.AccountStat> snapshot = new ArrayList<>(accounts.size());
+      accounts.forEach((accountId, stat) -> snapshot.add(new AccountRoutingStats.AccountStat(
+          accountId, stat.successes, stat.attempts, stat.updatedAtMillis)));
+      return AccountRoutingStats.builder()
+          .id(cardId)
+          .accounts(snapshot)
+          .updatedAt(Instant.now())
+          .build();
+    }
+  }
+
+  private static final class AccountStat {
+    private double successes;
+    private double attempts;
+    private long updatedAtMillis;
+
+    private AccountStat(double successes, double attempts, long updatedAtMillis) {
+      this.successes = successes;
+      this.attempts = attempts;
+      this.updatedAtMillis = updatedAtMillis;
+    }
+
+    void decay(long now, long halfLifeMillis) {
+      if (now > updatedAtMillis) {
+        double factor = Math.pow(0.5, (double) (now - updatedAtMillis) / halfLifeMillis);
+        successes *= factor;
+        attempts *= factor;
+        updatedAtMillis = now;
+      }
+    }
+
+    double rate(long now, long halfLifeMillis) {
+      decay(now, halfLifeMillis);
+      return (successes + 1) / (attempts + 2);
+    }
+  }
+}
@@ -0,0 +1,42 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.entity.CardAuditEntry;
+import com.bootcamp67.ms_card.repository.support.UnorderedBatchInserter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * DOWN while an audit entry was lost within the loss window, so losing audit entries alerts
+ */
+@Component
+public class AuditTrailHealthIndicator implements HealthIndicator {
+
+  private final UnorderedBatchInserter<CardAuditEntry> inserter;
+  private final long lossWindowMillis;
+
+  public AuditTrailHealthIndicator(CardAuditServiceImpl cardAuditService,
+                                   @Value("${card.audit.loss-window:15m}") Duration lossWindow) {
+    this.inserter = cardAuditService.inserter();
+    this.lossWindowMillis = lossWindow.toMillis();
+  }
+
+  @Override
+  public Health health() {
+    long lastLoss = inserter.lastLossMillis();
+    boolean recentLoss = lastLoss > 0 && System.currentTimeMillis() - lastLoss < lossWindowMillis;
+    Health.Builder builder = recentLoss ? Health.down() : Health.up();
+    if (lastLoss > 0) {
+      builder.withDetail("lastLoss", Instant.ofEpochMilli(lastLoss).toString());
+    }
+    return builder
+        .withDetail("pending", inserter.pending())
+        .withDetail("dropped", inserter.dropped())
+        .withDetail("lost", inserter.lost())
+        .build();
+  }
+}
@@ -0,0 +1,119 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.config.MongoConfig;
+import com.bootcamp67.ms_card.dto.CardAuditDTO;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardAuditEntry;
+import com.bootcamp67.ms_card.repository.support.UnorderedBatchInserter;
+import com.bootcamp67.ms_card.service.CardAuditService;
+import com.bootcamp67.ms_card.util.CardIds;
+import com.bootcamp67.ms_card.util.SecurityContextUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Card audit trail.
+ * Entries are queued and inserted in unordered batches, like the ledger, so auditing normally adds
+ * no write to the request. Entries are never dropped: when the queue is full the entry is written
+ * directly and the request waits for it. Failed batches are retried; entries still failing are
+ * counted as lost (card.batch.lost) and turn AuditTrailHealthIndicator DOWN.
+ * Reads use the cardId + timestamp index on a secondary. The trail is append-only, so entries
+ * written before a card was migrated to its current id keep the old one: a migrated card's
+ * history is read under both its id and its legacyId.
+ */
+@Slf4j
+@Service
+public class CardAuditServiceImpl implements CardAuditService {
+
+  private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+
+  private final ReactiveMongoTemplate secondaryMongoTemplate;
+  private final UnorderedBatchInserter<CardAuditEntry> inserter;
+  private final int maxLimit;
+
+  public CardAuditServiceImpl(ReactiveMongoTemplate mongoTemplate,
+                              MeterRegistry meterRegistry,
+                              @Qualifier(MongoConfig.SECONDARY_TEMPLATE) ReactiveMongoTemplate secondaryMongoTemplate,
+                              @Value("${card.audit.batch-size:500}") int batchSize,
+                              @Value("${card.audit.flush-interval:200ms}") Duration flushInterval,
+                              @Value("${card.audit.queue-capacity:50000}") int queueCapacity,
+                              @Value("${card.audit.retry.attempts:3}") int retryAttempts,
+                              @Value("${card.audit.retry.backoff:500ms}") Duration retryBackoff,
+                              @Value("${card.audit.max-limit:200}") int maxLimit) {
+    this.secondaryMongoTemplate = secondaryMongoTemplate;
+    this.inserter = new UnorderedBatchInserter<>(mongoTemplate, CardAuditEntry.class,
+        batchSize, flushInterval, queueCapacity, retryAttempts, retryBackoff, meterRegistry);
+    this.maxLimit = maxLimit;
+  }
+
+  @PostConstruct
+  public void start() {
+    inserter.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    log.info("Flushing {} pending audit entries", inserter.pending());
+    inserter.stop(SHUTDOWN_FLUSH_TIMEOUT);
+  }
+
+  @Override
+  public Mono<Void> record(CardAuditEntry.CardAuditEntryBuilder entry) {
+    return Mono.deferContextual(context -> inserter.submit(entry
+            .actor(context.getOrDefault(SecurityContextUtil.USERNAME_CONTEXT_KEY, CardAuditEntry.ACTOR_SYSTEM))
+            .timestamp(LocalDateTime.now())
+            .build()))
+        // The change itself is already written; a lost entry is counted and reported by health
+        .onErrorResume(e -> Mono.empty());
+  }
+
+  UnorderedBatchInserter<CardAuditEntry> inserter() {
+    return inserter;
+  }
+
+  @Override
+  public Flux<CardAuditDTO> findByCard(String cardId, Integer limit) {
+    int boundedLimit = Math.max(1, Math.min(limit == null ? 50 : limit, maxLimit));
+    return cardIds(cardId)
+        .flatMapMany(ids -> {
+          Query query = Query.query(Criteria.where("cardId").in(ids))
+              .with(Sort.by(Sort.Direction.DESC, "timestamp"))
+              .limit(boundedLimit);
+          return secondaryMongoTemplate.find(query, CardAuditDTO.class,
+              secondaryMongoTemplate.getCollectionName(CardAuditEntry.class));
+        });
+  }
+
+  /**
+   * The card id plus the legacy id it had before the id migration, if any
+   */
+  private Mono<List<String>> cardIds(String cardId) {
+    Criteria criteria = Criteria.where("_id").is(cardId);
+    String customerId = CardIds.customerIdOf(cardId);
+    if (customerId != null) {
+      // Carries the shard key, so the lookup goes to one shard
+      criteria.and("customerId").is(customerId);
+    }
+    Query query = Query.query(criteria);
+    query.fields().include("legacyId");
+    return secondaryMongoTemplate.findOne(query, Card.class)
+        .filter(card -> card.getLegacyId() != null)
+        .map(card -> List.of(cardId, card.getLegacyId()))
+        .defaultIfEmpty(List.of(cardId));
+  }
+}
@@ -0,0 +1,275 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.cache.HotCardCache;
+import com.bootcamp67.ms_card.dto.BulkStatusChangeProgress;
+import com.bootcamp67.ms_card.dto.BulkStatusChangeRequest;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardAuditEntry;
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.event.CardStatusChangedEvent;
+import com.bootcamp67.ms_card.event.producer.CardEventProducer;
+import com.bootcamp67.ms_card.exception.InvalidCardOperationException;
+import com.bootcamp67.ms_card.service.CardAuditService;
+import com.bootcamp67.ms_card.service.CardBulkStatusService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk status changes without a read-modify-write per card.
+ * Matching ids are scanned in _id order, chunk by chunk (keyset pagination, so the scan never
+ * revisits a card), and each chunk is changed with one updateMulti that re-checks the status.
+ * Status events for a chunk are published concurrently and awaited before the next chunk.
+ * A started chunk always runs to its end: closing the progress stream stops the job between
+ * chunks, never between a chunk's update and its audit entries and events.
+ */
+@Slf4j
+@Service
+public class CardBulkStatusServiceImpl implements CardBulkStatusService {
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final CardEventProducer cardEventProducer;
+  private final HotCardCache hotCardCache;
+  private final CardAuditService cardAuditService;
+  private final int chunkSize;
+  private final int eventConcurrency;
+  private final boolean changeStreamEnabled;
+
+  public CardBulkStatusServiceImpl(ReactiveMongoTemplate mongoTemplate,
+                                   CardEventProducer cardEventProducer,
+                                   HotCardCache hotCardCache,
+                                   CardAuditService cardAuditService,
+                                   @Value("${card.bulk-status.chunk-size:1000}") int chunkSize,
+                                   @Value("${card.bulk-status.event-concurrency:64}") int eventConcurrency,
+                                   @Value("${card.change-stream.enabled:false}") boolean changeStreamEnabled) {
+    this.mongoTemplate = mongoTemplate;
+    this.cardEventProducer = cardEventProducer;
+    this.hotCardCache = hotCardCache;
+    this.cardAuditService = cardAuditService;
+    this.chunkSize = chunkSize;
+    this.eventConcurrency = eventConcurrency;
+    this.changeStreamEnabled = changeStreamEnabled;
+  }
+
+  @Override
+  public Flux<BulkStatusChangeProgress> changeStatus(BulkStatusChangeRequest request) {
+    CardStatus target = request.getTargetStatus();
+    if (target != CardStatus.BLOCKED && target != CardStatus.ACTIVE) {
+      return Flux.error(new InvalidCardOperationException("Target status must be BLOCKED or ACTIVE"));
+    }
+    Criteria filter = filter(request);
+    if (filter == null) {
+      return Flux.error(new InvalidCardOperationException("At least one filter is required"));
+    }
+    log.info("Bulk status change to {} started, reason: {}", target, request.getReason());
+
+    long start = System.currentTimeMillis();
+    AtomicReference<String> lastId = new AtomicReference<>();
+    AtomicInteger chunks = new AtomicInteger();
+    AtomicLong matched = new AtomicLong();
+    AtomicLong modified = new AtomicLong();
+    AtomicLong published = new AtomicLong();
+
+    // Reads and applies one chunk; empty once no card is left after lastId
+    Mono<BulkStatusChangeProgress> step = Mono.defer(() -> nextChunk(filter, lastId.get()))
+        .filter(chunk -> !chunk.isEmpty())
+        .flatMap(chunk -> {
+          lastId.set(chunk.get(chunk.size() - 1).getId());
+          return shielded(applyChunk(chunk, request))
+              .map(counts -> {
+                matched.addAndGet(chunk.size());
+                modified.addAndGet(counts[0]);
+                published.addAndGet(counts[1]);
+                return progress(target, chunks.incrementAndGet(), matched, modified, published, start, false);
+              });
+        });
+
+    // expand subscribes to the next step only after the previous one emitted, so chunks run one at a time
+    return step
+        .expand(progress -> step)
+        .concatWith(Mono.fromSupplier(() -> {
+          log.info("Bulk status change to {} done: {} matched, {} modified in {} chunks",
+              target, matched.get(), modified.get(), chunks.get());
+          return progress(target, chunks.get(), matched, modified, published, start, true);
+        }));
+  }
+
+  /**
+   * Next chunk of matching cards after lastId (id, customerId and status only)
+   */
+  private Mono<List<Card>> nextChunk(Criteria filter, String lastId) {
+    Query query = Query.query(lastId == null ? filter : new Criteria().andOperator(filter, Criteria.where("_id").gt(lastId)))
+        .with(Sort.by(Sort.Direction.ASC, "_id"))
+        .limit(chunkSize);
+    query.fields().include("customerId", "status");
+    return mongoTemplate.find(query, Card.class).collectList();
+  }
+
+  private Mono<long[]> applyChunk(List<Card> chunk, BulkStatusChangeRequest request) {
+    CardStatus target = request.getTargetStatus();
+    List<String> ids = chunk.stream().map(Card::getId).collect(Collectors.toList());
+    // Millisecond precision, as stored, so changed cards can be found again by their stamp
+    LocalDateTime stamp = LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+
+    // Re-checked on write: a card changed since the scan is left alone
+    Query query = Query.query(Criteria.where("_id").in(ids).and("status").in(sourceStatuses(target)));
+    Update update = Update.update("status", target).set("updatedAt", stamp);
+
+    return mongoTemplate.updateMulti(query, update, Card.class)
+        .flatMap(result -> {
+          ids.forEach(hotCardCache::invalidate);
+          return changedCards(chunk, ids, stamp, result.getModifiedCount())
+              .flatMap(changed -> Flux.fromIterable(changed)
+                  .concatMap(card -> audit(card, request))
+                  .then(publishAll(changed, request))
+                  .map(published -> new long[]{result.getModifiedCount(), published}));
+        });
+  }
+
+  /**
+   * Run the chunk on its own subscription, so a cancelled caller only stops waiting for it.
+   * The caller's context (the acting admin for the audit entries) is carried over.
+   */
+  private Mono<long[]> shielded(Mono<long[]> chunk) {
+    return Mono.deferContextual(context -> {
+      Mono<long[]> running = chunk.contextWrite(context).cache();
+      running.subscribe(counts -> { }, error -> log.error("Bulk status chunk failed: {}", error.getMessage()));
+      return running;
+    });
+  }
+
+  /**
+   * Cards of the chunk that were actually changed; only looked up again when some were skipped
+   */
+  private Mono<List<Card>> changedCards(List<Card> chunk, List<String> ids, LocalDateTime stamp, long modified) {
+    if (modified == chunk.size()) {
+      return Mono.just(chunk);
+    }
+    Query query = Query.query(Criteria.where("_id").in(ids).and("updatedAt").is(stamp));
+    query.fields().include("_id");
+    return mongoTemplate.find(query, Card.class)
+        .map(Card::getId)
+        .collectList()
+        .map(changedIds -> chunk.stream()
+            .filter(card -> changedIds.contains(card.getId()))
+            .collect(Collectors.toList()));
+  }
+
+  /**
+   * Status events of the changed cards; the change stream publishes them itself when it is enabled
+   */
+  private Mono<Long> publishAll(List<Card> changed, BulkStatusChangeRequest request) {
+    if (changeStreamEnabled) {
+      return Mono.just(0L);
+    }
+    return Flux.fromIterable(changed)
+        .flatMap(card -> publish(card, request), eventConcurrency)
+        .then(Mono.just((long) changed.size()));
+  }
+
+  private Mono<Void> audit(Card card, BulkStatusChangeRequest request) {
+    return cardAuditService.record(CardAuditEntry.builder()
+        .cardId(card.getId())
+        .customerId(card.getCustomerId())
+        .action(CardAuditEntry.ACTION_STATUS_CHANGED)
+        .field("status")
+        .oldValue(card.getStatus().name())
+        .newValue(request.getTargetStatus().name())
+        .reason(request.getReason()));
+  }
+
+  private Mono<Void> publish(Card card, BulkStatusChangeRequest request) {
+    CardStatusChangedEvent event = CardStatusChangedEvent.builder()
+        .cardId(card.getId())
+        .customerId(card.getCustomerId())
+        .previousStatus(card.getStatus())
+        .newStatus(request.getTargetStatus())
+        .reason(request.getReason())
+        .build();
+    return request.getTargetStatus() == CardStatus.BLOCKED
+        ? cardEventProducer.publishCardBlocked(event)
+        : cardEventProducer.publishCardActivated(event);
+  }
+
+  /**
+   * Request filters plus "not already in the target status"; null when no filter was given
+   */
+  private Criteria filter(BulkStatusChangeRequest request) {
+    List<Criteria> criteria = new ArrayList<>();
+    if (request.getCustomerIds() != null && !request.getCustomerIds().isEmpty()) {
+      criteria.add(Criteria.where("customerId").in(request.getCustomerIds()));
+    }
+    if (request.getCardNumberPrefix() != null && !request.getCardNumberPrefix().isEmpty()) {
+      criteria.add(Criteria.where("cardNumber").regex("^" + Pattern.quote(formatPrefix(request.getCardNumberPrefix()))));
+    }
+    if (request.getCardType() != null) {
+      criteria.add(Criteria.where("cardType").is(request.getCardType()));
+    }
+    if (request.getStatus() != null) {
+      criteria.add(Criteria.where("status").is(request.getStatus()));
+    }
+    if (criteria.isEmpty()) {
+      return null;
+    }
+    criteria.add(Criteria.where("status").in(sourceStatuses(request.getTargetStatus())));
+    return new Criteria().andOperator(criteria.toArray(new Criteria[0]));
+  }
+
+  /**
+   * Statuses a card may move from; expired cards are never reactivated (as in activateCard)
+   */
+  private static List<CardStatus> sourceStatuses(CardStatus target) {
+    List<CardStatus> statuses = new ArrayList<>();
+    for (CardStatus status : CardStatus.values()) {
+      if (status != target && !(target == CardStatus.ACTIVE && status == CardStatus.EXPIRED)) {
+        statuses.add(status);
+      }
+    }
+    return statuses;
+  }
+
+  /**
+   * Card numbers are stored as XXXX-XXXX-XXXX-XXXX
+   */
+  private static String formatPrefix(String digits) {
+    StringBuilder formatted = new StringBuilder();
+    for (int i = 0; i < digits.length(); i++) {
+      if (i > 0 && i % 4 == 0) {
+        formatted.append('-');
+      }
+      formatted.append(digits.charAt(i));
+    }
+    return formatted.toString();
+  }
+
+  private static BulkStatusChangeProgress progress(CardStatus target, int chunk, AtomicLong matched,
+                                                   AtomicLong modified, AtomicLong published,
+                                                   long start, boolean done) {
+    return BulkStatusChangeProgress.builder()
+        .targetStatus(target)
+        .chunk(chunk)
+        .matched(matched.get())
+        .modified(modified.get())
+        .eventsPublished(published.get())
+        .elapsedMillis(System.currentTimeMillis() - start)
+        .done(done)
+        .build();
+  }
+}
@@ -0,0 +1,388 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.config.MongoConfig;
+import com.bootcamp67.ms_card.dto.ExportJob;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.enums.ExportFormat;
+import com.bootcamp67.ms_card.service.CardExportService;
+import com.bootcamp67.ms_card.util.CardNumbers;
+import com.bootcamp67.ms_card.util.PrivateFiles;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.Sorts;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams the cards collection into gzip compressed NDJSON or CSV parts, off the request path.
+ * A projected cursor on a secondary is read in _id order and written row by row to a FileChannel,
+ * so no more than a cursor batch is held in memory. Each part is written to a temporary file
+ * and renamed when complete, then recorded in the job manifest with the last exported id;
+ * a resumed job starts a new part after that id. Card numbers are masked, cvv and hashes
+ * are never exported; job directories and parts are owner-only.
+ * Jobs are local to the instance that runs them (in-memory running map, files under
+ * card.export.dir), so their status, resume and downloads must reach that instance
+ * unless the directory is shared.
+ */
+@Slf4j
+@Service
+public class CardExportServiceImpl implements CardExportService {
+
+  private static final String MANIFEST = "manifest.json";
+  private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+  private static final DateTimeFormatter JOB_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+  private static final int GZIP_BUFFER = 64 * 1024;
+  private static final List<String> COLUMNS = List.of("id", "customerId", "cardType", "status", "cardNumber",
+      "expirationDate", "mainAccountId", "creditId", "associatedAccounts", "createdAt", "updatedAt");
+
+  private final ReactiveMongoTemplate secondaryMongoTemplate;
+  private final ObjectMapper objectMapper;
+  private final Path baseDir;
+  private final int partSize;
+  private final int batchSize;
+  private final int maxRunning;
+  private final Map<String, Disposable> running = new ConcurrentHashMap<>();
+
+  public CardExportServiceImpl(@Qualifier(MongoConfig.SECONDARY_TEMPLATE) ReactiveMongoTemplate secondaryMongoTemplate,
+                               ObjectMapper objectMapper,
+                               @Value("${card.export.dir:${java.io.tmpdir}/ms-card-exports}") String baseDir,
+                               @Value("${card.export.part-size:500000}") int partSize,
+                               @Value("${card.export.batch-size:1000}") int batchSize,
+                               @Value("${card.export.max-running:1}") int maxRunning) {
+    this.secondaryMongoTemplate = secondaryMongoTemplate;
+    this.objectMapper = objectMapper;
+    this.baseDir = Paths.get(baseDir);
+    this.partSize = partSize;
+    this.batchSize = batchSize;
+    this.maxRunning = maxRunning;
+  }
+
+  @Override
+  public Mono<ExportJob> start(ExportFormat format) {
+    return Mono.fromCallable(() -> {
+      String jobId = LocalDateTime.now().format(JOB_TIME) + "-" + UUID.randomUUID().toString().substring(0, 8);
+      PrivateFiles.createDirectories(baseDir.resolve(jobId));
+      ExportJob job = ExportJob.builder()
+          .jobId(jobId)
+          .format(format)
+          .partSize(partSize)
+          .rows(0L)
+          .startedAt(Instant.now())
+          .build();
+      launch(job);
+      return job;
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  @Override
+  public Mono<ExportJob> resume(String jobId) {
+    return status(jobId)
+        .map(job -> {
+          if (ExportJob.COMPLETED.equals(job.getStatus()) || ExportJob.RUNNING.equals(job.getStatus())) {
+            throw new IllegalStateException("Export " + jobId + " is " + job.getStatus().toLowerCase());
+          }
+          job.setError(null);
+          launch(job);
+          return job;
+        });
+  }
+
+  @Override
+  public Mono<ExportJob> status(String jobId) {
+    return Mono.fromCallable(() -> {
+      ExportJob job = readManifest(jobId);
+      if (ExportJob.RUNNING.equals(job.getStatus()) && !running.containsKey(jobId)) {
+        job.setStatus(ExportJob.INTERRUPTED);
+      }
+      return job;
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  @Override
+  public Mono<Path> part(String jobId, String partName) {
+    return status(jobId)
+        .map(job -> {
+          boolean complete = job.getParts().stream().anyMatch(part -> part.getName().equals(partName));
+          if (!complete) {
+            throw new IllegalArgumentException("Unknown part " + partName + " of export " + jobId);
+          }
+          return jobDir(jobId).resolve(partName);
+        });
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    // Manifests stay RUNNING and are reported as INTERRUPTED, ready to resume
+    running.values().forEach(Disposable::dispose);
+  }
+
+  private synchronized void launch(ExportJob job) {
+    if (running.size() >= maxRunning) {
+      throw new IllegalStateException("An export is already running");
+    }
+    job.setStatus(ExportJob.RUNNING);
+    job.setFinishedAt(null);
+    writeManifest(job);
+
+    PartWriter writer = new PartWriter(job);
+    // Registered before subscribing, so a fast completion can't leave a stale entry
+    Disposable.Swap export = Disposables.swap();
+    running.put(job.getJobId(), export);
+    export.update(cursor(job.getLastId())
+        .publishOn(Schedulers.boundedElastic(), batchSize)
+        .doOnNext(writer::write)
+        .then(Mono.fromRunnable(writer::finish))
+        .doOnError(writer::fail)
+        .doFinally(signal -> running.remove(job.getJobId()))
+        .subscribe(
+            done -> { },
+            error -> log.error("Export {} failed after {} rows: {}", job.getJobId(), job.getRows(), error.getMessage()),
+            () -> log.info("Export {} completed: {} rows in {} parts", job.getJobId(), job.getRows(), job.getParts().size())));
+  }
+
+  /**
+   * Projected cursor in _id order after lastId. Legacy ObjectId ids sort after string ids,
+   * and range queries only match their own type, so resuming from a string id adds the ObjectIds.
+   */
+  private Flux<Document> cursor(String lastId) {
+    Bson filter = new Document();
+    if (lastId != null && ObjectId.isValid(lastId)) {
+      filter = Filters.gt("_id", new ObjectId(lastId));
+    } else if (lastId != null) {
+      filter = Filters.or(Filters.gt("_id", lastId), Filters.type("_id", BsonType.OBJECT_ID));
+    }
+    Bson projection = Projections.include(COLUMNS.stream()
+        .filter(column -> !column.equals("id"))
+        .collect(Collectors.toList()));
+    Bson query = filter;
+
+    return secondaryMongoTemplate.getCollection(secondaryMongoTemplate.getCollectionName(Card.class))
+        .flatMapMany(collection -> collection.find(query)
+            .projection(projection)
+            .sort(Sorts.ascending("_id"))
+            .batchSize(batchSize));
+  }
+
+  /**
+   * Writes rows into the current part, rolling over every partSize rows. Called sequentially.
+   */
+  private final class PartWriter {
+    private final ExportJob job;
+    private Path tmp;
+    private FileChannel channel;
+    private GZIPOutputStream out;
+    private long partRows;
+    private String partLastId;
+
+    private PartWriter(ExportJob job) {
+      this.job = job;
+    }
+
+    void write(Document document) {
+      try {
+        if (out == null) {
+          open();
+        }
+        Map<String, String> row = row(document);
+        out.write(job.getFormat() == ExportFormat.CSV ? csvLine(row.values()) : jsonLine(row));
+        partRows++;
+        partLastId = row.get("id");
+        if (partRows >= job.getPartSize()) {
+          close();
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+
+    void finish() {
+      try {
+        close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      job.setStatus(ExportJob.COMPLETED);
+      job.setFinishedAt(Instant.now());
+      writeManifest(job);
+    }
+
+    void fail(Throwable error) {
+      discard();
+      job.setStatus(ExportJob.FAILED);
+      job.setError(error.getMessage());
+      job.setFinishedAt(Instant.now());
+      writeManifest(job);
+    }
+
+    private void open() throws IOException {
+      String name = String.format("part-%05d.%s.gz", job.getParts().size() + 1, job.getFormat().getExtension());
+      tmp = jobDir(job.getJobId()).resolve(name + ".tmp");
+      // A part left by an interrupted run is incomplete: start it over
+      channel = FileChannel.open(tmp, Set.of(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+          StandardOpenOption.WRITE), PrivateFiles.ownerOnlyFile());
+      out = new GZIPOutputStream(Channels.newOutputStream(channel), GZIP_BUFFER);
+      partRows = 0;
+      if (job.getFormat() == ExportFormat.CSV) {
+        out.write(csvLine(COLUMNS));
+      }
+    }
+
+    /**
+     * Complete the part: flush to disk, rename, record it in the manifest
+     */
+    private void close() throws IOException {
+      if (out == null) {
+        return;
+      }
+      out.finish();
+      out.flush();
+      channel.force(false);
+      out.close();
+      String name = tmp.getFileName().toString().replace(".tmp", "");
+      Path target = tmp.resolveSibling(name);
+      Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+      job.getParts().add(new ExportJob.Part(name, partRows, Files.size(target)));
+      job.setRows(job.getRows() + partRows);
+      job.setLastId(partLastId);
+      writeManifest(job);
+      out = null;
+      channel = null;
+    }
+
+    private void discard() {
+      try {
+        if (out != null) {
+          out.close();
+        }
+        if (tmp != null) {
+          Files.deleteIfExists(tmp);
+        }
+      } catch (IOException e) {
+        log.warn("Could not discard incomplete part {}: {}", tmp, e.getMessage());
+      }
+      out = null;
+    }
+  }
+
+  private Map<String, String> row(Document document) {
+    Map<String, String> row = new LinkedHashMap<>();
+    for (String column : COLUMNS) {
+      Object value = document.get(column.equals("id") ? "_id" : column);
+      row.put(column, format(column, value));
+    }
+    return row;
+  }
+
+  private static String format(String column, Object value) {
+    if (value == null) {
+      return null;
+    }
+    if (value instanceof ObjectId) {
+      return ((ObjectId) value).toHexString();
+    }
+    if (value instanceof Date) {
+      // Stored from LocalDate/LocalDateTime in the system zone, as Spring Data writes them
+      LocalDateTime local = LocalDateTime.ofInstant(((Date) value).toInstant(), ZoneId.systemDefault());
+      return column.equals("expirationDate") ? local.toLocalDate().toString() : local.toString();
+    }
+    if (value instanceof List) {
+      return ((List<?>) value).stream().map(String::valueOf).collect(Collectors.joining(";"));
+    }
+    if (column.equals("cardNumber")) {
+      return CardNumbers.mask(value.toString());
+    }
+    return value.toString();
+  }
+
+  private byte[] jsonLine(Map<String, String> row) throws IOException {
+    byte[] json = objectMapper.writeValueAsBytes(row);
+    byte[] line = new byte[json.length + 1];
+    System.arraycopy(json, 0, line, 0, json.length);
+    line[json.length] = '\n';
+    return line;
+  }
+
+  private static byte[] csvLine(Iterable<String> values) {
+    StringBuilder line = new StringBuilder(256);
+    for (String value : values) {
+      if (line.length() > 0) {
+        line.append(',');
+      }
+      if (value != null) {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0;
+        line.append(quote ? '"' + value.replace("\"", "\"\"") + '"' : value);
+      }
+    }
+    return line.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private Path jobDir(String jobId) {
+    if (!SAFE_NAME.matcher(jobId).matches() || jobId.startsWith(".")) {
+      throw new IllegalArgumentException("Invalid export job id");
+    }
+    return baseDir.resolve(jobId);
+  }
+
+  private ExportJob readManifest(String jobId) {
+    Path manifest = jobDir(jobId).resolve(MANIFEST);
+    if (!Files.exists(manifest)) {
+      throw new IllegalArgumentException("Unknown export job " + jobId);
+    }
+    try {
+      return objectMapper.readValue(manifest.toFile(), ExportJob.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeManifest(ExportJob job) {
+    Path manifest = jobDir(job.getJobId()).resolve(MANIFEST);
+    Path tmp = manifest.resolveSibling(MANIFEST + ".tmp");
+    try {
+      objectMapper.writeValue(tmp.toFile(), job);
+      Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,793 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.dto.ImportJob;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardNumberClaim;
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import com.bootcamp67.ms_card.enums.ExportFormat;
+import com.bootcamp67.ms_card.service.CardImportService;
+import com.bootcamp67.ms_card.util.CardIds;
+import com.bootcamp67.ms_card.util.CardNumberHasher;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Bulk load of cards from CSV (with a header line) or NDJSON files, for portfolio migrations.
+ * The file is memory-mapped one window at a time; each window is cut at line boundaries into
+ * chunks that are parsed and validated in parallel, then written with unordered insertMany
+ * batches at bounded concurrency. The next window is only mapped once the previous one is
+ * written, which keeps memory bounded whatever the file size.
+ * Card numbers are claimed like on creation and card ids are derived from the card number
+ * hash, so re-importing a window after an interruption skips what was already written.
+ * Invalid rows go to a rejects file per input (line and reason, never the row itself).
+ * Jobs are local to the instance that runs them (in-memory running map, manifests under
+ * card.import.dir), so their status and resume must reach that instance unless the
+ * directory is shared.
+ */
+@Slf4j
+@Service
+public class CardImportServiceImpl implements CardImportService {
+
+  private static final String MANIFEST = "manifest.json";
+  private static final String JOBS = ".jobs";
+  private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9._-]{1,128}");
+  private static final DateTimeFormatter JOB_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+  private static final Pattern CARD_NUMBER = Pattern.compile("\\d{16}");
+  private static final Pattern CVV = Pattern.compile("\\d{3}");
+  private static final int DUPLICATE_KEY = 11000;
+  private static final InsertManyOptions UNORDERED = new InsertManyOptions().ordered(false);
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final CardNumberHasher cardNumberHasher;
+  private final ObjectMapper objectMapper;
+  private final Path inputDir;
+  private final int windowSize;
+  private final int parallelism;
+  private final int batchSize;
+  private final int insertConcurrency;
+  private final int maxRunning;
+  private final Map<String, Disposable> running = new ConcurrentHashMap<>();
+
+  public CardImportServiceImpl(ReactiveMongoTemplate mongoTemplate,
+                               CardNumberHasher cardNumberHasher,
+                               ObjectMapper objectMapper,
+                               @Value("${card.import.dir:${java.io.tmpdir}/ms-card-imports}") String inputDir,
+                               @Value("${card.import.window-size:16MB}") DataSize windowSize,
+                               @Value("${card.import.parallelism:0}") int parallelism,
+                               @Value("${card.import.batch-size:1000}") int batchSize,
+                               @Value("${card.import.insert-concurrency:4}") int insertConcurrency,
+                               @Value("${card.import.max-running:1}") int maxRunning) {
+    this.mongoTemplate = mongoTemplate;
+    this.cardNumberHasher = cardNumberHasher;
+    this.objectMapper = objectMapper;
+    this.inputDir = Paths.get(inputDir);
+    this.windowSize = (int) Math.min(windowSize.toBytes(), Integer.MAX_VALUE);
+    this.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    this.batchSize = batchSize;
+    this.insertConcurrency = insertConcurrency;
+    this.maxRunning = maxRunning;
+  }
+
+  @Override
+  public Mono<ImportJob> start(String file) {
+    return Mono.fromCallable(() -> {
+      Path input = input(file);
+      if (!Files.isRegularFile(input)) {
+        throw new IllegalArgumentException("Unknown import file " + file);
+      }
+      String jobId = LocalDateTime.now().format(JOB_TIME) + "-" + UUID.randomUUID().toString().substring(0, 8);
+      Files.createDirectories(jobDir(jobId));
+      ImportJob job = ImportJob.builder()
+          .jobId(jobId)
+          .file(file)
+          .format(formatOf(file))
+          .fileSize(Files.size(input))
+          .offset(0L)
+          .lines(0L)
+          .imported(0L)
+          .skipped(0L)
+          .rejected(0L)
+          .rejectsFile(file + ".rejects.ndjson")
+          .rejectsBytes(0L)
+          .startedAt(Instant.now())
+          .build();
+      launch(job);
+      return job;
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  @Override
+  public Mono<ImportJob> resume(String jobId) {
+    return status(jobId)
+        .map(job -> {
+          if (ImportJob.COMPLETED.equals(job.getStatus()) || ImportJob.RUNNING.equals(job.getStatus())) {
+            throw new IllegalStateException("Import " + jobId + " is " + job.getStatus().toLowerCase());
+          }
+          job.setError(null);
+          launch(job);
+          return job;
+        });
+  }
+
+  @Override
+  public Mono<ImportJob> status(String jobId) {
+    return Mono.fromCallable(() -> {
+      ImportJob job = readManifest(jobId);
+      if (ImportJob.RUNNING.equals(job.getStatus()) && !running.containsKey(jobId)) {
+        job.setStatus(ImportJob.INTERRUPTED);
+      }
+      return job;
+    }).subscribeOn(Schedulers.boundedElastic());
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    // Manifests stay RUNNING and are reported as INTERRUPTED, ready to resume
+    running.values().forEach(Disposable::dispose);
+  }
+
+  private synchronized void launch(ImportJob job) {
+    if (running.size() >= maxRunning) {
+      throw new IllegalStateException("An import is already running");
+    }
+    job.setStatus(ImportJob.RUNNING);
+    job.setFinishedAt(null);
+    // Rejects written after the last checkpoint are written again by the resumed window
+    truncate(rejectsPath(job), job.getRejectsBytes());
+    writeManifest(job);
+
+    Disposable.Swap importing = Disposables.swap();
+    running.put(job.getJobId(), importing);
+    importing.update(Flux.using(
+            () -> FileChannel.open(input(job.getFile()), StandardOpenOption.READ),
+            channel -> windows(channel, job)
+                .concatMap(window -> importWindow(job, window), 1),
+            this::closeQuietly)
+        .then(Mono.fromRunnable(() -> {
+          job.setStatus(ImportJob.COMPLETED);
+          job.setFinishedAt(Instant.now());
+          writeManifest(job);
+        }).subscribeOn(Schedulers.boundedElastic()))
+        .doOnError(error -> {
+          job.setStatus(ImportJob.FAILED);
+          job.setError(error.getMessage());
+          job.setFinishedAt(Instant.now());
+          writeManifest(job);
+        })
+        .doFinally(signal -> running.remove(job.getJobId()))
+        .subscribe(
+            done -> { },
+            error -> log.error("Import {} of {} failed at line {}: {}",
+                job.getJobId(), job.getFile(), job.getLines(), error.getMessage()),
+            () -> log.info("Import {} of {} completed: {} imported, {} skipped, {} rejected", job.getJobId(),
+                job.getFile(), job.getImported(), job.getSkipped(), job.getRejected())));
+  }
+
+  /**
+   * Maps the file window by window from the job offset, each window ending at a line break
+   */
+  private Flux<Window> windows(FileChannel channel, ImportJob job) {
+    return Mono.fromCallable(() -> {
+          long size = channel.size();
+          List<String> header = null;
+          if (job.getFormat() == ExportFormat.CSV) {
+            ByteBuffer first = map(channel, 0, size);
+            int end = lineEnd(first, 0);
+            header = parseCsvLine(decode(first, 0, end));
+            if (job.getOffset() == 0) {
+              job.setOffset(Math.min(end + 1, size));
+              job.setLines(1L);
+            }
+          }
+          return new Header(size, header);
+        })
+        .flatMapMany(header -> Flux.<Window, Long>generate(job::getOffset, (offset, sink) -> {
+          if (offset >= header.size) {
+            sink.complete();
+            return offset;
+          }
+          try {
+            ByteBuffer buffer = map(channel, offset, header.size);
+            int length = buffer.limit();
+            if (offset + length < header.size) {
+              length = lastLineBreak(buffer) + 1;
+              if (length == 0) {
+                throw new IllegalStateException("Line at offset " + offset + " is longer than the import window");
+              }
+            }
+            sink.next(new Window(offset, offset + length, buffer, header.columns));
+            return offset + length;
+          } catch (IOException e) {
+            sink.error(new UncheckedIOException(e));
+            return offset;
+          }
+        }))
+        .subscribeOn(Schedulers.boundedElastic());
+  }
+
+  private Mono<Void> importWindow(ImportJob job, Window window) {
+    return Flux.fromIterable(chunks(window))
+        .flatMapSequential(chunk -> Mono.fromCallable(() -> parse(chunk, window.columns, job.getFormat()))
+            .subscribeOn(Schedulers.parallel()), parallelism)
+        .collectList()
+        .flatMap(parsed -> {
+          // Chunk line numbers are relative; number them from the checkpoint
+          long line = job.getLines();
+          List<ParsedCard> cards = new ArrayList<>();
+          List<Reject> rejects = new ArrayList<>();
+          for (ParsedChunk chunk : parsed) {
+            for (ParsedCard card : chunk.cards) {
+              cards.add(new ParsedCard(line + card.line, card.card));
+            }
+            for (Reject reject : chunk.rejects) {
+              rejects.add(new Reject(line + reject.line, reject.reason));
+            }
+            line += chunk.lines;
+          }
+          long lines = line;
+
+          return collections()
+              .flatMap(collections -> Flux.fromIterable(partition(cards))
+                  .flatMap(batch -> insertBatch(batch, collections.getT1(), collections.getT2()), insertConcurrency)
+                  .reduce(new WindowResult(rejects), WindowResult::add))
+              .flatMap(result -> Mono.fromRunnable(() -> checkpoint(job, window, lines, result))
+                  .subscribeOn(Schedulers.boundedElastic()));
+        })
+        .then();
+  }
+
+  /**
+   * Claim the card numbers, then insert the cards whose claim is theirs.
+   * A claim held by the same card id, or a card id already present, is a row written by an
+   * earlier run; a claim held by another card is a duplicate card number.
+   */
+  private Mono<WindowResult> insertBatch(List<ParsedCard> batch,
+                                         MongoCollection<Document> cards,
+                                         MongoCollection<Document> claims) {
+    List<Document> claimDocuments = new ArrayList<>(batch.size());
+    for (ParsedCard parsed : batch) {
+      claimDocuments.add(new Document("_id", cardNumberHasher.toToken(parsed.card.getCardNumberHash()))
+          .append("cardId", parsed.card.getId())
+          .append("claimedAt", new Date()));
+    }
+
+    return insertUnordered(claims, claimDocuments)
+        .flatMap(failed -> resolveClaimConflicts(batch, claims, failed))
+        .flatMap(result -> {
+          List<ParsedCard> claimed = new ArrayList<>(batch.size());
+          List<Document> cardDocuments = new ArrayList<>(batch.size());
+          for (int i = 0; i < batch.size(); i++) {
+            if (!result.rejectedIndexes.contains(i)) {
+              Document document = new Document();
+              mongoTemplate.getConverter().write(batch.get(i).card, document);
+              claimed.add(batch.get(i));
+              cardDocuments.add(document);
+            }
+          }
+          return insertUnordered(cards, cardDocuments)
+              .flatMap(failed -> {
+                List<String> released = new ArrayList<>();
+                failed.forEach((index, error) -> {
+                  ParsedCard parsed = claimed.get(index);
+                  if (error.getCode() == DUPLICATE_KEY) {
+                    result.skipped++;
+                  } else {
+                    result.rejects.add(new Reject(parsed.line, error.getMessage()));
+                    released.add(cardNumberHasher.toToken(parsed.card.getCardNumberHash()));
+                  }
+                });
+                result.imported += cardDocuments.size() - failed.size();
+                if (released.isEmpty()) {
+                  return Mono.just(result);
+                }
+                return Mono.from(claims.deleteMany(Filters.in("_id", released))).thenReturn(result);
+              });
+        });
+  }
+
+  private Mono<WindowResult> resolveClaimConflicts(List<ParsedCard> batch,
+                                                   MongoCollection<Document> claims,
+                                                   Map<Integer, BulkWriteError> failed) {
+    WindowResult result = new WindowResult(new ArrayList<>());
+    if (failed.isEmpty()) {
+      return Mono.just(result);
+    }
+    List<String> tokens = new ArrayList<>(failed.size());
+    failed.forEach((index, error) -> {
+      if (error.getCode() == DUPLICATE_KEY) {
+        tokens.add(cardNumberHasher.toToken(batch.get(index).card.getCardNumberHash()));
+      } else {
+        result.reject(index, batch.get(index).line, error.getMessage());
+      }
+    });
+
+    return Flux.from(claims.find(Filters.in("_id", tokens)))
+        .collectMap(claim -> claim.getString("_id"), claim -> claim.getString("cardId"))
+        .map(owners -> {
+          failed.forEach((index, error) -> {
+            Card card = batch.get(index).card;
+            String owner = owners.get(cardNumberHasher.toToken(card.getCardNumberHash()));
+            if (error.getCode() == DUPLICATE_KEY && !card.getId().equals(owner)) {
+              result.reject(index, batch.get(index).line, "Card number already issued");
+            }
+          });
+          return result;
+        });
+  }
+
+  /**
+   * Unordered insertMany; returns the write errors by index in the list
+   */
+  private Mono<Map<Integer, BulkWriteError>> insertUnordered(MongoCollection<Document> collection,
+                                                             List<Document> documents) {
+    if (documents.isEmpty()) {
+      return Mono.just(Map.of());
+    }
+    return Mono.from(collection.insertMany(documents, UNORDERED))
+        .map(inserted -> Map.<Integer, BulkWriteError>of())
+        .onErrorResume(MongoBulkWriteException.class, e -> Mono.just(e.getWriteErrors().stream()
+            .collect(Collectors.toMap(BulkWriteError::getIndex, error -> error))));
+  }
+
+  private void checkpoint(ImportJob job, Window window, long lines, WindowResult result) {
+    if (!result.rejects.isEmpty()) {
+      StringBuilder rejects = new StringBuilder(result.rejects.size() * 64);
+      result.rejects.sort((a, b) -> Long.compare(a.line, b.line));
+      for (Reject reject : result.rejects) {
+        try {
+          rejects.append(objectMapper.writeValueAsString(Map.of("line", reject.line, "reason", reject.reason)))
+              .append('\n');
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+      try {
+        Files.write(rejectsPath(job), rejects.toString().getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        job.setRejectsBytes(Files.size(rejectsPath(job)));
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    job.setOffset(window.end);
+    job.setLines(lines);
+    job.setImported(job.getImported() + result.imported);
+    job.setSkipped(job.getSkipped() + result.skipped);
+    job.setRejected(job.getRejected() + result.rejects.size());
+    writeManifest(job);
+    log.debug("Import {}: {} of {} bytes, {} imported, {} rejected", job.getJobId(),
+        job.getOffset(), job.getFileSize(), job.getImported(), job.getRejected());
+  }
+
+  /**
+   * Cut the window into about one chunk per core, each ending at a line break
+   */
+  private List<ByteBuffer> chunks(Window window) {
+    ByteBuffer buffer = window.buffer;
+    int length = (int) (window.end - window.start);
+    int target = Math.max(length / parallelism, 1);
+    List<ByteBuffer> chunks = new ArrayList<>(parallelism);
+    int start = 0;
+    while (start < length) {
+      int end = start + target >= length ? length : Math.min(lineEnd(buffer, start + target) + 1, length);
+      ByteBuffer chunk = buffer.duplicate();
+      chunk.position(start).limit(end);
+      chunks.add(chunk.slice());
+      start = end;
+    }
+    return chunks;
+  }
+
+  private ParsedChunk parse(ByteBuffer chunk, List<String> columns, ExportFormat format) {
+    ParsedChunk parsed = new ParsedChunk();
+    int start = 0;
+    while (start < chunk.limit()) {
+      int end = lineEnd(chunk, start);
+      String line = decode(chunk, start, end);
+      start = end + 1;
+      parsed.lines++;
+      if (line.isBlank()) {
+        continue;
+      }
+      try {
+        Map<String, String> row = format == ExportFormat.CSV ? csvRow(columns, line) : jsonRow(line);
+        parsed.cards.add(new ParsedCard(parsed.lines, toCard(row)));
+      } catch (IllegalArgumentException | IOException e) {
+        parsed.rejects.add(new Reject(parsed.lines, e.getMessage()));
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Validate a row against the card model. Debit cards need a main account, credit cards a credit.
+   */
+  private Card toCard(Map<String, String> row) {
+    String customerId = required(row, "customerId");
+    CardType cardType = enumValue(CardType.class, required(row, "cardType"), "cardType");
+    String digits = CardNumberHasher.normalize(required(row, "cardNumber"));
+    if (!CARD_NUMBER.matcher(digits).matches()) {
+      throw new IllegalArgumentException("cardNumber must have 16 digits");
+    }
+    String status = row.get("status");
+    String cvv = row.get("cvv");
+    if (cvv != null && !CVV.matcher(cvv).matches()) {
+      throw new IllegalArgumentException("cvv must have 3 digits");
+    }
+
+    byte[] hash = cardNumberHasher.hash(digits);
+    Card card = Card.builder()
+        // Derived from the number: the same row always gets the same id
+        .id(CardIds.of(customerId, new ObjectId(Arrays.copyOf(hash, 12))))
+        .sourceId(row.get("id"))
+        .cardNumber(String.join("-", digits.substring(0, 4), digits.substring(4, 8),
+            digits.substring(8, 12), digits.substring(12)))
+        .cardNumberHash(hash)
+        .customerId(customerId)
+        .cardType(cardType)
+        .status(status == null ? CardStatus.ACTIVE : enumValue(CardStatus.class, status, "status"))
+        .expirationDate(expirationDate(required(row, "expirationDate")))
+        .cvv(cvv)
+        .createdAt(row.get("createdAt") == null ? LocalDateTime.now() : dateTime(row.get("createdAt")))
+        .build();
+
+    Set<String> accounts = new LinkedHashSet<>();
+    if (cardType == CardType.DEBIT) {
+      card.setMainAccountId(required(row, "mainAccountId"));
+      accounts.add(card.getMainAccountId());
+    } else {
+      card.setCreditId(required(row, "creditId"));
+    }
+    String associated = row.get("associatedAccounts");
+    if (associated != null) {
+      Arrays.stream(associated.split(";")).map(String::trim).filter(a -> !a.isEmpty()).forEach(accounts::add);
+    }
+    card.setAssociatedAccounts(new ArrayList<>(accounts));
+    return card;
+  }
+
+  private static String required(Map<String, String> row, String column) {
+    String value = row.get(column);
+    if (value == null) {
+      throw new IllegalArgumentException(column + " is required");
+    }
+    return value;
+  }
+
+  private static <E extends Enum<E>> E enumValue(Class<E> type, String value, String column) {
+    try {
+      return Enum.valueOf(type, value.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid " + column + " " + value);
+    }
+  }
+
+  /**
+   * yyyy-MM-dd, or yyyy-MM for the last day of the month
+   */
+  private static LocalDate expirationDate(String value) {
+    try {
+      return value.length() == 7 ? YearMonth.parse(value).atEndOfMonth() : LocalDate.parse(value);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid expirationDate " + value);
+    }
+  }
+
+  private static LocalDateTime dateTime(String value) {
+    try {
+      return LocalDateTime.parse(value);
+    } catch (DateTimeParseException e) {
+      throw new IllegalArgumentException("Invalid createdAt " + value);
+    }
+  }
+
+  private Map<String, String> jsonRow(String line) throws IOException {
+    JsonNode node = objectMapper.readTree(line);
+    if (!node.isObject()) {
+      throw new IllegalArgumentException("Not a JSON object");
+    }
+    Map<String, String> row = new HashMap<>();
+    node.fields().forEachRemaining(field -> {
+      JsonNode value = field.getValue();
+      if (value.isArray()) {
+        List<String> values = new ArrayList<>();
+        value.forEach(item -> values.add(item.asText()));
+        row.put(field.getKey(), String.join(";", values));
+      } else if (value.isValueNode() && !value.isNull() && !value.asText().isEmpty()) {
+        row.put(field.getKey(), value.asText());
+      }
+    });
+    return row;
+  }
+
+  private static Map<String, String> csvRow(List<String> columns, String line) {
+    List<String> values = parseCsvLine(line);
+    if (values.size() != columns.size()) {
+      throw new IllegalArgumentException("Expected " + columns.size() + " columns, found " + values.size());
+    }
+    Map<String, String> row = new HashMap<>();
+    for (int i = 0; i < columns.size(); i++) {
+      if (!values.get(i).isEmpty()) {
+        row.put(columns.get(i), values.get(i));
+      }
+    }
+    return row;
+  }
+
+  /**
+   * One CSV record; quoted values may contain commas and doubled quotes, not line breaks
+   */
+  private static List<String> parseCsvLine(String line) {
+    List<String> values = new ArrayList<>();
+    StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          value.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+      } else if (c == ',') {
+        values.add(value.toString().trim());
+        value.setLength(0);
+      } else {
+        value.append(c);
+      }
+    }
+    values.add(value.toString().trim());
+    return values;
+  }
+
+  private ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, Math.min(windowSize, size - offset));
+  }
+
+  /**
+   * Index of the line break ending the line at from, or the limit
+   */
+  private static int lineEnd(ByteBuffer buffer, int from) {
+    for (int i = from; i < buffer.limit(); i++) {
+      if (buffer.get(i) == '\n') {
+        return i;
+      }
+    }
+    return buffer.limit();
+  }
+
+  private static int lastLineBreak(ByteBuffer buffer) {
+    for (int i = buffer.limit() - 1; i >= 0; i--) {
+      if (buffer.get(i) == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static String decode(ByteBuffer buffer, int start, int end) {
+    if (end > start && buffer.get(end - 1) == '\r') {
+      end--;
+    }
+    byte[] bytes = new byte[end - start];
+    ByteBuffer line = buffer.duplicate();
+    line.position(start);
+    line.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private List<List<ParsedCard>> partition(List<ParsedCard> cards) {
+    List<List<ParsedCard>> batches = new ArrayList<>((cards.size() + batchSize - 1) / batchSize);
+    for (int i = 0; i < cards.size(); i += batchSize) {
+      batches.add(cards.subList(i, Math.min(i + batchSize, cards.size())));
+    }
+    return batches;
+  }
+
+  /**
+   * The cards and card_numbers collections
+   */
+  private Mono<Tuple2<MongoCollection<Document>, MongoCollection<Document>>> collections() {
+    return Mono.zip(mongoTemplate.getCollection(mongoTemplate.getCollectionName(Card.class)),
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(CardNumberClaim.class)));
+  }
+
+  private static ExportFormat formatOf(String file) {
+    String name = file.toLowerCase();
+    if (name.endsWith(".csv")) {
+      return ExportFormat.CSV;
+    }
+    if (name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+      return ExportFormat.NDJSON;
+    }
+    throw new IllegalArgumentException("Import files must be .csv, .ndjson or .jsonl");
+  }
+
+  private Path input(String file) {
+    if (!SAFE_NAME.matcher(file).matches() || file.startsWith(".")) {
+      throw new IllegalArgumentException("Invalid import file name");
+    }
+    return inputDir.resolve(file);
+  }
+
+  private Path jobDir(String jobId) {
+    if (!SAFE_NAME.matcher(jobId).matches() || jobId.startsWith(".")) {
+      throw new IllegalArgumentException("Invalid import job id");
+    }
+    return inputDir.resolve(JOBS).resolve(jobId);
+  }
+
+  private Path rejectsPath(ImportJob job) {
+    return jobDir(job.getJobId()).resolve(job.getRejectsFile());
+  }
+
+  private void truncate(Path file, long size) {
+    if (!Files.exists(file)) {
+      return;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      channel.truncate(size);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void closeQuietly(FileChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      log.warn("Could not close import file: {}", e.getMessage());
+    }
+  }
+
+  private ImportJob readManifest(String jobId) {
+    Path manifest = jobDir(jobId).resolve(MANIFEST);
+    if (!Files.exists(manifest)) {
+      throw new IllegalArgumentException("Unknown import job " + jobId);
+    }
+    try {
+      return objectMapper.readValue(manifest.toFile(), ImportJob.class);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void writeManifest(ImportJob job) {
+    Path manifest = jobDir(job.getJobId()).resolve(MANIFEST);
+    Path tmp = manifest.resolveSibling(MANIFEST + ".tmp");
+    try {
+      objectMapper.writeValue(tmp.toFile(), job);
+      Files.move(tmp, manifest, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static final class Header {
+    private final long size;
+    private final List<String> columns;
+
+    private Header(long size, List<String> columns) {
+      this.size = size;
+      this.columns = columns;
+    }
+  }
+
+  private static final class Window {
+    private final long start;
+    private final long end;
+    private final ByteBuffer buffer;
+    private final List<String> columns;
+
+    private Window(long start, long end, ByteBuffer buffer, List<String> columns) {
+      this.start = start;
+      this.end = end;
+      this.buffer = buffer;
+      this.columns = columns;
+    }
+  }
+
+  private static final class ParsedCard {
+    private final long line;
+    private final Card card;
+
+    private ParsedCard(long line, Card card) {
+      this.line = line;
+      this.card = card;
+    }
+  }
+
+  private static final class Reject {
+    private final long line;
+    private final String reason;
+
+    private Reject(long line, String reason) {
+      this.line = line;
+      this.reason = reason != null ? reason : "Invalid row";
+    }
+  }
+
+  private static final class ParsedChunk {
+    private final List<ParsedCard> cards = new ArrayList<>();
+    private final List<Reject> rejects = new ArrayList<>();
+    private long lines;
+  }
+
+  private static final class WindowResult {
+    private final List<Reject> rejects;
+    private final Set<Integer> rejectedIndexes = new HashSet<>();
+    private long imported;
+    private long skipped;
+
+    private WindowResult(List<Reject> rejects) {
+      this.rejects = rejects;
+    }
+
+    void reject(int index, long line, String reason) {
+      rejectedIndexes.add(index);
+      rejects.add(new Reject(line, reason));
+    }
+
+    WindowResult add(WindowResult batch) {
+      rejects.addAll(batch.rejects);
+      imported += batch.imported;
+      skipped += batch.skipped;
+      return this;
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.cache.HotCardCache;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardAuditEntry;
+import com.bootcamp67.ms_card.entity.CardNumberClaim;
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.event.CardCreatedEvent;
+import com.bootcamp67.ms_card.event.producer.CardEventProducer;
+import com.bootcamp67.ms_card.limit.TokenBucket;
+import com.bootcamp67.ms_card.service.CardAuditService;
+import com.bootcamp67.ms_card.service.CardRenewalService;
+import com.bootcamp67.ms_card.util.CardIds;
+import com.bootcamp67.ms_card.util.CardNumberHasher;
+import com.bootcamp67.ms_card.util.CardNumbers;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Reissues active cards ahead of their expiration.
+ * Cards expiring within the window are scanned on the status + expirationDate index, soonest
+ * first, and renewed chunk by chunk: replacement numbers are claimed and the replacements
+ * inserted with unordered insertMany, then the old cards are marked with replacedBy in one
+ * unordered bulk write. A token bucket paces the scan, so a large cohort is spread over
+ * time instead of arriving at once. The old card keeps working until it expires.
+ * Replacement ids are derived from the old card, so a run interrupted between the insert
+ * and the marking does not issue a second replacement.
+ */
+@Slf4j
+@Service
+public class CardRenewalServiceImpl implements CardRenewalService {
+
+  private static final int DUPLICATE_KEY = 11000;
+  private static final int VALIDITY_YEARS = 5;
+  private static final InsertManyOptions UNORDERED_INSERT = new InsertManyOptions().ordered(false);
+  private static final BulkWriteOptions UNORDERED_WRITE = new BulkWriteOptions().ordered(false);
+
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final CardNumberHasher cardNumberHasher;
+  private final CardEventProducer cardEventProducer;
+  private final CardAuditService cardAuditService;
+  private final HotCardCache hotCardCache;
+  private final boolean enabled;
+  private final Duration window;
+  private final int chunkSize;
+  private final double ratePerSecond;
+  private final int eventConcurrency;
+  private final boolean changeStreamEnabled;
+  private final AtomicBoolean running = new AtomicBoolean(false);
+
+  public CardRenewalServiceImpl(ReactiveMongoTemplate mongoTemplate,
+                                CardNumberHasher cardNumberHasher,
+                                CardEventProducer cardEventProducer,
+                                CardAuditService cardAuditService,
+                                HotCardCache hotCardCache,
+                                @Value("${card.renewal.enabled:false}") boolean enabled,
+                                @Value("${card.renewal.window:30d}") Duration window,
+                                @Value("${card.renewal.chunk-size:500}") int chunkSize,
+                                @Value("${card.renewal.rate-per-second:50}") double ratePerSecond,
+                                @Value("${card.renewal.event-concurrency:64}") int eventConcurrency,
+                                @Value("${card.change-stream.enabled:false}") boolean changeStreamEnabled) {
+    this.mongoTemplate = mongoTemplate;
+    this.cardNumberHasher = cardNumberHasher;
+    this.cardEventProducer = cardEventProducer;
+    this.cardAuditService = cardAuditService;
+    this.hotCardCache = hotCardCache;
+    this.enabled = enabled;
+    this.window = window;
+    this.chunkSize = chunkSize;
+    this.ratePerSecond = ratePerSecond;
+    this.eventConcurrency = eventConcurrency;
+    this.changeStreamEnabled = changeStreamEnabled;
+  }
+
+  @Scheduled(cron = "${card.renewal.cron:0 0 2 * * *}")
+  public void scheduledRenewal() {
+    if (!enabled) {
+      return;
+    }
+    renewExpiring().subscribe(
+        renewed -> { },
+        error -> log.error("Card renewal failed: {}", error.getMessage()));
+  }
+
+  @Override
+  public Mono<Long> renewExpiring() {
+    return Mono.defer(() -> {
+      if (!running.compareAndSet(false, true)) {
+        return Mono.error(new IllegalStateException("A card renewal is already running"));
+      }
+      LocalDate today = LocalDate.now();
+      LocalDate horizon = today.plusDays(window.toDays());
+      log.info("Card renewal started for cards expiring from {} until {}", today, horizon);
+
+      TokenBucket bucket = new TokenBucket(ratePerSecond, chunkSize, System.nanoTime());
+      AtomicReference<Card> last = new AtomicReference<>();
+      AtomicLong renewed = new AtomicLong();
+
+      // Reads and renews one chunk; empty once no card is left after the last one
+      Mono<Long> step = Mono.defer(() -> nextChunk(today, horizon, last.get()))
+          .filter(chunk -> !chunk.isEmpty())
+          .flatMap(chunk -> {
+            last.set(chunk.get(chunk.size() - 1));
+            return Flux.fromIterable(chunk)
+                .concatMap(card -> permit(bucket).thenReturn(card))
+                .collectList()
+                .flatMap(this::renewChunk)
+                .doOnNext(count -> log.info("Card renewal: {} cards renewed", renewed.addAndGet(count)));
+          });
+
+      // expand subscribes to the next step only after the previous one emitted, so chunks run one at a time
+      return step
+          .expand(count -> step)
+          .then(Mono.fromSupplier(renewed::get))
+          .doOnSuccess(count -> log.info("Card renewal finished, {} cards renewed", count))
+          .doFinally(signal -> running.set(false));
+    });
+  }
+
+  /**
+   * Next active cards expiring from today until the horizon and not renewed yet, after the
+   * last one in (expirationDate, _id) order. Cards already past their expiration date are
+   * left out: they can no longer be used, and payments mark them EXPIRED.
+   */
+  private Mono<List<Card>> nextChunk(LocalDate today, LocalDate horizon, Card last) {
+    Criteria criteria = Criteria.where("status").is(CardStatus.ACTIVE)
+        .and("expirationDate").gte(today).lte(horizon)
+        .and("replacedBy").exists(false);
+    if (last != null) {
+      criteria = criteria.orOperator(
+          Criteria.where("expirationDate").gt(last.getExpirationDate()),
+          Criteria.where("expirationDate").is(last.getExpirationDate()).and("_id").gt(last.getId()));
+    }
+    Query query = Query.query(criteria)
+        .with(Sort.by(Sort.Direction.ASC, "expirationDate", "_id"))
+        .limit(chunkSize);
+    query.fields().include("customerId", "cardType", "status", "expirationDate",
+        "associatedAccounts", "mainAccountId", "creditId");
+    return mongoTemplate.find(query, Card.class).collectList();
+  }
+
+  private Mono<Long> renewChunk(List<Card> chunk) {
+    List<Card> replacements = new ArrayList<>(chunk.size());
+    List<Document> claims = new ArrayList<>(chunk.size());
+    for (Card card : chunk) {
+      Card replacement = replacementOf(card);
+      replacements.add(replacement);
+      claims.add(new Document("_id", cardNumberHasher.toToken(replacement.getCardNumberHash()))
+          .append("cardId", replacement.getId())
+          .append("claimedAt", new Date()));
+    }
+
+    return collections().flatMap(collections -> insertUnordered(collections.getT2(), claims)
+        .flatMap(claimErrors -> {
+          // A number already taken is left for the next run, which draws another one
+          List<Integer> claimed = new ArrayList<>(chunk.size());
+          List<Document> documents = new ArrayList<>(chunk.size());
+          for (int i = 0; i < chunk.size(); i++) {
+            if (!claimErrors.containsKey(i)) {
+              Document document = new Document();
+              mongoTemplate.getConverter().write(replacements.get(i), document);
+              claimed.add(i);
+              documents.add(document);
+            }
+          }
+          if (!claimErrors.isEmpty()) {
+            log.warn("Card renewal: {} replacement numbers already taken, retried on the next run", claimErrors.size());
+          }
+
+          return insertUnordered(collections.getT1(), documents)
+              .flatMap(insertErrors -> {
+                List<Integer> inserted = new ArrayList<>(claimed.size());
+                List<Integer> renewed = new ArrayList<>(claimed.size());
+                List<String> released = new ArrayList<>();
+                for (int j = 0; j < claimed.size(); j++) {
+                  int i = claimed.get(j);
+                  BulkWriteError error = insertErrors.get(j);
+                  if (error == null) {
+                    inserted.add(i);
+                    renewed.add(i);
+                  } else {
+                    // Duplicate id: the replacement was inserted by an interrupted run, only the mark is missing
+                    if (error.getCode() == DUPLICATE_KEY) {
+                      renewed.add(i);
+                    } else {
+                      log.warn("Card renewal: replacement of card {} not inserted: {}",
+                          chunk.get(i).getId(), error.getMessage());
+                    }
+                    released.add(claims.get(i).getString("_id"));
+                  }
+                }
+
+                return release(collections.getT2(), released)
+                    .then(markReplaced(collections.getT1(), chunk, replacements, renewed))
+                    .then(Flux.fromIterable(inserted)
+                        .concatMap(i -> audit(chunk.get(i), replacements.get(i)))
+                        .then())
+                    .then(publish(replacements, inserted))
+                    .thenReturn((long) renewed.size());
+              });
+        }));
+  }
+
+  private Card replacementOf(Card card) {
+    String cardNumber = CardNumbers.generate();
+    return Card.builder()
+        .id(replacementId(card))
+        .cardNumber(cardNumber)
+        .cardNumberHash(cardNumberHasher.hash(cardNumber))
+        .customerId(card.getCustomerId())
+        .cardType(card.getCardType())
+        .status(CardStatus.ACTIVE)
+        .expirationDate(LocalDate.now().plusYears(VALIDITY_YEARS))
+        .cvv(CardNumbers.generateCvv())
+        .associatedAccounts(card.getAssociatedAccounts() != null
+            ? new ArrayList<>(card.getAssociatedAccounts()) : new ArrayList<>())
+        .mainAccountId(card.getMainAccountId())
+        .creditId(card.getCreditId())
+        .replaces(card.getId())
+        .createdAt(LocalDateTime.now())
+        .build();
+  }
+
+  /**
+   * Same old card and expiration, same replacement id
+   */
+  private static String replacementId(Card card) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(
+          (card.getId() + ':' + card.getExpirationDate()).getBytes(StandardCharsets.UTF_8));
+      return CardIds.of(card.getCustomerId(), new ObjectId(Arrays.copyOf(digest, 12)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /**
+   * Point the old cards to their replacements; a card marked meanwhile is left alone
+   */
+  private Mono<Void> markReplaced(MongoCollection<Document> cards, List<Card> chunk,
+                                  List<Card> replacements, List<Integer> renewed) {
+    if (renewed.isEmpty()) {
+      return Mono.empty();
+    }
+    Date now = new Date();
+    List<WriteModel<Document>> updates = new ArrayList<>(renewed.size());
+    for (int i : renewed) {
+      Card card = chunk.get(i);
+      updates.add(new UpdateOneModel<>(
+          Filters.and(Filters.eq("_id", card.getId()), Filters.eq("customerId", card.getCustomerId()),
+              Filters.exists("replacedBy", false)),
+          Updates.combine(Updates.set("replacedBy", replacements.get(i).getId()), Updates.set("updatedAt", now))));
+    }
+    return Mono.from(cards.bulkWrite(updates, UNORDERED_WRITE))
+        .doOnSuccess(result -> renewed.forEach(i -> hotCardCache.invalidate(chunk.get(i).getId())))
+        .then();
+  }
+
+  private Mono<Void> audit(Card card, Card replacement) {
+    return cardAuditService.record(CardAuditEntry.builder()
+            .cardId(card.getId())
+            .customerId(card.getCustomerId())
+            .action(CardAuditEntry.ACTION_RENEWED)
+            .field("replacedBy")
+            .newValue(replacement.getId()))
+        .then(cardAuditService.record(CardAuditEntry.builder()
+            .cardId(replacement.getId())
+            .customerId(replacement.getCustomerId())
+            .action(CardAuditEntry.ACTION_CREATED)
+            .field("status")
+            .newValue(replacement.getStatus().name())
+            .reason("Renewal of card " + card.getId())));
+  }
+
+  /**
+   * CARD_CREATED events of the chunk, sent concurrently and awaited before the next chunk.
+   * The change stream publishes inserts itself when it is enabled.
+   */
+  private Mono<Void> publish(List<Card> replacements, List<Integer> inserted) {
+    if (changeStreamEnabled) {
+      return Mono.empty();
+    }
+    return Flux.fromIterable(inserted)
+        .map(replacements::get)
+        .flatMap(replacement -> cardEventProducer.publishCardCreated(CardCreatedEvent.builder()
+            .cardId(replacement.getId())
+            .customerId(replacement.getCustomerId())
+            .cardType(replacement.getCardType())
+            .maskedCardNumber(CardNumbers.mask(replacement.getCardNumber()))
+            .expirationDate(replacement.getExpirationDate())
+            .mainAccountId(replacement.getMainAccountId())
+            .creditId(replacement.getCreditId())
+            .replacesCardId(replacement.getReplaces())
+            .build()), eventConcurrency)
+        .then();
+  }
+
+  /**
+   * Wait for a renewal permit
+   */
+  private static Mono<Void> permit(TokenBucket bucket) {
+    return Mono.defer(() -> {
+      long now = System.nanoTime();
+      if (bucket.tryAcquire(now)) {
+        return Mono.empty();
+      }
+      return Mono.delay(Duration.ofNanos(Math.max(bucket.waitNanos(now), 1_000_000L)))
+          .then(permit(bucket));
+    });
+  }
+
+  /**
+   * Unordered insertMany; returns the write errors by index in the list
+   */
+  private static Mono<Map<Integer, BulkWriteError>> insertUnordered(MongoCollection<Document> collection,
+                                                                    List<Document> documents) {
+    if (documents.isEmpty()) {
+      return Mono.just(Map.of());
+    }
+    return Mono.from(collection.insertMany(documents, UNORDERED_INSERT))
+        .map(inserted -> Map.<Integer, BulkWriteError>of())
+        .onErrorResume(MongoBulkWriteException.class, e -> {
+          Map<Integer, BulkWriteError> errors = new HashMap<>();
+          e.getWriteErrors().forEach(error -> errors.put(error.getIndex(), error));
+          return Mono.just(errors);
+        });
+  }
+
+  private static Mono<Void> release(MongoCollection<Document> claims, List<String> tokens) {
+    if (tokens.isEmpty()) {
+      return Mono.empty();
+    }
+    return Mono.from(claims.deleteMany(Filters.in("_id", tokens))).then();
+  }
+
+  /**
+   * The cards and card_numbers collections
+   */
+  private Mono<Tuple2<MongoCollection<Document>, MongoCollection<Document>>> collections() {
+    return Mono.zip(mongoTemplate.getCollection(mongoTemplate.getCollectionName(Card.class)),
+        mongoTemplate.getCollection(mongoTemplate.getCollectionName(CardNumberClaim.class)));
+  }
+}
@@ -1,12 +1,21 @@
 package com.bootcamp67.ms_card.service.impl;
 
+import com.bootcamp67.ms_card.cache.HotCardCache;
+import com.bootcamp67.ms_card.config.MongoConfig;
 import com.bootcamp67.ms_card.dto.AssociateAccountRequest;
 import com.bootcamp67.ms_card.dto.CardDTO;
+import com.bootcamp67.ms_card.dto.CardPortfolioResponse;
+import com.bootcamp67.ms_card.dto.CardSummary;
 import com.bootcamp67.ms_card.dto.CreditCardRequest;
+import com.bootcamp67.ms_card.dto.DebitResult;
 import com.bootcamp67.ms_card.dto.DebitCardRequest;
 import com.bootcamp67.ms_card.dto.PaymentRequest;
+import com.bootcamp67.ms_card.dto.PortfolioCardDTO;
 import com.bootcamp67.ms_card.dto.TransactionDTO;
 import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.entity.CardAuditEntry;
+import com.bootcamp67.ms_card.entity.CardNumberClaim;
+import com.bootcamp67.ms_card.entity.CardTransaction;
 import com.bootcamp67.ms_card.enums.CardStatus;
 import com.bootcamp67.ms_card.enums.CardType;
 import com.bootcamp67.ms_card.event.CardCreatedEvent;
@@ -14,19 +23,58 @@ import com.bootcamp67.ms_card.event.producer.CardEventProducer;
 import com.bootcamp67.ms_card.exception.CardNotFoundException;
 import com.bootcamp67.ms_card.exception.InsufficientBalanceException;
 import com.bootcamp67.ms_card.exception.InvalidCardOperationException;
+import com.bootcamp67.ms_card.exception.VelocityLimitExceededException;
+import com.bootcamp67.ms_card.repository.CardNumberClaimRepository;
 import com.bootcamp67.ms_card.repository.CardRepository;
+import com.bootcamp67.ms_card.service.AccountGateway;
+import com.bootcamp67.ms_card.service.AccountOrderingService;
+import com.bootcamp67.ms_card.service.CardAuditService;
 import com.bootcamp67.ms_card.service.CardService;
+import com.bootcamp67.ms_card.service.CreditAvailabilityService;
+import com.bootcamp67.ms_card.service.PaymentAttempt;
+import com.bootcamp67.ms_card.service.TransactionLedgerService;
+import com.bootcamp67.ms_card.service.VelocityLimitService;
+import com.bootcamp67.ms_card.util.CardIds;
+import com.bootcamp67.ms_card.util.CardNumberHasher;
+import com.bootcamp67.ms_card.util.CardNumbers;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -34,42 +82,189 @@ import java.util.stream.Collectors;
 @RequiredArgsConstructor
 public class CardServiceImpl implements CardService {
 
+  private static final String CARD_EXPIRED = "Card is expired";
+  private static final int CARD_NUMBER_ATTEMPTS = 3;
+  private static final int DETACH_CHUNK_SIZE = 1000;
+  private static final InsufficientBalanceException ALL_ACCOUNTS_INSUFFICIENT =
+      new InsufficientBalanceException("Insufficient balance in all associated accounts", false);
+  private static final InsufficientBalanceException CREDIT_DECLINED =
+      new InsufficientBalanceException("Insufficient available credit", false);
+
   private final CardRepository cardRepository;
+  private final CardNumberClaimRepository cardNumberClaimRepository;
   private final CardEventProducer cardEventProducer;
+  private final CardNumberHasher cardNumberHasher;
+  private final ReactiveMongoTemplate mongoTemplate;
+  @Qualifier(MongoConfig.SECONDARY_TEMPLATE)
+  private final ReactiveMongoTemplate secondaryMongoTemplate;
+  private final TransactionLedgerService transactionLedgerService;
+  private final VelocityLimitService velocityLimitService;
+  private final AccountOrderingService accountOrderingService;
+  private final AccountGateway accountGateway;
+  private final CreditAvailabilityService creditAvailabilityService;
+  private final HotCardCache hotCardCache;
+  private final CardAuditService cardAuditService;
+
+  @Value("${card.portfolio.balance-concurrency:8}")
+  private int portfolioBalanceConcurrency;
+
+  @Value("${card.portfolio.balance-timeout:2s}")
+  private Duration portfolioBalanceTimeout;
+
+  @Value("${card.ledger.max-limit:100}")
+  private int maxTransactionsLimit;
+
+  @Value("${card.change-stream.enabled:false}")
+  private boolean changeStreamEnabled;
+
+  @Value("${card.credit.projection.async-capture:false}")
+  private boolean asyncCreditCapture;
 
   @Override
   public Flux<CardDTO> findAll() {
     log.info("Finding all cards");
-    return cardRepository.findAll()
+    // Read-only view from a secondary, without cvv. Never save the results.
+    Query query = new Query();
+    query.fields().exclude("cvv");
+    return secondaryMongoTemplate.find(query, Card.class)
         .map(this::mapToDTO);
   }
 
   @Override
   public Mono<CardDTO> findById(String id) {
     log.info("Finding card by id: {}", id);
-    return cardRepository.findById(id)
+    Card cached = hotCardCache.get(id);
+    if (cached != null) {
+      return Mono.just(mapToDTO(cached));
+    }
+    return loadView(id)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + id)))
+        .doOnNext(hotCardCache::put)
         .map(this::mapToDTO);
   }
 
   @Override
-  public Flux<CardDTO> findByCustomerId(String customerId) {
+  public Mono<CardDTO> findByToken(String token) {
+    log.info("Finding card by token");
+    byte[] hash = cardNumberHasher.fromToken(token);
+    return cardNumberClaimRepository.findById(cardNumberHasher.toToken(hash))
+        .flatMap(claim -> loadView(claim.getCardId()))
+        // Cards not claimed yet (created before claims, not migrated) are found by hash
+        .switchIfEmpty(Mono.defer(() -> cardRepository.findByCardNumberHash(hash)))
+        .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found for token")))
+        .map(this::mapToDTO);
+  }
+
+  @Override
+  public Flux<CardSummary> findByCustomerId(String customerId) {
     log.info("Finding cards by customer id: {}", customerId);
-    return cardRepository.findByCustomerId(customerId)
+    Query query = Query.query(Criteria.where("customerId").is(customerId));
+    query.fields().include("cardNumber", "cardType", "status", "expirationDate", "mainAccountId", "creditId");
+    return secondaryMongoTemplate.find(query, CardSummary.class, mongoTemplate.getCollectionName(Card.class))
+        .doOnNext(summary -> summary.setCardNumber(CardNumbers.mask(summary.getCardNumber())));
+  }
+
+  @Override
+  public Flux<CardDTO> findByAccountId(String accountId) {
+    log.info("Finding cards by account id: {}", accountId);
+    return cardRepository.findByAssociatedAccountsContaining(accountId)
         .map(this::mapToDTO);
   }
 
+  @Override
+  public Mono<CardPortfolioResponse> getPortfolio(String customerId) {
+    log.info("Building card portfolio for customer: {}", customerId);
+
+    // Counts and card list in a single round-trip
+    Aggregation aggregation = Aggregation.newAggregation(
+        Aggregation.match(Criteria.where("customerId").is(customerId)),
+        Aggregation.facet(Aggregation.group("cardType").count().as("count")).as("byType")
+            .and(Aggregation.group("status").count().as("count")).as("byStatus")
+            .and(Aggregation.project("cardNumber", "cardType", "status", "expirationDate",
+                "mainAccountId", "creditId")).as("cards"));
+
+    return secondaryMongoTemplate.aggregate(aggregation, Card.class, Document.class)
+        .next()
+        .flatMap(result -> {
+          List<PortfolioCardDTO> cards = result.getList("cards", Document.class).stream()
+              .map(doc -> mongoTemplate.getConverter().read(PortfolioCardDTO.class, doc))
+              .peek(card -> card.setCardNumber(CardNumbers.mask(card.getCardNumber())))
+              .collect(Collectors.toList());
+
+          Map<CardType, Long> byType = new EnumMap<>(CardType.class);
+          result.getList("byType", Document.class).forEach(doc ->
+              byType.put(CardType.valueOf(doc.getString("_id")), toLong(doc.get("count"))));
+
+          Map<CardStatus, Long> byStatus = new EnumMap<>(CardStatus.class);
+          result.getList("byStatus", Document.class).forEach(doc ->
+              byStatus.put(CardStatus.valueOf(doc.getString("_id")), toLong(doc.get("count"))));
+
+          return fetchBalances(cards)
+              .map(balances -> {
+                cards.forEach(card -> card.setBalance(balances.get(balanceSource(card))));
+                return CardPortfolioResponse.builder()
+                    .customerId(customerId)
+                    .totalCards((long) cards.size())
+                    .cardsByType(byType)
+                    .cardsByStatus(byStatus)
+                    .cards(cards)
+                    .build();
+              });
+        });
+  }
+
+  /**
+   * Fetch balances concurrently (bounded), once per distinct account/credit.
+   * A source that fails or times out is left without balance.
+   */
+  private Mono<Map<String, BigDecimal>> fetchBalances(List<PortfolioCardDTO> cards) {
+    Set<String> sources = cards.stream()
+        .map(this::balanceSource)
+        .filter(Objects::nonNull)
+        .collect(Collectors.toCollection(LinkedHashSet::new));
+
+    return Flux.fromIterable(sources)
+        .flatMap(source -> fetchBalance(source)
+            .timeout(portfolioBalanceTimeout)
+            .map(balance -> Tuples.of(source, balance))
+            .onErrorResume(error -> {
+              log.warn("Balance not available for {}: {}", source, error.getMessage());
+              return Mono.empty();
+            }), portfolioBalanceConcurrency)
+        .collectMap(Tuple2::getT1, Tuple2::getT2);
+  }
+
+  private String balanceSource(PortfolioCardDTO card) {
+    if (card.getCardType() == CardType.DEBIT && card.getMainAccountId() != null) {
+      return "account:" + card.getMainAccountId();
+    }
+    if (card.getCardType() == CardType.CREDIT && card.getCreditId() != null) {
+      return "credit:" + card.getCreditId();
+    }
+    return null;
+  }
+
+  private Mono<BigDecimal> fetchBalance(String source) {
+    int separator = source.indexOf(':');
+    String id = source.substring(separator + 1);
+    return source.startsWith("account:") ? fetchAccountBalance(id) : fetchAvailableCredit(id);
+  }
+
+  private static long toLong(Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : 0L;
+  }
+
   @Override
   public Mono<CardDTO> createDebitCard(DebitCardRequest request) {
     log.info("Creating debit card for customer: {}", request.getCustomerId());
 
     Card card = Card.builder()
-        .cardNumber(generateCardNumber())
+        .id(CardIds.newId(request.getCustomerId()))
         .customerId(request.getCustomerId())
         .cardType(CardType.DEBIT)
         .status(CardStatus.ACTIVE)
         .expirationDate(LocalDate.now().plusYears(5))
-        .cvv(generateCVV())
+        .cvv(CardNumbers.generateCvv())
         .mainAccountId(request.getMainAccountId())
         .createdAt(LocalDateTime.now())
         .build();
@@ -77,21 +272,27 @@ public class CardServiceImpl implements CardService {
     // Add main account to associated accounts
     card.getAssociatedAccounts().add(request.getMainAccountId());
 
-    return cardRepository.save(card)
+    return claimCardNumber(card, CARD_NUMBER_ATTEMPTS)
+        .then(Mono.defer(() -> insertClaimed(card)))
+        .flatMap(saved -> audited(saved, CardAuditEntry.ACTION_CREATED, "status", null, saved.getStatus()))
         .flatMap(savedCard -> {
           log.info("Debit card created with id: {} and number: {}",
-              savedCard.getId(), maskCardNumber(savedCard.getCardNumber()));
+              savedCard.getId(), CardNumbers.mask(savedCard.getCardNumber()));
 
           // Emit card created event
           CardCreatedEvent event = CardCreatedEvent.builder()
               .cardId(savedCard.getId())
               .customerId(savedCard.getCustomerId())
               .cardType(savedCard.getCardType())
-              .maskedCardNumber(maskCardNumber(savedCard.getCardNumber()))
+              .maskedCardNumber(CardNumbers.mask(savedCard.getCardNumber()))
               .expirationDate(savedCard.getExpirationDate())
               .mainAccountId(savedCard.getMainAccountId())
               .build();
 
+          // Published from the change stream when it is enabled
+          if (changeStreamEnabled) {
+            return Mono.just(savedCard);
+          }
           return cardEventProducer.publishCardCreated(event)
               .thenReturn(savedCard);
         })
@@ -103,19 +304,21 @@ public class CardServiceImpl implements CardService {
     log.info("Creating credit card for customer: {}", request.getCustomerId());
 
     Card card = Card.builder()
-        .cardNumber(generateCardNumber())
+        .id(CardIds.newId(request.getCustomerId()))
         .customerId(request.getCustomerId())
         .cardType(CardType.CREDIT)
         .status(CardStatus.ACTIVE)
         .expirationDate(LocalDate.now().plusYears(5))
-        .cvv(generateCVV())
+        .cvv(CardNumbers.generateCvv())
         .creditId(request.getCreditId())
         .createdAt(LocalDateTime.now())
         .build();
 
-    return cardRepository.save(card)
+    return claimCardNumber(card, CARD_NUMBER_ATTEMPTS)
+        .then(Mono.defer(() -> insertClaimed(card)))
+        .flatMap(saved -> audited(saved, CardAuditEntry.ACTION_CREATED, "status", null, saved.getStatus()))
         .doOnSuccess(c -> log.info("Credit card created with id: {} and number: {}",
-            c.getId(), maskCardNumber(c.getCardNumber())))
+            c.getId(), CardNumbers.mask(c.getCardNumber())))
         .map(this::mapToDTO);
   }
 
@@ -123,7 +326,7 @@ public class CardServiceImpl implements CardService {
   public Mono<CardDTO> associateAccount(String cardId, AssociateAccountRequest request) {
     log.info("Associating account {} to card {}", request.getAccountId(), cardId);
 
-    return cardRepository.findById(cardId)
+    return loadCard(cardId)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
         .flatMap(card -> {
           if (card.getCardType() != CardType.DEBIT) {
@@ -136,10 +339,11 @@ public class CardServiceImpl implements CardService {
                 "Account is already associated with this card"));
           }
 
-          card.getAssociatedAccounts().add(request.getAccountId());
-          card.setUpdatedAt(LocalDateTime.now());
-
-          return cardRepository.save(card);
+          return updateCard(card,
+              Criteria.where("associatedAccounts").ne(request.getAccountId()),
+              new Update().push("associatedAccounts", request.getAccountId()))
+              .flatMap(updated -> audited(updated, CardAuditEntry.ACTION_ACCOUNT_ASSOCIATED,
+                  "associatedAccounts", null, request.getAccountId()));
         })
         .doOnSuccess(c -> log.info("Account {} associated to card {}", request.getAccountId(), cardId))
         .map(this::mapToDTO);
@@ -149,7 +353,7 @@ public class CardServiceImpl implements CardService {
   public Mono<CardDTO> setMainAccount(String cardId, String accountId) {
     log.info("Setting main account {} for card {}", accountId, cardId);
 
-    return cardRepository.findById(cardId)
+    return loadCard(cardId)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
         .flatMap(card -> {
           if (card.getCardType() != CardType.DEBIT) {
@@ -162,10 +366,11 @@ public class CardServiceImpl implements CardService {
                 "Account must be associated first before setting as main"));
           }
 
-          card.setMainAccountId(accountId);
-          card.setUpdatedAt(LocalDateTime.now());
-
-          return cardRepository.save(card);
+          return updateCard(card,
+              Criteria.where("associatedAccounts").is(accountId),
+              Update.update("mainAccountId", accountId))
+              .flatMap(updated -> audited(updated, CardAuditEntry.ACTION_MAIN_ACCOUNT_CHANGED,
+                  "mainAccountId", card.getMainAccountId(), accountId));
         })
         .doOnSuccess(c -> log.info("Main account set to {} for card {}", accountId, cardId))
         .map(this::mapToDTO);
@@ -175,16 +380,18 @@ public class CardServiceImpl implements CardService {
   public Mono<CardDTO> blockCard(String cardId) {
     log.info("Blocking card: {}", cardId);
 
-    return cardRepository.findById(cardId)
+    return loadCard(cardId)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
         .flatMap(card -> {
           if (card.getStatus() == CardStatus.BLOCKED) {
             return Mono.error(new InvalidCardOperationException("Card is already blocked"));
           }
 
-          card.setStatus(CardStatus.BLOCKED);
-          card.setUpdatedAt(LocalDateTime.now());
-          return cardRepository.save(card);
+          return updateCard(card,
+              Criteria.where("status").ne(CardStatus.BLOCKED),
+              Update.update("status", CardStatus.BLOCKED))
+              .flatMap(updated -> audited(updated, CardAuditEntry.ACTION_STATUS_CHANGED,
+                  "status", card.getStatus(), CardStatus.BLOCKED));
         })
         .doOnSuccess(c -> log.info("Card {} blocked successfully", cardId))
         .map(this::mapToDTO);
@@ -194,7 +401,7 @@ public class CardServiceImpl implements CardService {
   public Mono<CardDTO> activateCard(String cardId) {
     log.info("Activating card: {}", cardId);
 
-    return cardRepository.findById(cardId)
+    return loadCard(cardId)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
         .flatMap(card -> {
           if (card.getStatus() == CardStatus.EXPIRED) {
@@ -206,9 +413,11 @@ public class CardServiceImpl implements CardService {
             return Mono.error(new InvalidCardOperationException("Card is already active"));
           }
 
-          card.setStatus(CardStatus.ACTIVE);
-          card.setUpdatedAt(LocalDateTime.now());
-          return cardRepository.save(card);
+          return updateCard(card,
+              Criteria.where("status").is(CardStatus.BLOCKED),
+              Update.update("status", CardStatus.ACTIVE))
+              .flatMap(updated -> audited(updated, CardAuditEntry.ACTION_STATUS_CHANGED,
+                  "status", card.getStatus(), CardStatus.ACTIVE));
         })
         .doOnSuccess(c -> log.info("Card {} activated successfully", cardId))
         .map(this::mapToDTO);
@@ -218,40 +427,62 @@ public class CardServiceImpl implements CardService {
   public Mono<Void> processPayment(String cardId, PaymentRequest request) {
     log.info("Processing payment of {} for card {}", request.getAmount(), cardId);
 
-    return cardRepository.findById(cardId)
+    return loadCard(cardId)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
         .flatMap(card -> {
-          // Validate card status
-          if (card.getStatus() != CardStatus.ACTIVE) {
-            return Mono.error(new InvalidCardOperationException(
-                "Card is not active. Status: " + card.getStatus()));
+          String rejection = paymentRejection(card, request, LocalDate.now());
+          if (rejection != null) {
+            if (CARD_EXPIRED.equals(rejection)) {
+              updateCard(card,
+                  Criteria.where("status").ne(CardStatus.EXPIRED),
+                  Update.update("status", CardStatus.EXPIRED))
+                  .subscribe(expired -> { }, error -> log.warn("Could not mark card {} expired: {}",
+                      cardId, error.getMessage()));
+            }
+            return Mono.error(new InvalidCardOperationException(rejection));
           }
 
-          // Validate expiration
-          if (card.getExpirationDate().isBefore(LocalDate.now())) {
-            card.setStatus(CardStatus.EXPIRED);
-            cardRepository.save(card).subscribe();
-            return Mono.error(new InvalidCardOperationException("Card is expired"));
-          }
-
-          // Validate amount
-          if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
-            return Mono.error(new InvalidCardOperationException("Amount must be positive"));
+          // Validate spend/velocity limits before touching any account
+          long reservedAt = System.currentTimeMillis();
+          Optional<String> violation = velocityLimitService.tryReserve(
+              card.getId(), request.getAmount(), reservedAt);
+          if (violation.isPresent()) {
+            return Mono.error(new VelocityLimitExceededException(violation.get()));
           }
 
           // Process based on card type
-          if (card.getCardType() == CardType.DEBIT) {
-            return processDebitPayment(card, request);
-          } else {
-            return processCreditPayment(card, request);
-          }
+          Mono<Void> payment = card.getCardType() == CardType.DEBIT
+              ? processDebitPayment(card, request)
+              : processCreditPayment(card, request);
+
+          return payment.doOnError(error -> velocityLimitService.release(
+              card.getId(), request.getAmount(), reservedAt));
         })
         .then();
   }
 
+  /**
+   * Payment checks that need no I/O: card status, expiration and amount.
+   * Returns the rejection message, or null when the card can pay.
+   */
+  String paymentRejection(Card card, PaymentRequest request, LocalDate today) {
+    if (card.getStatus() != CardStatus.ACTIVE) {
+      return "Card is not active. Status: " + card.getStatus();
+    }
+    if (card.getExpirationDate().isBefore(today)) {
+      return CARD_EXPIRED;
+    }
+    if (request.getAmount().compareTo(BigDecimal.ZERO) <= 0) {
+      return "Amount must be positive";
+    }
+    return null;
+  }
+
   /**
    * Process debit card payment with account cascade
    * Tries main account first, then cascades through associated accounts
+   * (reordered by past success when adaptive ordering is enabled).
+   * Declines travel as DebitResult values; only the final decline becomes an error signal.
    */
   private Mono<Void> processDebitPayment(Card card, PaymentRequest request) {
     log.info("Processing debit payment for card: {}", card.getId());
@@ -261,81 +492,50 @@ public class CardServiceImpl implements CardService {
           "No accounts associated with this debit card"));
     }
 
-    // Try main account first
-    return tryDebitFromAccount(card.getMainAccountId(), request.getAmount(), card.getId())
-        .doOnSuccess(v -> log.info("Payment processed from main account: {}", card.getMainAccountId()))
-        .onErrorResume(error -> {
-          log.warn("Main account {} has insufficient funds. Trying cascade...",
-              card.getMainAccountId());
-
-          // Try other associated accounts in order
-          List<String> otherAccounts = card.getAssociatedAccounts().stream()
-              .filter(accountId -> !accountId.equals(card.getMainAccountId()))
-              .collect(Collectors.toList());
-
-          if (otherAccounts.isEmpty()) {
-            return Mono.error(new InsufficientBalanceException(
-                "Insufficient balance in main account and no other accounts available"));
+    // Main account first, then the other associated accounts in order
+    List<String> accounts = new ArrayList<>(card.getAssociatedAccounts().size());
+    accounts.add(card.getMainAccountId());
+    card.getAssociatedAccounts().stream()
+        .filter(accountId -> !accountId.equals(card.getMainAccountId()))
+        .forEach(accounts::add);
+
+    return accountOrderingService.order(card.getId(), accounts)
+        .flatMap(ordered -> cascadeThroughAccounts(ordered, request.getAmount(), card.getId()))
+        .flatMap(result -> {
+          switch (result.getOutcome()) {
+            case APPROVED:
+              log.info("Debit payment processed successfully for card: {} from account: {}",
+                  card.getId(), result.getAccountId());
+              return recordTransaction(card, request, result.getAccountId(), CardTransaction.TYPE_DEBIT_PAYMENT);
+            case INSUFFICIENT:
+              log.warn("All {} associated accounts have insufficient balance for card {}",
+                  accounts.size(), card.getId());
+              return Mono.error(ALL_ACCOUNTS_INSUFFICIENT);
+            default:
+              log.warn("Debit payment declined for card {}: {}", card.getId(), result.getReason());
+              return Mono.error(new InvalidCardOperationException(result.getReason(), false));
           }
-
-          return cascadeThroughAccounts(otherAccounts, request.getAmount(), card.getId(), 0);
         })
-        .doOnSuccess(v -> log.info("Debit payment processed successfully for card: {}", card.getId()))
         .then();
   }
 
   /**
-   * Cascade through associated accounts to find one with sufficient balance
-   * Implements recursive cascade logic
-   */
-  private Mono<Void> cascadeThroughAccounts(List<String> accountIds,
-                                            BigDecimal amount,
-                                            String cardId,
-                                            int index) {
-    if (index >= accountIds.size()) {
-      log.error("All {} associated accounts have insufficient balance for card {}",
-          accountIds.size(), cardId);
-      return Mono.error(new InsufficientBalanceException(
-          "Insufficient balance in all associated accounts"));
-    }
-
-    String accountId = accountIds.get(index);
-    log.info("Trying account {} (attempt {}/{})", accountId, index + 1, accountIds.size());
-
-    return tryDebitFromAccount(accountId, amount, cardId)
-        .doOnSuccess(v -> log.info("Payment processed from account {}", accountId))
-        .onErrorResume(error -> {
-          log.warn("Account {} has insufficient funds. Trying next account...", accountId);
-          return cascadeThroughAccounts(accountIds, amount, cardId, index + 1);
-        });
-  }
-
-  /**
-   * Try to debit from specific account
-   * TODO: Integrate with account service
+   * Cascade through accounts in order until one approves.
+   * Emits the approving result, or the result of the last account tried.
    */
-  private Mono<Void> tryDebitFromAccount(String accountId, BigDecimal amount, String cardId) {
-    log.info("Attempting to debit {} from account {}", amount, accountId);
-
-    // TODO: Call account service to check balance and debit
-    // For now, simulate with random success/failure
-    // In production:
-    // 1. Call account service to get balance
-    // 2. Check if balance >= amount
-    // 3. If yes, debit the amount
-    // 4. Create transaction record
-    // 5. Emit event to Kafka
-
-    // Simulated logic: 30% chance of insufficient balance for demonstration
-    Random random = new Random();
-    if (random.nextInt(10) < 3) {
-      log.warn("Simulated insufficient balance in account: {}", accountId);
-      return Mono.error(new InsufficientBalanceException(
-          "Insufficient balance in account: " + accountId));
-    }
-
-    log.info("Successfully debited {} from account {}", amount, accountId);
-    return Mono.empty();
+  private Mono<DebitResult> cascadeThroughAccounts(List<String> accountIds,
+                                                   BigDecimal amount,
+                                                   String cardId) {
+    return Flux.fromIterable(accountIds)
+        .index()
+        .concatMap(attempt -> {
+          log.info("Trying account {} (attempt {}/{})",
+              attempt.getT2(), attempt.getT1() + 1, accountIds.size());
+          return PaymentAttempt.charging(() -> accountGateway.debit(attempt.getT2(), amount, cardId));
+        })
+        .doOnNext(result -> accountOrderingService.recordOutcome(cardId, result))
+        .takeUntil(DebitResult::isApproved)
+        .last();
   }
 
   /**
@@ -350,22 +550,92 @@ public class CardServiceImpl implements CardService {
           "No credit account associated with this card"));
     }
 
-    // TODO: Integrate with credit service
-    // 1. Call credit service to get available credit
-    // 2. Check if available credit >= amount
-    // 3. If yes, charge to credit account
-    // 4. Create transaction record
-    // 5. Emit event to Kafka
+    String creditId = card.getCreditId();
+    // The hold is taken on subscription and given back if the payment is cancelled before capture
+    return Mono.defer(() -> {
+      String holdId = UUID.randomUUID().toString();
+      CreditAvailabilityService.Authorization authorization =
+          creditAvailabilityService.tryHold(creditId, holdId, request.getAmount());
+      if (authorization == CreditAvailabilityService.Authorization.DECLINED) {
+        return Mono.error(CREDIT_DECLINED);
+      }
+      AtomicBoolean captured = new AtomicBoolean();
+
+      Mono<Void> charge = PaymentAttempt
+          .charging(() -> accountGateway.chargeCredit(creditId, request.getAmount(), card.getId()))
+          .flatMap(result -> {
+            if (!result.isApproved()) {
+              return Mono.error(new InsufficientBalanceException(result.getReason(), false));
+            }
+            creditAvailabilityService.capture(creditId, holdId);
+            captured.set(true);
+            return Mono.<Void>empty();
+          })
+          .doOnError(error -> creditAvailabilityService.release(creditId, holdId));
+
+      Mono<Void> payment;
+      if (asyncCreditCapture && authorization == CreditAvailabilityService.Authorization.APPROVED) {
+        // Approved against the projection: answer now, post the charge in background.
+        // The ledger shows the payment as pending until the charge result settles it.
+        CardTransaction pending = transaction(card, request, creditId,
+            CardTransaction.TYPE_CREDIT_PAYMENT, CardTransaction.STATUS_PENDING);
+        payment = transactionLedgerService.record(pending)
+            .doOnSuccess(recorded -> {
+              // From here the background charge owns the hold
+              captured.set(true);
+              charge
+                  .then(Mono.just(CardTransaction.STATUS_COMPLETED))
+                  .onErrorResume(error -> {
+                    log.error("Credit charge of {} to {} failed after local approval (card {}): {}",
+                        request.getAmount(), creditId, card.getId(), error.getMessage());
+                    return Mono.just(CardTransaction.STATUS_FAILED);
+                  })
+                  .flatMap(status -> transactionLedgerService.settle(card.getId(), pending.getId(), status))
+                  .subscribe(done -> { }, error -> log.error("Could not settle ledger entry {} of card {}: {}",
+                      pending.getId(), card.getId(), error.getMessage()));
+            })
+            .doOnError(error -> creditAvailabilityService.release(creditId, holdId));
+      } else {
+        payment = charge.then(recordTransaction(card, request, creditId, CardTransaction.TYPE_CREDIT_PAYMENT));
+      }
+
+      return payment.doFinally(signal -> {
+        if (signal == SignalType.CANCEL && !captured.get()) {
+          creditAvailabilityService.release(creditId, holdId);
+        }
+      });
+    });
+  }
 
-    log.info("Successfully charged {} to credit account {}", request.getAmount(), card.getCreditId());
-    return Mono.empty();
+  /**
+   * Append the completed payment to the card ledger (queued, waits for Mongo only when the queue is full)
+   */
+  private Mono<Void> recordTransaction(Card card, PaymentRequest request, String accountId, String type) {
+    return Mono.defer(() -> transactionLedgerService.record(
+        transaction(card, request, accountId, type, CardTransaction.STATUS_COMPLETED)));
+  }
+
+  private CardTransaction transaction(Card card, PaymentRequest request, String accountId, String type,
+                                      String status) {
+    return CardTransaction.builder()
+        .id(new ObjectId().toHexString())
+        .cardId(card.getId())
+        .customerId(card.getCustomerId())
+        .type(type)
+        .amount(request.getAmount())
+        .description(request.getDescription())
+        .merchantName(request.getMerchantName())
+        .accountId(accountId)
+        .transactionDate(LocalDateTime.now())
+        .status(status)
+        .build();
   }
 
   @Override
   public Mono<BigDecimal> getMainAccountBalance(String cardId) {
     log.info("Getting main account balance for card: {}", cardId);
 
-    return cardRepository.findById(cardId)
+    return loadCard(cardId)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
         .flatMap(card -> {
           if (card.getCardType() != CardType.DEBIT) {
@@ -377,99 +647,246 @@ public class CardServiceImpl implements CardService {
             return Mono.error(new IllegalStateException("No main account set"));
           }
 
-          // TODO: Call account service to get balance
-          // For now, return simulated balance
-          BigDecimal simulatedBalance = new BigDecimal("1500.00");
-          log.info("Returning simulated balance {} for card {}", simulatedBalance, cardId);
-          return Mono.just(simulatedBalance);
+          return fetchAccountBalance(card.getMainAccountId());
         });
   }
 
+  /**
+   * Get balance of an account
+   */
+  private Mono<BigDecimal> fetchAccountBalance(String accountId) {
+    return accountGateway.balance(accountId);
+  }
+
+  /**
+   * Get available credit of a credit line, from the projection fed by the credit topics
+   */
+  private Mono<BigDecimal> fetchAvailableCredit(String creditId) {
+    return Mono.justOrEmpty(creditAvailabilityService.available(creditId));
+  }
+
   @Override
   public Flux<TransactionDTO> getLastTransactions(String cardId, Integer limit) {
     log.info("Getting last {} transactions for card: {}", limit, cardId);
 
-    return cardRepository.findById(cardId)
-        .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + cardId)))
-        .flatMapMany(card -> {
-          // TODO: Call transaction service to get last transactions
-          // For now, return empty flux
-          log.info("No transaction service integration yet. Returning empty list.");
-          return Flux.empty();
-        });
+    int boundedLimit = Math.max(1, Math.min(limit == null ? 10 : limit, maxTransactionsLimit));
+    return transactionLedgerService.findLast(cardId, boundedLimit);
   }
 
   @Override
   public Mono<Void> delete(String id) {
     log.info("Deleting card: {}", id);
-    return cardRepository.findById(id)
+    return loadCard(id)
         .switchIfEmpty(Mono.error(new CardNotFoundException("Card not found with id: " + id)))
         .flatMap(card -> {
           log.info("Card {} deleted successfully", id);
-          return cardRepository.delete(card);
+          return cardRepository.delete(card)
+              .then(releaseCardNumber(card))
+              .then(audited(card, CardAuditEntry.ACTION_DELETED, null, null, null))
+              .doOnSuccess(done -> hotCardCache.invalidate(id))
+              .then();
         });
   }
 
   /**
-   * Map Card entity to DTO with masked card number
+   * Load a card, routed to its shard when the id carries the customer.
+   * Legacy ids are looked up by _id and, once migrated, by legacyId.
    */
-  private CardDTO mapToDTO(Card card) {
-    return CardDTO.builder()
-        .id(card.getId())
-        .cardNumber(maskCardNumber(card.getCardNumber()))
-        .customerId(card.getCustomerId())
-        .cardType(card.getCardType())
-        .status(card.getStatus())
-        .expirationDate(card.getExpirationDate())
-        .associatedAccounts(card.getAssociatedAccounts())
-        .mainAccountId(card.getMainAccountId())
-        .creditId(card.getCreditId())
-        .createdAt(card.getCreatedAt())
-        .updatedAt(card.getUpdatedAt())
+  private Mono<Card> loadCard(String id) {
+    String customerId = CardIds.customerIdOf(id);
+    if (customerId != null) {
+      return cardRepository.findByIdAndCustomerId(id, customerId);
+    }
+    return cardRepository.findById(id)
+        .switchIfEmpty(Mono.defer(() -> cardRepository.findByLegacyId(id)));
+  }
+
+  /**
+   * Targeted update of a loaded card, returning the new version.
+   * The guard re-checks on write what was validated on the loaded copy, so concurrent
+   * changes are not overwritten; only changed fields are written, which is also what the
+   * change stream reports.
+   */
+  private Mono<Card> updateCard(Card card, Criteria guard, Update update) {
+    Query query = Query.query(Criteria.where("_id").is(card.getId())
+        .and("customerId").is(card.getCustomerId()))
+        .addCriteria(guard);
+    update.set("updatedAt", LocalDateTime.now());
+
+    return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Card.class)
+        .switchIfEmpty(Mono.error(new InvalidCardOperationException(
+            "Card was modified concurrently, please retry")))
+        .doOnSuccess(updated -> hotCardCache.invalidate(card.getId()));
+  }
+
+  /**
+   * Queue an audit entry for a change of the card, then continue with the card
+   */
+  private Mono<Card> audited(Card card, String action, String field, Object oldValue, Object newValue) {
+    return cardAuditService.record(CardAuditEntry.builder()
+            .cardId(card.getId())
+            .customerId(card.getCustomerId())
+            .action(action)
+            .field(field)
+            .oldValue(oldValue == null ? null : oldValue.toString())
+            .newValue(newValue == null ? null : newValue.toString()))
+        .thenReturn(card);
+  }
+
+  /**
+   * Read-only variant of loadCard, without cvv
+   */
+  private Mono<Card> loadView(String id) {
+    String customerId = CardIds.customerIdOf(id);
+    if (customerId != null) {
+      return cardRepository.findViewByIdAndCustomerId(id, customerId);
+    }
+    return cardRepository.findViewById(id)
+        .switchIfEmpty(Mono.defer(() -> cardRepository.findViewByLegacyId(id)));
+  }
+
+  /**
+   * Give the card a fresh number and claim it; a number already taken is drawn again
+   */
+  private Mono<CardNumberClaim> claimCardNumber(Card card, int attemptsLeft) {
+    String cardNumber = CardNumbers.generate();
+    byte[] hash = cardNumberHasher.hash(cardNumber);
+    card.setCardNumber(cardNumber);
+    card.setCardNumberHash(hash);
+
+    CardNumberClaim claim = CardNumberClaim.builder()
+        .id(cardNumberHasher.toToken(hash))
+        .cardId(card.getId())
+        .claimedAt(LocalDateTime.now())
         .build();
+    return cardNumberClaimRepository.insert(claim)
+        .onErrorResume(DuplicateKeyException.class, e -> {
+          if (attemptsLeft <= 1) {
+            return Mono.error(new IllegalStateException("Could not generate a unique card number"));
+          }
+          log.warn("Generated card number already taken, drawing another one");
+          return claimCardNumber(card, attemptsLeft - 1);
+        });
   }
 
   /**
-   * Generate random card number (16 digits)
-   * Format: 4444-5555-6666-7777
+   * Insert a card whose number is claimed; the claim is released if the insert fails
    */
-  private String generateCardNumber() {
-    Random random = new Random();
-    StringBuilder cardNumber = new StringBuilder();
-
-    // Generate 16 digits in format: XXXX-XXXX-XXXX-XXXX
-    for (int i = 0; i < 16; i++) {
-      cardNumber.append(random.nextInt(10));
-      if ((i + 1) % 4 == 0 && i < 15) {
-        cardNumber.append("-");
-      }
+  private Mono<Card> insertClaimed(Card card) {
+    return cardRepository.insert(card)
+        .onErrorResume(error -> releaseCardNumber(card).then(Mono.error(error)));
+  }
+
+  private Mono<Void> releaseCardNumber(Card card) {
+    if (card.getCardNumberHash() == null) {
+      return Mono.empty();
     }
+    return cardNumberClaimRepository.deleteById(cardNumberHasher.toToken(card.getCardNumberHash()));
+  }
+
+  @Override
+  public Mono<Long> detachAccount(String accountId) {
+    log.info("Detaching account {} from all cards", accountId);
+
+    // Chunk by chunk: read attached cards, detach exactly those, audit each one.
+    // Empty once no card holds the account, so cards attached meanwhile are caught too.
+    Mono<Long> step = Mono.defer(() -> attachedCards(accountId))
+        .filter(cards -> !cards.isEmpty())
+        .flatMap(cards -> detachChunk(accountId, cards));
+
+    return step
+        .expand(count -> step)
+        .reduce(0L, Long::sum)
+        .doOnSuccess(count -> {
+          hotCardCache.invalidateIf(card -> card.getAssociatedAccounts() != null
+              && card.getAssociatedAccounts().contains(accountId));
+          log.info("Account {} detached from {} cards", accountId, count);
+        });
+  }
+
+  private Mono<List<Card>> attachedCards(String accountId) {
+    Query query = Query.query(Criteria.where("associatedAccounts").is(accountId)).limit(DETACH_CHUNK_SIZE);
+    query.fields().include("customerId", "mainAccountId");
+    return mongoTemplate.find(query, Card.class).collectList();
+  }
 
-    String number = cardNumber.toString();
-    log.debug("Generated card number: {}", maskCardNumber(number));
-    return number;
+  /**
+   * One pipeline update for the chunk, guarded by the same filter as the read; the cards it
+   * changed are the ones carrying its updatedAt stamp, and each gets its own audit entry
+   */
+  private Mono<Long> detachChunk(String accountId, List<Card> cards) {
+    List<String> ids = cards.stream().map(Card::getId).collect(Collectors.toList());
+    Date stamp = new Date();
+
+    return mongoTemplate.updateMulti(
+            Query.query(Criteria.where("_id").in(ids).and("associatedAccounts").is(accountId)),
+            detachUpdate(accountId, stamp), Card.class)
+        .flatMap(result -> detachedCards(cards, ids, stamp, result.getModifiedCount())
+            .flatMapMany(Flux::fromIterable)
+            .concatMap(card -> cardAuditService.record(CardAuditEntry.builder()
+                .cardId(card.getId())
+                .customerId(card.getCustomerId())
+                .accountId(accountId)
+                .action(CardAuditEntry.ACTION_ACCOUNT_DETACHED)
+                .field("associatedAccounts")
+                .oldValue(accountId)
+                .reason(accountId.equals(card.getMainAccountId())
+                    ? "Account closed, main account reassigned"
+                    : "Account closed")))
+            .then(Mono.just(result.getModifiedCount())));
   }
 
   /**
-   * Generate random CVV (3 digits)
+   * Pipeline update: pull the account, then pick the first remaining account as main
+   * where the closed one was main (no accounts left -> mainAccountId is removed)
    */
-  private String generateCVV() {
-    Random random = new Random();
-    String cvv = String.format("%03d", random.nextInt(1000));
-    log.debug("Generated CVV: ***");
-    return cvv;
+  private static AggregationUpdate detachUpdate(String accountId, Date stamp) {
+    Document pull = new Document("$set", new Document("associatedAccounts",
+        new Document("$filter", new Document("input", "$associatedAccounts")
+            .append("cond", new Document("$ne", Arrays.asList("$$this", accountId))))));
+    Document reassign = new Document("$set", new Document("mainAccountId",
+        new Document("$cond", Arrays.asList(
+            new Document("$eq", Arrays.asList("$mainAccountId", accountId)),
+            new Document("$arrayElemAt", Arrays.asList("$associatedAccounts", 0)),
+            "$mainAccountId")))
+        .append("updatedAt", stamp));
+    return AggregationUpdate.from(Arrays.<AggregationOperation>asList(context -> pull, context -> reassign));
   }
 
   /**
-   * Mask card number for security (show only last 4 digits)
-   * Example: 1234-5678-9012-3456 -> ****-****-****-3456
+   * Cards of the chunk the update changed; only looked up again when some were skipped
    */
-  private String maskCardNumber(String cardNumber) {
-    if (cardNumber == null || cardNumber.length() < 4) {
-      return cardNumber;
+  private Mono<List<Card>> detachedCards(List<Card> cards, List<String> ids, Date stamp, long modified) {
+    if (modified == cards.size()) {
+      return Mono.just(cards);
     }
+    Query query = Query.query(Criteria.where("_id").in(ids).and("updatedAt").is(stamp));
+    query.fields().include("_id");
+    return mongoTemplate.find(query, Card.class)
+        .map(Card::getId)
+        .collectList()
+        .map(changedIds -> cards.stream()
+            .filter(card -> changedIds.contains(card.getId()))
+            .collect(Collectors.toList()));
+  }
 
-    String lastFour = cardNumber.substring(cardNumber.length() - 4);
-    return "****-****-****-" + lastFour;
+  /**
+   * Map Card entity to DTO with masked card number
+   */
+  CardDTO mapToDTO(Card card) {
+    return CardDTO.builder()
+        .id(card.getId())
+        .cardNumber(CardNumbers.mask(card.getCardNumber()))
+        .cardToken(cardNumberHasher.toToken(card.getCardNumberHash()))
+        .customerId(card.getCustomerId())
+        .cardType(card.getCardType())
+        .status(card.getStatus())
+        .expirationDate(card.getExpirationDate())
+        .associatedAccounts(card.getAssociatedAccounts())
+        .mainAccountId(card.getMainAccountId())
+        .creditId(card.getCreditId())
+        .createdAt(card.getCreatedAt())
+        .updatedAt(card.getUpdatedAt())
+        .build();
   }
 }
@@ -0,0 +1,68 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.dto.CardDTO;
+import com.bootcamp67.ms_card.dto.PaymentRequest;
+import com.bootcamp67.ms_card.entity.Card;
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import com.bootcamp67.ms_card.util.CardNumberHasher;
+import com.bootcamp67.ms_card.warmup.WarmupTask;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.validation.Validator;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+/**
+ * Warms DTO mapping and payment validation with in-memory cards (no repository calls)
+ */
+@Component
+@RequiredArgsConstructor
+public class CardServiceWarmup implements WarmupTask {
+
+  private static final CardStatus[] STATUSES = CardStatus.values();
+
+  private final CardServiceImpl cardService;
+  private final CardNumberHasher cardNumberHasher;
+  private final Validator validator;
+
+  @Override
+  public String name() {
+    return "card-service";
+  }
+
+  @Override
+  public void run(int iteration) {
+    String cardNumber = String.format("4000-0000-%04d-%04d", iteration / 10_000 % 10_000, iteration % 10_000);
+    LocalDate today = LocalDate.now();
+    Card card = Card.builder()
+        .id("warmup-" + iteration)
+        .cardNumber(cardNumber)
+        .cardNumberHash(cardNumberHasher.hash(cardNumber))
+        .customerId("warmup-customer")
+        .cardType(iteration % 2 == 0 ? CardType.DEBIT : CardType.CREDIT)
+        .status(STATUSES[iteration % STATUSES.length])
+        .expirationDate(iteration % 7 == 0 ? today.minusDays(1) : today.plusYears(3))
+        .associatedAccounts(Arrays.asList("warmup-account-1", "warmup-account-2"))
+        .mainAccountId("warmup-account-1")
+        .createdAt(LocalDateTime.now())
+        .updatedAt(LocalDateTime.now())
+        .build();
+
+    PaymentRequest request = PaymentRequest.builder()
+        .amount(iteration % 11 == 0 ? BigDecimal.ZERO : BigDecimal.valueOf(iteration % 500 + 1, 2))
+        .description("warm-up")
+        .merchantName("warm-up")
+        .build();
+
+    CardDTO dto = cardService.mapToDTO(card);
+    if (dto.getCardToken() == null) {
+      throw new IllegalStateException("Card token missing from mapped DTO");
+    }
+    validator.validate(request);
+    cardService.paymentRejection(card, request, today);
+  }
+}
@@ -0,0 +1,215 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.cache.LruCache;
+import com.bootcamp67.ms_card.service.CreditAvailabilityService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory projection of available credit per credit line, built from the credit topics.
+ * Every instance consumes the topics in full (own consumer group), so any instance can
+ * pre-authorize a charge without calling the credit service. In-flight charges are held
+ * against the line until the credit service reports the new availability or the hold expires.
+ * Amounts are kept in minor units. Delta events are deduplicated by eventId per instance.
+ */
+@Slf4j
+@Service
+public class CreditAvailabilityServiceImpl implements CreditAvailabilityService {
+
+  private static final String ACTIVE = "ACTIVE";
+
+  private final Map<String, CreditLine> lines = new ConcurrentHashMap<>();
+  private final LruCache<String, Boolean> appliedEvents;
+  private final boolean enabled;
+  private final long holdTtlMillis;
+
+  public CreditAvailabilityServiceImpl(@Value("${card.credit.projection.enabled:true}") boolean enabled,
+                                       @Value("${card.credit.projection.hold-ttl:60s}") Duration holdTtl,
+                                       @Value("${card.credit.projection.dedup-size:50000}") int dedupSize) {
+    this.enabled = enabled;
+    this.holdTtlMillis = holdTtl.toMillis();
+    this.appliedEvents = new LruCache<>(dedupSize);
+  }
+
+  @Override
+  public Authorization tryHold(String creditId, String holdId, BigDecimal amount) {
+    CreditLine line = enabled ? lines.get(creditId) : null;
+    if (line == null) {
+      return Authorization.NOT_PROJECTED;
+    }
+    return line.tryHold(holdId, toMinorUnits(amount), System.currentTimeMillis());
+  }
+
+  @Override
+  public void capture(String creditId, String holdId) {
+    CreditLine line = lines.get(creditId);
+    if (line != null) {
+      line.capture(holdId, System.currentTimeMillis());
+    }
+  }
+
+  @Override
+  public void release(String creditId, String holdId) {
+    CreditLine line = lines.get(creditId);
+    if (line != null) {
+      line.release(holdId);
+    }
+  }
+
+  @Override
+  public Optional<BigDecimal> available(String creditId) {
+    CreditLine line = enabled ? lines.get(creditId) : null;
+    if (line == null) {
+      return Optional.empty();
+    }
+    Long minorUnits = line.available(System.currentTimeMillis());
+    return minorUnits == null ? Optional.empty() : Optional.of(BigDecimal.valueOf(minorUnits, 2));
+  }
+
+  @Override
+  public void updateLine(String eventId, String creditId, BigDecimal available, String status) {
+    if (!enabled || creditId == null || isDuplicate(eventId)) {
+      return;
+    }
+    CreditLine line = lines.computeIfAbsent(creditId, id -> new CreditLine());
+    if (status != null) {
+      line.setActive(ACTIVE.equalsIgnoreCase(status));
+    }
+    if (available != null) {
+      line.setAvailable(toMinorUnits(available), System.currentTimeMillis());
+    }
+  }
+
+  @Override
+  public void updateStatus(String eventId, String creditId, String status) {
+    updateLine(eventId, creditId, null, status);
+  }
+
+  @Override
+  public void applyPayment(String eventId, String creditId, BigDecimal amount, boolean credit, BigDecimal available) {
+    if (!enabled || creditId == null || isDuplicate(eventId)) {
+      return;
+    }
+    CreditLine line = lines.computeIfAbsent(creditId, id -> new CreditLine());
+    long now = System.currentTimeMillis();
+    if (available != null) {
+      line.setAvailable(toMinorUnits(available), now);
+    } else if (amount != null) {
+      line.applyDelta(credit ? toMinorUnits(amount) : -toMinorUnits(amount), now);
+    }
+  }
+
+  private boolean isDuplicate(String eventId) {
+    if (eventId == null) {
+      return false;
+    }
+    synchronized (appliedEvents) {
+      if (appliedEvents.containsKey(eventId)) {
+        log.debug("Skipping credit event {} already applied", eventId);
+        return true;
+      }
+      appliedEvents.put(eventId, Boolean.TRUE);
+      return false;
+    }
+  }
+
+  private static long toMinorUnits(BigDecimal amount) {
+    return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+  }
+
+  private final class CreditLine {
+    private final Map<String, Hold> holds = new LinkedHashMap<>(4);
+    private Long available;  // null until the credit service reported it
+    private boolean active = true;
+
+    synchronized Authorization tryHold(String holdId, long amount, long now) {
+      if (!active) {
+        return Authorization.DECLINED;
+      }
+      if (available == null) {
+        return Authorization.NOT_PROJECTED;
+      }
+      if (available - held(now) < amount) {
+        return Authorization.DECLINED;
+      }
+      holds.put(holdId, new Hold(amount, now + holdTtlMillis));
+      return Authorization.APPROVED;
+    }
+
+    synchronized void capture(String holdId, long now) {
+      Hold hold = holds.get(holdId);
+      if (hold != null) {
+        hold.capturedAtMillis = now;
+      }
+    }
+
+    synchronized void release(String holdId) {
+      holds.remove(holdId);
+    }
+
+    synchronized Long available(long now) {
+      return available == null ? null : available - held(now);
+    }
+
+    synchronized void setActive(boolean active) {
+      this.active = active;
+    }
+
+    /**
+     * New figure from the credit service: it includes every charge posted so far
+     */
+    synchronized void setAvailable(long available, long now) {
+      this.available = available;
+      holds.values().removeIf(hold -> hold.capturedAtMillis > 0 && hold.capturedAtMillis <= now);
+    }
+
+    /**
+     * A charge event without figure: drop the oldest captured hold of that amount, it is now counted
+     */
+    synchronized void applyDelta(long delta, long now) {
+      if (available == null) {
+        return;
+      }
+      available += delta;
+      if (delta < 0) {
+        for (Iterator<Hold> it = holds.values().iterator(); it.hasNext(); ) {
+          Hold hold = it.next();
+          if (hold.capturedAtMillis > 0 && hold.capturedAtMillis <= now && hold.amount == -delta) {
+            it.remove();
+            break;
+          }
+        }
+      }
+    }
+
+    private long held(long now) {
+      holds.values().removeIf(hold -> hold.expiresAtMillis <= now);
+      long total = 0;
+      for (Hold hold : holds.values()) {
+        total += hold.amount;
+      }
+      return total;
+    }
+  }
+
+  private static final class Hold {
+    private final long amount;
+    private final long expiresAtMillis;
+    private long capturedAtMillis;
+
+    private Hold(long amount, long expiresAtMillis) {
+      this.amount = amount;
+      this.expiresAtMillis = expiresAtMillis;
+    }
+  }
+}
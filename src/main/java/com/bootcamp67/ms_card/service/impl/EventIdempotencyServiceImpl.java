@@ -0,0 +1,113 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.cache.LruCache;
+import com.bootcamp67.ms_card.entity.ProcessedEvent;
+import com.bootcamp67.ms_card.repository.ProcessedEventRepository;
+import com.bootcamp67.ms_card.service.EventIdempotencyService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Consumer;
+
+/**
+ * Consumer side dedup keyed by CardEvent.eventId.
+ * A bounded LRU answers replays from memory; the processed_events collection
+ * (TTL indexed) is the source of truth across restarts and rebalances.
+ * The marker is written only after the handler succeeded, so a crash or failure mid-handler
+ * leaves the event unmarked and its redelivery runs it again; the handlers are idempotent
+ * updates, so a concurrent duplicate delivery running twice is harmless.
+ * Kafka listener threads are blocking, so Mongo calls are awaited here.
+ */
+@Slf4j
+@Service
+public class EventIdempotencyServiceImpl implements EventIdempotencyService {
+
+  private static final String EVENT_ID_FIELD = "eventId";
+  private static final Duration MONGO_TIMEOUT = Duration.ofSeconds(5);
+
+  private final ProcessedEventRepository processedEventRepository;
+  private final ObjectMapper objectMapper;
+  private final LruCache<String, Boolean> recentlyProcessed;
+
+  public EventIdempotencyServiceImpl(ProcessedEventRepository processedEventRepository,
+                                     ObjectMapper objectMapper,
+                                     @Value("${card.idempotency.events.cache-size:50000}") int cacheSize) {
+    this.processedEventRepository = processedEventRepository;
+    this.objectMapper = objectMapper;
+    this.recentlyProcessed = new LruCache<>(cacheSize);
+  }
+
+  @Override
+  public boolean processOnce(String consumer, String message, Consumer<JsonNode> handler) {
+    JsonNode event = parse(message);
+    String eventId = event.path(EVENT_ID_FIELD).asText(null);
+
+    if (eventId == null || eventId.isEmpty()) {
+      log.debug("Event without eventId on {}, processing without dedup", consumer);
+      handler.accept(event);
+      return true;
+    }
+
+    String key = consumer + ":" + eventId;
+    if (recentlyProcessed.containsKey(key)) {
+      log.info("Skipping duplicated event {} on {} (memory)", eventId, consumer);
+      return false;
+    }
+
+    if (isMarked(key)) {
+      recentlyProcessed.put(key, Boolean.TRUE);
+      log.info("Skipping duplicated event {} on {} (store)", eventId, consumer);
+      return false;
+    }
+
+    // Listeners rethrow handler errors: the container retries the event, then parks it on the DLT
+    handler.accept(event);
+
+    mark(key, consumer, eventId);
+    recentlyProcessed.put(key, Boolean.TRUE);
+    return true;
+  }
+
+  private boolean isMarked(String key) {
+    return Boolean.TRUE.equals(processedEventRepository.existsById(key).block(MONGO_TIMEOUT));
+  }
+
+  /**
+   * Insert the marker; a duplicate key means a concurrent delivery marked it first.
+   * A failure here only means a redelivery runs the idempotent handler once more.
+   */
+  private void mark(String key, String consumer, String eventId) {
+    ProcessedEvent marker = ProcessedEvent.builder()
+        .id(key)
+        .consumer(consumer)
+        .eventId(eventId)
+        .processedAt(Instant.now())
+        .build();
+
+    try {
+      processedEventRepository.insert(marker)
+          .then()
+          .onErrorResume(DuplicateKeyException.class, e -> Mono.empty())
+          .block(MONGO_TIMEOUT);
+    } catch (RuntimeException e) {
+      log.error("Could not write processed event marker {}: {}", key, e.getMessage());
+    }
+  }
+
+  private JsonNode parse(String message) {
+    try {
+      return objectMapper.readTree(message);
+    } catch (Exception e) {
+      log.warn("Event payload is not valid JSON: {}", e.getMessage());
+      return MissingNode.getInstance();
+    }
+  }
+}
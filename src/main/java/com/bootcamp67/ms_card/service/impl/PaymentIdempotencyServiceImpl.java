@@ -0,0 +1,258 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.cache.LruCache;
+import com.bootcamp67.ms_card.dto.CardResponse;
+import com.bootcamp67.ms_card.entity.IdempotencyRecord;
+import com.bootcamp67.ms_card.repository.IdempotencyRecordRepository;
+import com.bootcamp67.ms_card.service.PaymentAttempt;
+import com.bootcamp67.ms_card.service.PaymentIdempotencyService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Idempotency-Key handling for payment requests.
+ * Completed responses live in a local LRU and in the idempotency_keys collection (24h TTL).
+ * A pending record is inserted before the action runs so another instance receiving
+ * the same key answers 409 instead of charging twice. The owner renews its lease while
+ * the payment runs; the key is released only when the payment failed before reaching
+ * the gateway. Once the gateway was called, a failure or an expired lease leaves the
+ * outcome unknown and the key answers 202 until the payment is reconciled.
+ */
+@Slf4j
+@Service
+public class PaymentIdempotencyServiceImpl implements PaymentIdempotencyService {
+
+  private static final Duration RECORD_TTL = Duration.ofHours(24);
+
+  private final IdempotencyRecordRepository idempotencyRecordRepository;
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final LruCache<String, IdempotencyRecord> completed;
+  private final Map<String, InFlight> inFlight = new ConcurrentHashMap<>();
+  private final Duration lease;
+
+  public PaymentIdempotencyServiceImpl(IdempotencyRecordRepository idempotencyRecordRepository,
+                                       ReactiveMongoTemplate mongoTemplate,
+                                       @Value("${card.idempotency.payments.cache-size:10000}") int cacheSize,
+                                       @Value("${card.idempotency.payments.lease:30s}") Duration lease) {
+    this.idempotencyRecordRepository = idempotencyRecordRepository;
+    this.mongoTemplate = mongoTemplate;
+    this.completed = new LruCache<>(cacheSize);
+    this.lease = lease;
+  }
+
+  @Override
+  public Mono<ResponseEntity<CardResponse>> execute(String scope,
+                                                    String idempotencyKey,
+                                                    String fingerprint,
+                                                    Supplier<Mono<ResponseEntity<CardResponse>>> action) {
+    String key = scope + ":" + idempotencyKey;
+
+    IdempotencyRecord cached = completed.get(key);
+    if (cached != null) {
+      if (cached.getCreatedAt().plus(RECORD_TTL).isAfter(Instant.now())) {
+        log.info("Replaying stored response for Idempotency-Key {}", idempotencyKey);
+        return Mono.just(replay(cached, fingerprint));
+      }
+      completed.remove(key);
+    }
+
+    InFlight running = inFlight.computeIfAbsent(key, k -> new InFlight(fingerprint,
+        executeOnce(k, fingerprint, action)
+            .doFinally(signal -> inFlight.remove(k))
+            .cache()));
+
+    if (!running.fingerprint.equals(fingerprint)) {
+      return Mono.just(mismatch());
+    }
+    return running.result;
+  }
+
+  private Mono<ResponseEntity<CardResponse>> executeOnce(String key,
+                                                         String fingerprint,
+                                                         Supplier<Mono<ResponseEntity<CardResponse>>> action) {
+    IdempotencyRecord pending = IdempotencyRecord.builder()
+        .id(key)
+        .fingerprint(fingerprint)
+        .completed(false)
+        .createdAt(Instant.now())
+        .leaseUntil(Instant.now().plus(lease))
+        .build();
+
+    return idempotencyRecordRepository.insert(pending)
+        .flatMap(record -> run(key, fingerprint, action))
+        .onErrorResume(DuplicateKeyException.class, e -> resolveExisting(key, fingerprint, action));
+  }
+
+  private Mono<ResponseEntity<CardResponse>> resolveExisting(String key,
+                                                             String fingerprint,
+                                                             Supplier<Mono<ResponseEntity<CardResponse>>> action) {
+    return idempotencyRecordRepository.findById(key)
+        .flatMap(existing -> {
+          if (existing.isCompleted()) {
+            completed.put(key, existing);
+            return Mono.just(replay(existing, fingerprint));
+          }
+          if (!existing.getFingerprint().equals(fingerprint)) {
+            return Mono.just(mismatch());
+          }
+          if (leaseExpired(existing)) {
+            // The owner died or lost Mongo mid-payment; running it again could charge twice
+            log.error("Payment with Idempotency-Key {} lost its owner, outcome unknown until reconciled", key);
+            return Mono.just(outcomeUnknown());
+          }
+          return Mono.just(inProgress());
+        })
+        // Record expired between insert and lookup: try again from scratch
+        .switchIfEmpty(Mono.defer(() -> executeOnce(key, fingerprint, action)));
+  }
+
+  private boolean leaseExpired(IdempotencyRecord record) {
+    Instant leaseUntil = record.getLeaseUntil() != null
+        ? record.getLeaseUntil()
+        : record.getCreatedAt().plus(lease);
+    return leaseUntil.isBefore(Instant.now());
+  }
+
+  private Mono<ResponseEntity<CardResponse>> run(String key,
+                                                 String fingerprint,
+                                                 Supplier<Mono<ResponseEntity<CardResponse>>> action) {
+    return Mono.defer(() -> {
+      PaymentAttempt attempt = new PaymentAttempt();
+      Disposable renewal = Flux.interval(lease.dividedBy(3))
+          .concatMap(tick -> renewLease(key))
+          .subscribe(renewed -> { }, error -> log.warn("Could not renew lease of Idempotency-Key {}: {}",
+              key, error.getMessage()));
+
+      return action.get()
+          .contextWrite(context -> context.put(PaymentAttempt.CONTEXT_KEY, attempt))
+          .flatMap(response -> {
+            if (isTerminal(response.getStatusCode())) {
+              return complete(key, fingerprint, response.getStatusCodeValue(), response.getBody())
+                  .thenReturn(response);
+            }
+            if (attempt.isCharging()) {
+              return unknown(key, fingerprint);
+            }
+            return idempotencyRecordRepository.deleteById(key).thenReturn(response);
+          })
+          .onErrorResume(ex -> {
+            if (attempt.isCharging()) {
+              log.error("Payment with Idempotency-Key {} failed after reaching the gateway: {}",
+                  key, ex.getMessage());
+              return unknown(key, fingerprint);
+            }
+            // Nothing was charged: release the key so a retry runs the payment
+            return idempotencyRecordRepository.deleteById(key).then(Mono.error(ex));
+          })
+          .doFinally(signal -> renewal.dispose());
+    });
+  }
+
+  private Mono<IdempotencyRecord> renewLease(String key) {
+    Query query = Query.query(Criteria.where("_id").is(key).and("completed").is(false));
+    Update update = Update.update("leaseUntil", Instant.now().plus(lease));
+    return mongoTemplate.findAndModify(query, update, IdempotencyRecord.class);
+  }
+
+  private Mono<ResponseEntity<CardResponse>> unknown(String key, String fingerprint) {
+    ResponseEntity<CardResponse> response = outcomeUnknown();
+    return complete(key, fingerprint, response.getStatusCodeValue(), response.getBody())
+        .thenReturn(response);
+  }
+
+  /**
+   * Store the outcome. When Mongo refuses it, the pending record is kept: once its lease
+   * expires other instances answer outcome unknown instead of running the payment again.
+   */
+  private Mono<Void> complete(String key, String fingerprint, int statusCode, CardResponse body) {
+    IdempotencyRecord record = IdempotencyRecord.builder()
+        .id(key)
+        .fingerprint(fingerprint)
+        .completed(true)
+        .statusCode(statusCode)
+        .response(body)
+        .createdAt(Instant.now())
+        .build();
+    completed.put(key, record);
+
+    return idempotencyRecordRepository.save(record)
+        .then()
+        .onErrorResume(e -> {
+          log.error("Could not store outcome of Idempotency-Key {}: {}", key, e.getMessage());
+          return Mono.empty();
+        });
+  }
+
+  /**
+   * Only success and business declines are stored. Rate limits, conflicts and server
+   * errors release the key so a retry with it runs the payment again, unless the gateway
+   * was already called.
+   */
+  private static boolean isTerminal(HttpStatus status) {
+    if (status.is2xxSuccessful()) {
+      return true;
+    }
+    return status.is4xxClientError()
+        && status != HttpStatus.CONFLICT
+        && status != HttpStatus.TOO_MANY_REQUESTS
+        && status != HttpStatus.REQUEST_TIMEOUT;
+  }
+
+  private ResponseEntity<CardResponse> replay(IdempotencyRecord record, String fingerprint) {
+    if (!record.getFingerprint().equals(fingerprint)) {
+      return mismatch();
+    }
+    return ResponseEntity.status(record.getStatusCode()).body(record.getResponse());
+  }
+
+  private ResponseEntity<CardResponse> mismatch() {
+    return ResponseEntity.status(HttpStatus.UNPROCESSABLE_ENTITY)
+        .body(CardResponse.builder()
+            .success(false)
+            .message("Idempotency-Key was already used with a different request")
+            .build());
+  }
+
+  private ResponseEntity<CardResponse> inProgress() {
+    return ResponseEntity.status(HttpStatus.CONFLICT)
+        .body(CardResponse.builder()
+            .success(false)
+            .message("A request with this Idempotency-Key is already in progress")
+            .build());
+  }
+
+  private ResponseEntity<CardResponse> outcomeUnknown() {
+    return ResponseEntity.status(HttpStatus.ACCEPTED)
+        .body(CardResponse.builder()
+            .success(false)
+            .message("The outcome of the payment with this Idempotency-Key is unknown until it is reconciled")
+            .build());
+  }
+
+  private static final class InFlight {
+    private final String fingerprint;
+    private final Mono<ResponseEntity<CardResponse>> result;
+
+    private InFlight(String fingerprint, Mono<ResponseEntity<CardResponse>> result) {
+      this.fingerprint = fingerprint;
+      this.result = result;
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.dto.DebitResult;
+import com.bootcamp67.ms_card.service.AccountGateway;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Stand-in for the account and credit services until they are integrated.
+ * Declines at the configured rates; when latency is configured, answers after a
+ * log-normal delay fitted to the median and p99.
+ * TODO: Replace with WebClient calls to ms-account and ms-credit
+ */
+@Slf4j
+@Component
+public class SimulatedAccountGateway implements AccountGateway {
+
+  private static final double Z_99 = 2.326;
+  private static final BigDecimal SIMULATED_BALANCE = new BigDecimal("1500.00");
+
+  private final double accountDeclineRate;
+  private final double creditDeclineRate;
+  private final double latencyMu;
+  private final double latencySigma;
+  private final boolean latencyEnabled;
+
+  public SimulatedAccountGateway(@Value("${card.gateway.simulated.account-decline-rate:0.3}") double accountDeclineRate,
+                                 @Value("${card.gateway.simulated.credit-decline-rate:0}") double creditDeclineRate,
+                                 @Value("${card.gateway.simulated.latency.median:0ms}") Duration latencyMedian,
+                                 @Value("${card.gateway.simulated.latency.p99:0ms}") Duration latencyP99) {
+    this.accountDeclineRate = accountDeclineRate;
+    this.creditDeclineRate = creditDeclineRate;
+    this.latencyEnabled = latencyMedian.toNanos() > 0;
+    this.latencyMu = latencyEnabled ? Math.log(latencyMedian.toNanos()) : 0;
+    this.latencySigma = latencyEnabled && latencyP99.compareTo(latencyMedian) > 0
+        ? (Math.log(latencyP99.toNanos()) - latencyMu) / Z_99
+        : 0;
+  }
+
+  @Override
+  public Mono<DebitResult> debit(String accountId, BigDecimal amount, String cardId) {
+    log.info("Attempting to debit {} from account {}", amount, accountId);
+    return respond(() -> {
+      if (ThreadLocalRandom.current().nextDouble() < accountDeclineRate) {
+        log.warn("Simulated insufficient balance in account: {}", accountId);
+        return DebitResult.insufficient(accountId);
+      }
+      log.info("Successfully debited {} from account {}", amount, accountId);
+      return DebitResult.approved(accountId);
+    });
+  }
+
+  @Override
+  public Mono<BigDecimal> balance(String accountId) {
+    log.info("Returning simulated balance {} for account {}", SIMULATED_BALANCE, accountId);
+    return respond(() -> SIMULATED_BALANCE);
+  }
+
+  @Override
+  public Mono<DebitResult> chargeCredit(String creditId, BigDecimal amount, String cardId) {
+    return respond(() -> {
+      if (ThreadLocalRandom.current().nextDouble() < creditDeclineRate) {
+        log.warn("Simulated insufficient credit in credit line: {}", creditId);
+        return DebitResult.insufficient(creditId);
+      }
+      log.info("Successfully charged {} to credit account {}", amount, creditId);
+      return DebitResult.approved(creditId);
+    });
+  }
+
+  private <T> Mono<T> respond(Supplier<T> response) {
+    if (!latencyEnabled) {
+      return Mono.fromSupplier(response);
+    }
+    double sample = Math.exp(latencyMu + latencySigma * ThreadLocalRandom.current().nextGaussian());
+    return Mono.delay(Duration.ofNanos((long) sample)).map(tick -> response.get());
+  }
+}
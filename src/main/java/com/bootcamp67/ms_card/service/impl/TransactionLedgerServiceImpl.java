@@ -0,0 +1,160 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.cache.LruCache;
+import com.bootcamp67.ms_card.config.MongoConfig;
+import com.bootcamp67.ms_card.cache.TransactionRing;
+import com.bootcamp67.ms_card.dto.TransactionDTO;
+import com.bootcamp67.ms_card.entity.CardTransaction;
+import com.bootcamp67.ms_card.repository.CardTransactionRepository;
+import com.bootcamp67.ms_card.repository.support.UnorderedBatchInserter;
+import com.bootcamp67.ms_card.service.TransactionLedgerService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * Card transaction ledger.
+ * Writes are queued and inserted in unordered batches; a payment only waits on the ledger when
+ * the queue is full and its row is written directly. Failed batches are retried and anything
+ * lost shows up in the card.batch.* metrics.
+ * Reads are covered by the cardId_transactionDate_covering index on a secondary: the projection
+ * only asks for fields the index holds, so no document is fetched. When the ring
+ * buffer is enabled, hot cards are answered from memory. The ring only sees writes made by this
+ * instance, so enable it only when a card's traffic is routed to one instance.
+ */
+@Slf4j
+@Service
+public class TransactionLedgerServiceImpl implements TransactionLedgerService {
+
+  private static final Duration SHUTDOWN_FLUSH_TIMEOUT = Duration.ofSeconds(10);
+  private static final int SETTLE_ATTEMPTS = 10;
+
+  private final CardTransactionRepository cardTransactionRepository;
+  private final ReactiveMongoTemplate mongoTemplate;
+  private final ReactiveMongoTemplate secondaryMongoTemplate;
+  private final Duration flushInterval;
+  private final UnorderedBatchInserter<CardTransaction> inserter;
+  private final LruCache<String, TransactionRing> rings;
+  private final boolean ringBufferEnabled;
+  private final int ringCapacity;
+
+  public TransactionLedgerServiceImpl(CardTransactionRepository cardTransactionRepository,
+                                      ReactiveMongoTemplate mongoTemplate,
+                                      MeterRegistry meterRegistry,
+                                      @Qualifier(MongoConfig.SECONDARY_TEMPLATE) ReactiveMongoTemplate secondaryMongoTemplate,
+                                      @Value("${card.ledger.batch-size:500}") int batchSize,
+                                      @Value("${card.ledger.flush-interval:100ms}") Duration flushInterval,
+                                      @Value("${card.ledger.queue-capacity:50000}") int queueCapacity,
+                                      @Value("${card.ledger.retry.attempts:3}") int retryAttempts,
+                                      @Value("${card.ledger.retry.backoff:500ms}") Duration retryBackoff,
+                                      @Value("${card.ledger.ring-buffer.enabled:false}") boolean ringBufferEnabled,
+                                      @Value("${card.ledger.ring-buffer.capacity:50}") int ringCapacity,
+                                      @Value("${card.ledger.ring-buffer.max-cards:10000}") int maxCards) {
+    this.cardTransactionRepository = cardTransactionRepository;
+    this.mongoTemplate = mongoTemplate;
+    this.secondaryMongoTemplate = secondaryMongoTemplate;
+    this.flushInterval = flushInterval;
+    this.inserter = new UnorderedBatchInserter<>(mongoTemplate, CardTransaction.class,
+        batchSize, flushInterval, queueCapacity, retryAttempts, retryBackoff, meterRegistry);
+    this.ringBufferEnabled = ringBufferEnabled;
+    this.ringCapacity = ringCapacity;
+    this.rings = new LruCache<>(maxCards);
+  }
+
+  @PostConstruct
+  public void start() {
+    inserter.start();
+  }
+
+  @PreDestroy
+  public void stop() {
+    log.info("Flushing {} pending ledger entries", inserter.pending());
+    inserter.stop(SHUTDOWN_FLUSH_TIMEOUT);
+  }
+
+  @Override
+  public Mono<Void> record(CardTransaction transaction) {
+    return inserter.submit(transaction)
+        .doOnSuccess(queued -> {
+          if (ringBufferEnabled) {
+            TransactionRing ring = rings.get(transaction.getCardId());
+            if (ring != null) {
+              ring.add(toDTO(transaction));
+            }
+          }
+        });
+  }
+
+  @Override
+  public Mono<Void> settle(String cardId, String transactionId, String status) {
+    Query query = Query.query(Criteria.where("_id").is(transactionId));
+    Update update = Update.update("status", status);
+
+    // The row may still be queued: retry the update until its batch has been inserted
+    return Mono.defer(() -> mongoTemplate.updateFirst(query, update, CardTransaction.class))
+        .filter(result -> result.getMatchedCount() > 0)
+        .repeatWhenEmpty(SETTLE_ATTEMPTS, attempts -> attempts.delayElements(flushInterval.multipliedBy(2)))
+        .switchIfEmpty(Mono.error(new IllegalStateException(
+            "Ledger entry " + transactionId + " was not written, status " + status + " not applied")))
+        // The ring holds the pending copy: reseed it on the next read
+        .doOnSuccess(result -> rings.remove(cardId))
+        .then();
+  }
+
+  @Override
+  public Flux<TransactionDTO> findLast(String cardId, int limit) {
+    if (!ringBufferEnabled || limit > ringCapacity) {
+      Query query = Query.query(Criteria.where("cardId").is(cardId))
+          .with(Sort.by(Sort.Direction.DESC, "transactionDate"))
+          .limit(limit);
+      query.fields().include(CardTransaction.COVERED_FIELDS);
+      return secondaryMongoTemplate.find(query, TransactionDTO.class,
+          secondaryMongoTemplate.getCollectionName(CardTransaction.class));
+    }
+
+    TransactionRing ring = rings.get(cardId);
+    if (ring != null && ring.isComplete()) {
+      return Flux.fromIterable(ring.latest(limit));
+    }
+
+    // Register the ring before reading so writes racing with the seed are kept.
+    // Seeded from the primary: a lagging secondary would leave the ring missing entries.
+    TransactionRing seeding = ring != null ? ring : new TransactionRing(ringCapacity);
+    rings.put(cardId, seeding);
+    return cardTransactionRepository.findByCardIdOrderByTransactionDateDesc(
+            cardId, PageRequest.of(0, ringCapacity))
+        .collectList()
+        .flatMapMany(rows -> {
+          seeding.seed(rows);
+          return Flux.fromIterable(seeding.latest(limit));
+        });
+  }
+
+  private TransactionDTO toDTO(CardTransaction transaction) {
+    return TransactionDTO.builder()
+        .id(transaction.getId())
+        .cardId(transaction.getCardId())
+        .type(transaction.getType())
+        .amount(transaction.getAmount())
+        .description(transaction.getDescription())
+        .merchantName(transaction.getMerchantName())
+        .accountId(transaction.getAccountId())
+        .transactionDate(transaction.getTransactionDate())
+        .status(transaction.getStatus())
+        .build();
+  }
+}
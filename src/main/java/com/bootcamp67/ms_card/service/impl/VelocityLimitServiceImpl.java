@@ -0,0 +1,201 @@
+package com.bootcamp67.ms_card.service.impl;
+
+import com.bootcamp67.ms_card.entity.CardVelocitySnapshot;
+import com.bootcamp67.ms_card.limit.CardVelocity;
+import com.bootcamp67.ms_card.limit.SlidingWindowCounter;
+import com.bootcamp67.ms_card.limit.VelocityLimits;
+import com.bootcamp67.ms_card.limit.VelocityWindow;
+import com.bootcamp67.ms_card.repository.CardVelocitySnapshotRepository;
+import com.bootcamp67.ms_card.service.VelocityLimitService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory per card spend/velocity limits.
+ * Counters are lock-free sliding windows (minute, hour, day), checked without any Mongo call.
+ * State is checkpointed to card_velocity periodically and merged back on startup.
+ * Limits are enforced per instance: with N instances behind a balancer a card can spend up to
+ * N times a limit. Checkpoints are keyed by card.velocity.instance-id, which must be stable
+ * across restarts of the same instance (e.g. a StatefulSet pod name) for recovery to find them;
+ * when it is not set the host name is used and a warning is logged.
+ */
+@Slf4j
+@Service
+public class VelocityLimitServiceImpl implements VelocityLimitService {
+
+  private static final Duration CHECKPOINT_TIMEOUT = Duration.ofSeconds(10);
+  private static final Duration RECOVERY_TIMEOUT = Duration.ofSeconds(30);
+  // <deployment>-<replicaset hash>-<suffix>: changes on every rollout and reschedule
+  private static final Pattern DEPLOYMENT_POD_NAME = Pattern.compile(".+-[a-z0-9]{6,10}-[a-z0-9]{5}");
+
+  private final CardVelocitySnapshotRepository snapshotRepository;
+  private final Map<String, CardVelocity> velocities = new ConcurrentHashMap<>();
+  private final VelocityLimits limits;
+  private final boolean enabled;
+  private final String instanceId;
+
+  public VelocityLimitServiceImpl(CardVelocitySnapshotRepository snapshotRepository,
+                                  @Value("${card.velocity.enabled:true}") boolean enabled,
+                                  @Value("${card.velocity.instance-id:}") String instanceId,
+                                  @Value("${HOSTNAME:local}") String hostName,
+                                  @Value("${card.velocity.per-minute.count:0}") long minuteCount,
+                                  @Value("${card.velocity.per-minute.amount:0}") BigDecimal minuteAmount,
+                                  @Value("${card.velocity.per-hour.count:0}") long hourCount,
+                                  @Value("${card.velocity.per-hour.amount:0}") BigDecimal hourAmount,
+                                  @Value("${card.velocity.per-day.count:0}") long dayCount,
+                                  @Value("${card.velocity.per-day.amount:0}") BigDecimal dayAmount) {
+    this.snapshotRepository = snapshotRepository;
+    this.enabled = enabled;
+    this.instanceId = resolveInstanceId(instanceId, hostName);
+    this.limits = new VelocityLimits()
+        .limit(VelocityWindow.MINUTE, minuteCount, toMinorUnits(minuteAmount))
+        .limit(VelocityWindow.HOUR, hourCount, toMinorUnits(hourAmount))
+        .limit(VelocityWindow.DAY, dayCount, toMinorUnits(dayAmount));
+  }
+
+  @Override
+  public Optional<String> tryReserve(String cardId, BigDecimal amount, long timestampMillis) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+
+    long minorUnits = toMinorUnits(amount);
+    CardVelocity velocity = velocities.computeIfAbsent(cardId, id -> new CardVelocity());
+
+    // Count first and undo on violation: concurrent payments can't both slip under a limit
+    velocity.add(timestampMillis, 1, minorUnits);
+    VelocityWindow exceeded = velocity.firstExceeded(timestampMillis, limits);
+    if (exceeded == null) {
+      return Optional.empty();
+    }
+
+    velocity.add(timestampMillis, -1, -minorUnits);
+    log.warn("Card {} exceeded {} velocity limit", cardId, exceeded);
+    return Optional.of("Card exceeded the " + exceeded.name().toLowerCase() + " spend limit");
+  }
+
+  @Override
+  public void release(String cardId, BigDecimal amount, long timestampMillis) {
+    CardVelocity velocity = velocities.get(cardId);
+    if (enabled && velocity != null) {
+      velocity.add(timestampMillis, -1, -toMinorUnits(amount));
+    }
+  }
+
+  private static String resolveInstanceId(String configured, String hostName) {
+    String id = configured.isEmpty() ? hostName : configured;
+    if (configured.isEmpty()) {
+      log.warn("card.velocity.instance-id is not set, checkpoints are keyed by host name {}", hostName);
+    }
+    if (DEPLOYMENT_POD_NAME.matcher(id).matches()) {
+      log.warn("Velocity instance id {} looks like a Deployment pod name and changes on restart: "
+          + "checkpoints will not be recovered. Use a StatefulSet pod name", id);
+    }
+    return id;
+  }
+
+  /**
+   * Runs before the instance takes traffic and waits for the checkpoints, so restored
+   * counts are in place before the first payment is counted.
+   */
+  @PostConstruct
+  public void recover() {
+    if (!enabled) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    Instant horizon = Instant.ofEpochMilli(now).minus(Duration.ofDays(1));
+
+    snapshotRepository.findByInstanceIdAndSavedAtAfter(instanceId, horizon)
+        .doOnNext(snapshot -> {
+          CardVelocity velocity = velocities.computeIfAbsent(snapshot.getCardId(), id -> new CardVelocity());
+          for (CardVelocitySnapshot.WindowState state : snapshot.getWindows()) {
+            velocity.window(state.getWindow())
+                .restore(state.getEpochs(), state.getCounts(), state.getAmounts(), now);
+          }
+          velocity.markClean();
+        })
+        .count()
+        .doOnNext(count -> log.info("Recovered velocity state of {} cards", count))
+        .onErrorResume(error -> {
+          log.error("Could not recover velocity state: {}", error.getMessage(), error);
+          return Mono.empty();
+        })
+        .block(RECOVERY_TIMEOUT);
+  }
+
+  @Scheduled(fixedDelayString = "${card.velocity.checkpoint-interval-ms:30000}")
+  public void checkpoint() {
+    if (!enabled) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    long idleCutoff = now - Duration.ofDays(1).toMillis();
+    List<CardVelocitySnapshot> snapshots = new ArrayList<>();
+    List<CardVelocity> saved = new ArrayList<>();
+
+    velocities.forEach((cardId, velocity) -> {
+      if (velocity.getLastActivityMillis() < idleCutoff) {
+        velocities.remove(cardId, velocity);
+      } else if (velocity.isDirty()) {
+        // Cleared before the snapshot so a payment counted meanwhile marks it dirty again
+        velocity.markClean();
+        snapshots.add(snapshot(cardId, velocity, now));
+        saved.add(velocity);
+      }
+    });
+
+    if (snapshots.isEmpty()) {
+      return;
+    }
+    try {
+      snapshotRepository.saveAll(snapshots).then().block(CHECKPOINT_TIMEOUT);
+      log.debug("Checkpointed velocity state of {} cards", snapshots.size());
+    } catch (RuntimeException e) {
+      // Only a saved snapshot makes a card clean: retry the others on the next checkpoint
+      saved.forEach(CardVelocity::markDirty);
+      log.error("Velocity checkpoint failed: {}", e.getMessage());
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    checkpoint();
+  }
+
+  private CardVelocitySnapshot snapshot(String cardId, CardVelocity velocity, long now) {
+    List<CardVelocitySnapshot.WindowState> windows = new ArrayList<>();
+    for (VelocityWindow window : VelocityWindow.values()) {
+      SlidingWindowCounter counter = velocity.window(window);
+      long[][] state = counter.snapshot();
+      windows.add(new CardVelocitySnapshot.WindowState(window, state[0], state[1], state[2]));
+    }
+    return CardVelocitySnapshot.builder()
+        .id(instanceId + ":" + cardId)
+        .instanceId(instanceId)
+        .cardId(cardId)
+        .windows(windows)
+        .savedAt(Instant.ofEpochMilli(now))
+        .build();
+  }
+
+  private static long toMinorUnits(BigDecimal amount) {
+    return amount.setScale(2, RoundingMode.HALF_UP).unscaledValue().longValue();
+  }
+}
@@ -0,0 +1,41 @@
+package com.bootcamp67.ms_card.util;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Card ids carry the shard key: "customerId_objectIdHex".
+ * Any lookup by id can then include customerId and be routed to a single shard.
+ * Cards created before this scheme have a plain ObjectId and no embedded customer.
+ */
+public final class CardIds {
+
+  private static final char SEPARATOR = '_';
+
+  private CardIds() {
+  }
+
+  public static String newId(String customerId) {
+    return of(customerId, new ObjectId());
+  }
+
+  /**
+   * Id for a given ObjectId, used to rewrite legacy ids deterministically
+   */
+  public static String of(String customerId, ObjectId objectId) {
+    return customerId + SEPARATOR + objectId.toHexString();
+  }
+
+  /**
+   * Customer embedded in the id, or null for legacy (and malformed) ids
+   */
+  public static String customerIdOf(String cardId) {
+    if (cardId == null) {
+      return null;
+    }
+    int separator = cardId.lastIndexOf(SEPARATOR);
+    if (separator <= 0 || !ObjectId.isValid(cardId.substring(separator + 1))) {
+      return null;
+    }
+    return cardId.substring(0, separator);
+  }
+}
@@ -0,0 +1,77 @@
+package com.bootcamp67.ms_card.util;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+
+/**
+ * Keyed hash (HMAC-SHA256) of the normalized card number.
+ * The 32 byte digest is what gets indexed; its URL-safe Base64 form is the card token.
+ */
+@Component
+public class CardNumberHasher {
+
+  public static final int HASH_LENGTH = 32;
+  private static final String ALGORITHM = "HmacSHA256";
+
+  private final SecretKeySpec key;
+  private final ThreadLocal<Mac> macs;
+
+  public CardNumberHasher(@Value("${card.pan.hash-key}") String hashKey) {
+    if (hashKey == null || hashKey.isEmpty()) {
+      throw new IllegalStateException("card.pan.hash-key must be configured");
+    }
+    this.key = new SecretKeySpec(hashKey.getBytes(StandardCharsets.UTF_8), ALGORITHM);
+    this.macs = ThreadLocal.withInitial(this::newMac);
+  }
+
+  /**
+   * Hash the card number ignoring separators (1234-5678... and 12345678... match)
+   */
+  public byte[] hash(String cardNumber) {
+    return macs.get().doFinal(normalize(cardNumber).getBytes(StandardCharsets.US_ASCII));
+  }
+
+  public String toToken(byte[] hash) {
+    return hash == null ? null : Base64.getUrlEncoder().withoutPadding().encodeToString(hash);
+  }
+
+  public byte[] fromToken(String token) {
+    byte[] hash;
+    try {
+      hash = Base64.getUrlDecoder().decode(token);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Invalid card token");
+    }
+    if (hash.length != HASH_LENGTH) {
+      throw new IllegalArgumentException("Invalid card token");
+    }
+    return hash;
+  }
+
+  public static String normalize(String cardNumber) {
+    StringBuilder digits = new StringBuilder(16);
+    for (int i = 0; i < cardNumber.length(); i++) {
+      char c = cardNumber.charAt(i);
+      if (c >= '0' && c <= '9') {
+        digits.append(c);
+      }
+    }
+    return digits.toString();
+  }
+
+  private Mac newMac() {
+    try {
+      Mac mac = Mac.getInstance(ALGORITHM);
+      mac.init(key);
+      return mac;
+    } catch (GeneralSecurityException e) {
+      throw new IllegalStateException("Cannot initialize " + ALGORITHM, e);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.bootcamp67.ms_card.util;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Card number and CVV generation, shared by card creation and renewal
+ */
+public final class CardNumbers {
+
+  private CardNumbers() {
+  }
+
+  /**
+   * Generate random card number (16 digits)
+   * Format: 4444-5555-6666-7777
+   */
+  public static String generate() {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    StringBuilder cardNumber = new StringBuilder(19);
+
+    // Generate 16 digits in format: XXXX-XXXX-XXXX-XXXX
+    for (int i = 0; i < 16; i++) {
+      cardNumber.append(random.nextInt(10));
+      if ((i + 1) % 4 == 0 && i < 15) {
+        cardNumber.append("-");
+      }
+    }
+    return cardNumber.toString();
+  }
+
+  /**
+   * Generate random CVV (3 digits)
+   */
+  public static String generateCvv() {
+    return String.format("%03d", ThreadLocalRandom.current().nextInt(1000));
+  }
+
+  /**
+   * Mask card number for security (show only last 4 digits)
+   * Example: 1234-5678-9012-3456 -> ****-****-****-3456
+   */
+  public static String mask(String cardNumber) {
+    if (cardNumber == null || cardNumber.length() < 4) {
+      return cardNumber;
+    }
+
+    String lastFour = cardNumber.substring(cardNumber.length() - 4);
+    return "****-****-****-" + lastFour;
+  }
+}
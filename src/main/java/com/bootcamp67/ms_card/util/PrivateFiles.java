@@ -0,0 +1,46 @@
+package com.bootcamp67.ms_card.util;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Set;
+
+/**
+ * Owner-only files and directories for data written to local disk (card snapshots, exports)
+ */
+public final class PrivateFiles {
+
+  private PrivateFiles() {
+  }
+
+  /**
+   * Create the directory and any missing parent as rwx------
+   */
+  public static void createDirectories(Path directory) throws IOException {
+    if (directory != null && !Files.isDirectory(directory)) {
+      Files.createDirectories(directory, ownerOnly("rwx------"));
+    }
+  }
+
+  /**
+   * Attributes for a new rw------- file
+   */
+  public static FileAttribute<?>[] ownerOnlyFile() {
+    return ownerOnly("rw-------");
+  }
+
+  /**
+   * POSIX owner-only permissions, or nothing on file systems without POSIX attributes
+   */
+  private static FileAttribute<?>[] ownerOnly(String permissions) {
+    if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+      return new FileAttribute<?>[0];
+    }
+    Set<PosixFilePermission> posix = PosixFilePermissions.fromString(permissions);
+    return new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(posix)};
+  }
+}
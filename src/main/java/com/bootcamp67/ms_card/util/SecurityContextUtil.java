@@ -3,6 +3,10 @@ package com.bootcamp67.ms_card.util;
 import org.springframework.web.server.ServerWebExchange;
 
 public class SecurityContextUtil {
+  /**
+   * Reactor context key holding the authenticated username (set by HeaderInterceptor)
+   */
+  public static final String USERNAME_CONTEXT_KEY = "username";
   private static final String USERNAME_ATTR = "username";
   private static final String CUSTOMER_ID_ATTR = "customerId";
   private static final String ROLE_ATTR = "role";
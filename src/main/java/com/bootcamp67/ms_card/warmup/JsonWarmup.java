@@ -0,0 +1,56 @@
+package com.bootcamp67.ms_card.warmup;
+
+import com.bootcamp67.ms_card.dto.CardDTO;
+import com.bootcamp67.ms_card.enums.CardStatus;
+import com.bootcamp67.ms_card.enums.CardType;
+import com.bootcamp67.ms_card.event.CardEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Warms Jackson serialization of the response and event types
+ */
+@Component
+@RequiredArgsConstructor
+public class JsonWarmup implements WarmupTask {
+
+  private final ObjectMapper objectMapper;
+
+  @Override
+  public String name() {
+    return "json";
+  }
+
+  @Override
+  public void run(int iteration) throws Exception {
+    CardDTO dto = CardDTO.builder()
+        .id("warmup-" + iteration)
+        .cardNumber("****-****-****-" + String.format("%04d", iteration % 10_000))
+        .customerId("warmup-customer")
+        .cardType(iteration % 2 == 0 ? CardType.DEBIT : CardType.CREDIT)
+        .status(CardStatus.ACTIVE)
+        .expirationDate(LocalDate.now().plusYears(3))
+        .associatedAccounts(Arrays.asList("warmup-account-1", "warmup-account-2"))
+        .mainAccountId("warmup-account-1")
+        .createdAt(LocalDateTime.now())
+        .build();
+
+    CardEvent event = CardEvent.builder()
+        .eventId(UUID.randomUUID().toString())
+        .eventType(CardEvent.EventType.PAYMENT_PROCESSED)
+        .cardId(dto.getId())
+        .customerId(dto.getCustomerId())
+        .timestamp(LocalDateTime.now())
+        .payload(dto)
+        .build();
+
+    objectMapper.readValue(objectMapper.writeValueAsBytes(dto), CardDTO.class);
+    objectMapper.readTree(objectMapper.writeValueAsBytes(event));
+  }
+}
@@ -0,0 +1,22 @@
+package com.bootcamp67.ms_card.warmup;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Readiness gate: OUT_OF_SERVICE until the warm-up has finished
+ */
+@Component
+@RequiredArgsConstructor
+public class WarmupHealthIndicator implements HealthIndicator {
+
+  private final WarmupRunner warmupRunner;
+
+  @Override
+  public Health health() {
+    Health.Builder builder = warmupRunner.isComplete() ? Health.up() : Health.outOfService();
+    return builder.withDetail("iterations", warmupRunner.getCompletedIterations()).build();
+  }
+}
@@ -0,0 +1,138 @@
+package com.bootcamp67.ms_card.warmup;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import com.netflix.appinfo.ApplicationInfoManager;
+import com.netflix.appinfo.InstanceInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.LoggerFactory;
+import org.slf4j.Marker;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the warm-up tasks once the application is ready, then flips the Eureka status
+ * from STARTING (eureka.instance.initial-status) to UP and opens the readiness gate.
+ * Stops after the configured iterations or duration, whichever comes first.
+ */
+@Slf4j
+@Component
+public class WarmupRunner {
+
+  private final List<WarmupTask> tasks;
+  private final ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+  private final boolean enabled;
+  private final Duration duration;
+  private final int iterations;
+  private final List<String> quietLoggers;
+  private volatile boolean complete;
+  private volatile int completedIterations;
+
+  public WarmupRunner(List<WarmupTask> tasks,
+                      ObjectProvider<ApplicationInfoManager> applicationInfoManager,
+                      @Value("${card.warmup.enabled:true}") boolean enabled,
+                      @Value("${card.warmup.duration:20s}") Duration duration,
+                      @Value("${card.warmup.iterations:20000}") int iterations,
+                      @Value("${card.warmup.quiet-loggers:}") List<String> quietLoggers) {
+    this.tasks = tasks;
+    this.applicationInfoManager = applicationInfoManager;
+    this.enabled = enabled;
+    this.duration = duration;
+    this.iterations = iterations;
+    this.quietLoggers = quietLoggers;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void onReady() {
+    if (!enabled) {
+      finish();
+      return;
+    }
+    Thread thread = new Thread(this::warmUp, "warmup");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public boolean isComplete() {
+    return complete;
+  }
+
+  public int getCompletedIterations() {
+    return completedIterations;
+  }
+
+  private void warmUp() {
+    long start = System.nanoTime();
+    long deadline = start + duration.toNanos();
+    List<WarmupTask> remaining = new ArrayList<>(tasks);
+    TurboFilter quiet = silence(Thread.currentThread());
+
+    try {
+      int i = 0;
+      while (i < iterations && System.nanoTime() < deadline && !remaining.isEmpty()) {
+        for (int t = remaining.size() - 1; t >= 0; t--) {
+          WarmupTask task = remaining.get(t);
+          try {
+            task.run(i);
+          } catch (Exception e) {
+            log.warn("Warm-up task {} failed and is skipped: {}", task.name(), e.toString());
+            remaining.remove(t);
+          }
+        }
+        completedIterations = ++i;
+      }
+    } finally {
+      restore(quiet);
+      log.info("Warm-up ran {} iterations of {} tasks in {} ms", completedIterations, tasks.size(),
+          Duration.ofNanos(System.nanoTime() - start).toMillis());
+      finish();
+    }
+  }
+
+  private void finish() {
+    complete = true;
+    ApplicationInfoManager manager = applicationInfoManager.getIfAvailable();
+    if (manager != null) {
+      manager.setInstanceStatus(InstanceInfo.InstanceStatus.UP);
+      log.info("Instance status set to UP");
+    }
+  }
+
+  /**
+   * Synthetic requests would flood the logs of the code under warm-up.
+   * Only events logged from the warm-up thread are dropped; real requests keep logging.
+   */
+  private TurboFilter silence(Thread warmupThread) {
+    if (quietLoggers.isEmpty() || !(LoggerFactory.getILoggerFactory() instanceof LoggerContext)) {
+      return null;
+    }
+    TurboFilter filter = new TurboFilter() {
+      @Override
+      public FilterReply decide(Marker marker, Logger logger, Level level, String format,
+                                Object[] params, Throwable t) {
+        return Thread.currentThread() == warmupThread && quietLoggers.contains(logger.getName())
+            ? FilterReply.DENY
+            : FilterReply.NEUTRAL;
+      }
+    };
+    filter.start();
+    ((LoggerContext) LoggerFactory.getILoggerFactory()).addTurboFilter(filter);
+    return filter;
+  }
+
+  private void restore(TurboFilter filter) {
+    if (filter != null) {
+      ((LoggerContext) LoggerFactory.getILoggerFactory()).getTurboFilterList().remove(filter);
+    }
+  }
+}
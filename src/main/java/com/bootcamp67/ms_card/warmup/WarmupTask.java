@@ -0,0 +1,12 @@
+package com.bootcamp67.ms_card.warmup;
+
+/**
+ * Synthetic work run repeatedly before the instance takes traffic, so the hot paths are
+ * JIT compiled. Tasks must not touch Mongo, Kafka or shared state that affects requests.
+ */
+public interface WarmupTask {
+
+  String name();
+
+  void run(int iteration) throws Exception;
+}
@@ -0,0 +1,153 @@
+package com.bootcamp67.ms_card.warmup;
+
+import com.bootcamp67.ms_card.interceptor.HeaderInterceptor;
+import com.bootcamp67.ms_card.limit.CustomerRateLimiter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.reactivestreams.Publisher;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpCookie;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.http.server.reactive.AbstractServerHttpRequest;
+import org.springframework.http.server.reactive.AbstractServerHttpResponse;
+import org.springframework.http.server.reactive.SslInfo;
+import org.springframework.stereotype.Component;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Sends stand-in requests through HeaderInterceptor: authenticated, unauthenticated and public.
+ * The interceptor is a private instance over its own CustomerRateLimiter and meter registry,
+ * so synthetic customers never take buckets or memory from the live limiter.
+ */
+@Component
+public class WebFilterWarmup implements WarmupTask {
+
+  private static final int SYNTHETIC_CUSTOMERS = 1024;
+  private static final Duration TIMEOUT = Duration.ofSeconds(1);
+  private static final WebFilterChain END_OF_CHAIN = exchange -> Mono.empty();
+  private static final ServerCodecConfigurer CODECS = ServerCodecConfigurer.create();
+  private static final DefaultWebSessionManager SESSIONS = new DefaultWebSessionManager();
+  private static final AcceptHeaderLocaleContextResolver LOCALES = new AcceptHeaderLocaleContextResolver();
+
+  private final HeaderInterceptor headerInterceptor;
+
+  public WebFilterWarmup(Environment environment) {
+    this.headerInterceptor = new HeaderInterceptor(
+        new CustomerRateLimiter(environment, new SimpleMeterRegistry()));
+  }
+
+  @Override
+  public String name() {
+    return "web-filter";
+  }
+
+  @Override
+  public void run(int iteration) {
+    HttpHeaders headers = new HttpHeaders();
+    String path;
+    switch (iteration % 8) {
+      case 0:
+        path = "/actuator/health";
+        break;
+      case 1:
+        path = "/api/v1/cards/customer/warmup";
+        headers.add("X-Auth-Username", "warmup");
+        break;
+      default:
+        String customerId = "warmup-" + iteration % SYNTHETIC_CUSTOMERS;
+        path = "/api/v1/cards/customer/" + customerId;
+        headers.add("X-Auth-Username", customerId);
+        headers.add("X-Auth-Customer-Id", customerId);
+        headers.add("X-Auth-Role", "CUSTOMER");
+    }
+
+    ServerWebExchange exchange = new DefaultServerWebExchange(
+        new StandInRequest(URI.create("http://localhost" + path), headers),
+        new StandInResponse(DefaultDataBufferFactory.sharedInstance),
+        SESSIONS, CODECS, LOCALES);
+    headerInterceptor.filter(exchange, END_OF_CHAIN).block(TIMEOUT);
+  }
+
+  private static final class StandInRequest extends AbstractServerHttpRequest {
+
+    private StandInRequest(URI uri, HttpHeaders headers) {
+      super(uri, null, headers);
+    }
+
+    @Override
+    protected MultiValueMap<String, HttpCookie> initCookies() {
+      return new LinkedMultiValueMap<>();
+    }
+
+    @Override
+    protected SslInfo initSslInfo() {
+      return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getNativeRequest() {
+      return (T) this;
+    }
+
+    @Override
+    public String getMethodValue() {
+      return "GET";
+    }
+
+    @Override
+    public Flux<DataBuffer> getBody() {
+      return Flux.empty();
+    }
+  }
+
+  private static final class StandInResponse extends AbstractServerHttpResponse {
+
+    private StandInResponse(DataBufferFactory bufferFactory) {
+      super(bufferFactory);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getNativeResponse() {
+      return (T) this;
+    }
+
+    @Override
+    protected Mono<Void> writeWithInternal(Publisher<? extends DataBuffer> body) {
+      return Flux.from(body).doOnNext(DataBufferUtils::release).then();
+    }
+
+    @Override
+    protected Mono<Void> writeAndFlushWithInternal(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+      return Flux.from(body).concatMap(this::writeWithInternal).then();
+    }
+
+    @Override
+    protected void applyStatusCode() {
+    }
+
+    @Override
+    protected void applyHeaders() {
+    }
+
+    @Override
+    protected void applyCookies() {
+    }
+  }
+}